@@ -30,16 +30,45 @@ public class DummyService {
                 "dummy node", "dummy role", root);
     }
 
-      public String longOperation(String in) {
+    /** Calls of {@link #longOperation(String)} in progress, and the most seen at once. */
+    private static int running;
+    private static int maxRunning;
+
+      public String longOperation(String in) throws AxisFault {
+         if ("fault".equals(in)) throw new AxisFault("dummy fault");
          long delay = 120000; // == Properties.DEFAULT_MEX_TIMEOUT
          try {
              delay = Long.parseLong(in);
          } catch (NumberFormatException ignore) {}
+         started();
           try {
              log.debug("#### IN LONG OP: "+delay+"ms ####");
              Thread.sleep(delay);
-         } catch (InterruptedException ignore) { }
+         } catch (InterruptedException ignore) {
+         } finally {
+             finished();
+         }
          log.debug("#### WENT THROUGH ###");
           return "Went through " + in;
       }
+
+    private static synchronized void started() {
+        if (++running > maxRunning) maxRunning = running;
+    }
+
+    private static synchronized void finished() {
+        --running;
+    }
+
+    static synchronized int getRunningLongOperations() {
+        return running;
+    }
+
+    static synchronized int getMaxRunningLongOperations() {
+        return maxRunning;
+    }
+
+    static synchronized void resetMaxRunningLongOperations() {
+        maxRunning = running;
+    }
 }
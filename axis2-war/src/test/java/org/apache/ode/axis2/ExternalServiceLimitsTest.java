@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.axis2;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.apache.ode.axis2.soapbinding.SoapExternalService;
+import org.testng.annotations.Test;
+
+/**
+ * Asynchronous invocations of an external service bounded by <code>mex.invoke.max-in-flight</code> and
+ * <code>mex.invoke.max-pending</code>, see TestInvokeLimits/invoke-limits.endpoint: at most 2 invocations of the
+ * slow dummy service in progress and 3 waiting.
+ */
+public class ExternalServiceLimitsTest extends Axis2TestBase {
+
+    private static final String BUNDLE = "TestInvokeLimits";
+    private static final QName DUMMY_SERVICE = new QName("http://axis2.ode.apache.org", "DummyService");
+
+    @Test
+    public void testMaxInFlight() throws Exception {
+        deploy();
+        try {
+            List<String> responses = sendConcurrently("testRequest.soap", 5);
+            for (String response : responses) assertTrue(response, response.contains("Went through 2000"));
+            // All were accepted, but no more than 2 got to the service at once
+            assertEquals(2, DummyService.getMaxRunningLongOperations());
+            assertIdle(dummyService());
+            assertEquals(0, dummyService().getRejectedCount());
+        } finally {
+            server.undeployProcess(BUNDLE);
+        }
+    }
+
+    @Test
+    public void testLimitReleased() throws Exception {
+        deploy();
+        try {
+            // SOAP fault from the service
+            assertTrue(send("testFaultRequest.soap").contains("failed"));
+            assertIdle(dummyService());
+            // the service doesn't answer before the socket timeout
+            assertTrue(send("testErrorRequest.soap").contains("failed"));
+            assertIdle(dummyService());
+            assertTrue(send("testRequest.soap").contains("Went through 2000"));
+            assertIdle(dummyService());
+
+            // Both slots are still available
+            awaitDummyServiceIdle();
+            List<String> responses = sendConcurrently("testRequest.soap", 2);
+            for (String response : responses) assertTrue(response, response.contains("Went through 2000"));
+            assertEquals(2, DummyService.getMaxRunningLongOperations());
+            assertEquals(0, dummyService().getRejectedCount());
+        } finally {
+            server.undeployProcess(BUNDLE);
+        }
+    }
+
+    @Test
+    public void testMaxPending() throws Exception {
+        deploy();
+        try {
+            // 2 in flight and 3 waiting, the others are rejected
+            List<String> responses = sendConcurrently("testRequest.soap", 7);
+            int succeeded = 0, failed = 0;
+            for (String response : responses) {
+                if (response.contains("Went through 2000")) succeeded++;
+                else if (response.contains("failed")) failed++;
+            }
+            assertEquals(5, succeeded);
+            assertEquals(2, failed);
+            assertEquals(2, dummyService().getRejectedCount());
+            assertEquals(2, DummyService.getMaxRunningLongOperations());
+            assertIdle(dummyService());
+        } finally {
+            server.undeployProcess(BUNDLE);
+        }
+    }
+
+    private void deploy() throws Exception {
+        server.deployService(DummyService.class.getCanonicalName());
+        if (server.isDeployed(BUNDLE)) server.undeployProcess(BUNDLE);
+        server.deployProcess(BUNDLE);
+        awaitDummyServiceIdle();
+    }
+
+    private String send(String request) {
+        return server.sendRequestFile("http://localhost:8888/processes/helloWorld", BUNDLE, request);
+    }
+
+    private List<String> sendConcurrently(final String request, int count) throws Exception {
+        ExecutorService exec = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < count; i++) {
+                futures.add(exec.submit(new Callable<String>() {
+                    public String call() {
+                        return send(request);
+                    }
+                }));
+            }
+            List<String> responses = new ArrayList<String>();
+            for (Future<String> future : futures) responses.add(future.get(60, TimeUnit.SECONDS));
+            return responses;
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    private SoapExternalService dummyService() {
+        return (SoapExternalService) server.getODEServer().getExternalService(DUMMY_SERVICE, "DummyServiceSOAP11port_http");
+    }
+
+    /**
+     * The invocation slot is given back right after the response is delivered to the engine, which may be after
+     * the process replied.
+     */
+    private void assertIdle(SoapExternalService service) throws InterruptedException {
+        for (int i = 0; i < 50 && service.getInFlightCount() + service.getPendingCount() > 0; i++) Thread.sleep(100);
+        assertEquals(0, service.getInFlightCount());
+        assertEquals(0, service.getPendingCount());
+    }
+
+    /**
+     * Waits for the calls of the dummy service left by timed out invocations, so they aren't counted.
+     */
+    private void awaitDummyServiceIdle() throws InterruptedException {
+        for (int i = 0; i < 100 && DummyService.getRunningLongOperations() > 0; i++) Thread.sleep(100);
+        DummyService.resetMaxRunningLongOperations();
+    }
+}
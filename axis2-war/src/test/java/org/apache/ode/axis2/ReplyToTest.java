@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.axis2;
+
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.ode.utils.StreamUtils;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.mortbay.jetty.handler.ContextHandler;
+import org.testng.annotations.Test;
+
+/**
+ * Requests with a non-anonymous WS-Addressing ReplyTo: the request connection gets acknowledged right away and
+ * the response (or the timeout fault) is sent to the ReplyTo address once the process replies.
+ */
+public class ReplyToTest extends Axis2TestBase {
+
+    private static final String BUNDLE = "TestReplyTo";
+
+    @Test
+    public void testResponseSentToReplyTo() throws Exception {
+        ReplyToHandler replies = new ReplyToHandler();
+        JettyWrapper jettyWrapper = startReplyTo(replies);
+        try {
+            String ack = send("testRequest.soap");
+            // The dummy service takes 2s, the request thread didn't wait for it
+            assertTrue(ack.indexOf("helloResponse") < 0);
+            assertNull(replies.poll(0));
+
+            String response = replies.poll(30);
+            assertNotNull("No response sent to the ReplyTo address", response);
+            assertTrue(response.contains("helloResponse") && response.contains("Went through 2000"));
+            assertNull(replies.poll(1));
+        } finally {
+            server.undeployProcess(BUNDLE);
+            jettyWrapper.stop();
+        }
+    }
+
+    @Test
+    public void testTimeoutFaultSentToReplyTo() throws Exception {
+        ReplyToHandler replies = new ReplyToHandler();
+        JettyWrapper jettyWrapper = startReplyTo(replies);
+        try {
+            long start = System.currentTimeMillis();
+            send("testTimeoutRequest.soap");
+
+            // mex.timeout is 5s, the dummy service takes 15s
+            String response = replies.poll(30);
+            assertNotNull("No fault sent to the ReplyTo address", response);
+            assertTrue(System.currentTimeMillis() - start < 15000);
+            assertTrue(response.contains("Fault") && response.contains("timed out"));
+            assertTrue(response.indexOf("Went through") < 0);
+            // Only one of the timeout and the late response gets sent
+            assertNull(replies.poll(15));
+        } finally {
+            server.undeployProcess(BUNDLE);
+            jettyWrapper.stop();
+        }
+    }
+
+    private JettyWrapper startReplyTo(ReplyToHandler replies) throws Exception {
+        // ReplyTo headers are only read with addressing engaged
+        server.getConfigurationContext().getAxisConfiguration().engageModule("addressing");
+        server.deployService(DummyService.class.getCanonicalName());
+        if (server.isDeployed(BUNDLE)) server.undeployProcess(BUNDLE);
+        server.deployProcess(BUNDLE);
+
+        ContextHandler replyToContext = new ContextHandler();
+        replyToContext.setContextPath("/ReplyTo");
+        replyToContext.setHandler(replies);
+        JettyWrapper jettyWrapper = new JettyWrapper(replyToContext);
+        jettyWrapper.start();
+        return jettyWrapper;
+    }
+
+    private String send(String request) {
+        return server.sendRequestFile("http://localhost:8888/processes/helloWorld", BUNDLE, request);
+    }
+
+    /**
+     * Collects the messages sent to the ReplyTo address.
+     */
+    private static class ReplyToHandler extends AbstractHandler {
+        private final BlockingQueue<String> _messages = new LinkedBlockingQueue<String>();
+
+        public void handle(String s, HttpServletRequest request, HttpServletResponse response, int i)
+                throws IOException, ServletException {
+            _messages.add(new String(StreamUtils.read(request.getInputStream())));
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            ((Request) request).setHandled(true);
+        }
+
+        String poll(int seconds) throws InterruptedException {
+            return _messages.poll(seconds, TimeUnit.SECONDS);
+        }
+    }
+}
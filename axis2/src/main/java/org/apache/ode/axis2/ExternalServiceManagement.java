@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.axis2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ode.axis2.soapbinding.SoapExternalService;
+import org.apache.ode.utils.Histogram;
+
+/**
+ * Standard MBean exposing the invocation metrics of the {@link SoapExternalService}s of an {@link ODEServer}.
+ */
+public class ExternalServiceManagement implements ExternalServiceManagementMBean {
+
+    private final ODEServer _server;
+
+    public ExternalServiceManagement(ODEServer server) {
+        _server = server;
+    }
+
+    public String[] getEndpoints() {
+        List<String> endpoints = new ArrayList<String>();
+        for (ExternalService extService : _server.externalServices()) {
+            if (extService instanceof SoapExternalService) endpoints.add(endpoint(extService));
+        }
+        return endpoints.toArray(new String[endpoints.size()]);
+    }
+
+    public long[] getBucketBounds() {
+        return Histogram.getBounds();
+    }
+
+    public long[] getLatencies(String endpoint) {
+        return service(endpoint).getLatencies().getCounts();
+    }
+
+    public long getFailureCount(String endpoint) {
+        return service(endpoint).getFailureCount();
+    }
+
+    public int getInFlightCount(String endpoint) {
+        return service(endpoint).getInFlightCount();
+    }
+
+    public int getPendingCount(String endpoint) {
+        return service(endpoint).getPendingCount();
+    }
+
+    public long getRejectedCount(String endpoint) {
+        return service(endpoint).getRejectedCount();
+    }
+
+    public String getSummary(String endpoint) {
+        SoapExternalService service = service(endpoint);
+        return "latencyMillis=" + service.getLatencies() + ", failures=" + service.getFailureCount()
+                + ", inFlight=" + service.getInFlightCount() + ", pending=" + service.getPendingCount()
+                + ", rejected=" + service.getRejectedCount();
+    }
+
+    private static String endpoint(ExternalService extService) {
+        return extService.getServiceName() + "/" + extService.getPortName();
+    }
+
+    private SoapExternalService service(String endpoint) {
+        for (ExternalService extService : _server.externalServices()) {
+            if (extService instanceof SoapExternalService && endpoint(extService).equals(endpoint))
+                return (SoapExternalService) extService;
+        }
+        throw new IllegalArgumentException("Endpoint " + endpoint + " isn't invoked.");
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.axis2;
+
+/**
+ * Management interface of the invocation metrics of the SOAP endpoints invoked by the processes. Endpoints are
+ * identified by the string form of their service name followed by a slash and the port name, histograms are
+ * returned as bucket counts matching {@link #getBucketBounds()}.
+ */
+public interface ExternalServiceManagementMBean {
+
+    /** @return ids of the invoked endpoints */
+    String[] getEndpoints();
+
+    /** @return exclusive upper bound of each histogram bucket */
+    long[] getBucketBounds();
+
+    /** @return histogram of the response times of the two-way invocations, in milliseconds */
+    long[] getLatencies(String endpoint);
+
+    /** @return number of two-way invocations that failed */
+    long getFailureCount(String endpoint);
+
+    /** @return number of asynchronous invocations waiting for their response */
+    int getInFlightCount(String endpoint);
+
+    /** @return number of asynchronous invocations waiting for the in-flight count to go below its limit */
+    int getPendingCount(String endpoint);
+
+    /** @return number of asynchronous invocations failed because too many were already waiting */
+    long getRejectedCount(String endpoint);
+
+    /** @return human readable summary of the metrics of an endpoint */
+    String getSummary(String endpoint);
+}
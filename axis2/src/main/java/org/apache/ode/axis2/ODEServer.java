@@ -21,11 +21,20 @@ package org.apache.ode.axis2;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Iterator;
 import java.util.StringTokenizer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.sql.DataSource;
@@ -63,6 +72,8 @@ import org.apache.ode.bpel.connector.BpelServerConnector;
 import org.apache.ode.bpel.dao.BpelDAOConnectionFactory;
 import org.apache.ode.bpel.engine.BpelServerImpl;
 import org.apache.ode.bpel.engine.CountLRUDehydrationPolicy;
+import org.apache.ode.bpel.engine.MemoryDehydrationPolicy;
+import org.apache.ode.bpel.engine.ProcessMetricsManagement;
 import org.apache.ode.bpel.evtproc.DebugBpelEventListener;
 import org.apache.ode.bpel.extvar.jdbc.JdbcExternalVariableModule;
 import org.apache.ode.bpel.iapi.BpelEventListener;
@@ -95,6 +106,9 @@ public class ODEServer {
 
     private static final Messages __msgs = Messages.getMessages(Messages.class);
 
+    /** How often external services check their configuration and evict idle connections, in ms. */
+    private static final long EXTERNAL_SERVICES_CHECK_PERIOD = 5000;
+
     protected File _appRoot;
     protected File _configRoot;
     protected File _workRoot;
@@ -111,6 +125,8 @@ public class ODEServer {
     private MultiKeyMap _externalServices = new MultiKeyMap();
     private BpelServerConnector _connector;
     private ManagementService _mgtService;
+    private ScheduledExecutorService _timer;
+    private List<ObjectName> _mbeanNames = new ArrayList<ObjectName>();
     
     public void init(ServletConfig config, AxisConfiguration axisConf) throws ServletException {
         init(config.getServletContext().getRealPath("/WEB-INF"), axisConf);
@@ -171,6 +187,21 @@ public class ODEServer {
 
             registerExternalVariableModules();
 
+            _timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ODEServerTimer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            // configuration changes and idle connections of the external services are checked
+            // in the background rather than by the invoking threads
+            _timer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    checkExternalServices();
+                }
+            }, EXTERNAL_SERVICES_CHECK_PERIOD, EXTERNAL_SERVICES_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+
             try {
                 _server.start();
             } catch (Exception ex) {
@@ -179,6 +210,8 @@ public class ODEServer {
                 throw new ServletException(errmsg, ex);
             }
 
+            registerMBeans();
+
             File deploymentDir = new File(_workRoot, "processes");
             _poller = new DeploymentPoller(deploymentDir, this);
 
@@ -235,6 +268,8 @@ public class ODEServer {
         ClassLoader old = Thread.currentThread().getContextClassLoader();
         Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
         try {
+            unregisterMBeans();
+
             if (_poller != null)
                 try {
                     __log.debug("shutting down poller");
@@ -253,6 +288,19 @@ public class ODEServer {
                     __log.debug("Error stopping services.", ex);
                 }
 
+            for (ExternalService extService : externalServices()) {
+                try {
+                    extService.close();
+                } catch (Throwable t) {
+                    __log.debug("Error closing external service " + extService.getServiceName(), t);
+                }
+            }
+
+            if (_timer != null) {
+                _timer.shutdownNow();
+                _timer = null;
+            }
+
             if (_scheduler != null)
                 try {
                     __log.debug("shutting down quartz scheduler.");
@@ -326,7 +374,7 @@ public class ODEServer {
         destroyService(uniqueServiceName, portName);
         AxisService axisService = ODEAxisService.createService(
                 _axisConfig, pconf, serviceName, portName, uniqueServiceName.getLocalPart());
-        ODEService odeService = new ODEService(axisService, pconf, serviceName, portName, _server);
+        ODEService odeService = new ODEService(axisService, pconf, serviceName, portName, _server, _timer);
 
         _services.put(uniqueServiceName, portName, odeService);
 
@@ -346,8 +394,12 @@ public class ODEServer {
         return odeService;
     }
 
+    /**
+     * Get the external service of a partner endpoint, creating it the first time. The processes (and versions of a
+     * process) invoking the same endpoint share the service and its connection pool.
+     */
     public ExternalService createExternalService(ProcessConf pconf, QName serviceName, String portName) throws ContextException {
-        ExternalService extService = (ExternalService) _externalServices.get(serviceName);
+        ExternalService extService = getExternalService(serviceName, portName);
         if (extService != null)
             return extService;
 
@@ -368,11 +420,71 @@ public class ODEServer {
          // if not SOAP nor HTTP binding
          if (extService == null) throw new ContextException("Only SOAP and HTTP binding supported!");
 
-        _externalServices.put(serviceName, portName, extService);
+        synchronized (_externalServices) {
+            // Processes registered in parallel may have created the same service concurrently, only one is kept
+            ExternalService existing = (ExternalService) _externalServices.get(serviceName, portName);
+            if (existing != null) {
+                extService.close();
+                return existing;
+            }
+            _externalServices.put(serviceName, portName, extService);
+        }
         __log.debug("Created external service " + serviceName);
         return extService;
     }
 
+    List<ExternalService> externalServices() {
+        synchronized (_externalServices) {
+            List<ExternalService> services = new ArrayList<ExternalService>(_externalServices.size());
+            for (Object o : _externalServices.values()) services.add((ExternalService) o);
+            return services;
+        }
+    }
+
+    /**
+     * Publishes the process and external service metrics on the platform MBean server, replacing those of a
+     * previous instance. Not being able to do so doesn't prevent the server from running.
+     */
+    private void registerMBeans() {
+        registerMBean(new ProcessMetricsManagement(_server), "org.apache.ode:type=ProcessMetrics");
+        registerMBean(new ExternalServiceManagement(this), "org.apache.ode:type=ExternalServices");
+    }
+
+    private void registerMBean(Object mbean, String name) {
+        try {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (mbeanServer.isRegistered(objectName)) mbeanServer.unregisterMBean(objectName);
+            mbeanServer.registerMBean(mbean, objectName);
+            _mbeanNames.add(objectName);
+        } catch (Exception ex) {
+            __log.warn("Couldn't register MBean " + name, ex);
+        }
+    }
+
+    private void unregisterMBeans() {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : _mbeanNames) {
+            try {
+                mbeanServer.unregisterMBean(objectName);
+            } catch (Exception ex) {
+                __log.debug("Error unregistering MBean " + objectName, ex);
+            }
+        }
+        _mbeanNames.clear();
+    }
+
+    private void checkExternalServices() {
+        for (ExternalService extService : externalServices()) {
+            if (!(extService instanceof SoapExternalService)) continue;
+            try {
+                ((SoapExternalService) extService).checkForUpdates();
+            } catch (Throwable t) {
+                __log.warn("Error checking external service " + extService.getServiceName(), t);
+            }
+        }
+    }
+
     public void destroyService(QName serviceName, String portName) {
         __log.debug("Destroying service " + serviceName + " port " + portName);
         ODEService service = (ODEService) _services.remove(serviceName, portName);
@@ -404,7 +516,9 @@ public class ODEServer {
     }
 
     public ExternalService getExternalService(QName serviceName, String portName) {
-        return (ExternalService) _externalServices.get(serviceName, portName);
+        synchronized (_externalServices) {
+            return (ExternalService) _externalServices.get(serviceName, portName);
+        }
     }
 
     private void initTxMgr() throws ServletException {
@@ -492,9 +606,16 @@ public class ODEServer {
         _server.setScheduler(_scheduler);
         _server.setTransactionManager(_txMgr);
         if (_odeConfig.isDehydrationEnabled()) {
-            CountLRUDehydrationPolicy dehy = new CountLRUDehydrationPolicy();
-            // dehy.setProcessMaxAge(10000);
-            _server.setDehydrationPolicy(dehy);
+            if ("memory".equalsIgnoreCase(_odeConfig.getDehydrationPolicy())) {
+                MemoryDehydrationPolicy dehy = new MemoryDehydrationPolicy();
+                dehy.setHighWatermark(_odeConfig.getDehydrationHeapHighWatermark());
+                dehy.setLowWatermark(_odeConfig.getDehydrationHeapLowWatermark());
+                _server.setDehydrationPolicy(dehy);
+            } else {
+                CountLRUDehydrationPolicy dehy = new CountLRUDehydrationPolicy();
+                // dehy.setProcessMaxAge(10000);
+                _server.setDehydrationPolicy(dehy);
+            }
         }
         _server.setConfigProperties(_odeConfig);
         _server.init();
@@ -19,6 +19,11 @@
 
 package org.apache.ode.axis2;
 
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.wsdl.Definition;
 import javax.wsdl.Port;
 import javax.wsdl.Service;
@@ -33,6 +38,8 @@ import org.apache.axiom.soap.SOAPFault;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.description.AxisService;
+import org.apache.axis2.engine.AxisEngine;
+import org.apache.axis2.util.MessageContextBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.ode.axis2.soapbinding.SoapMessageConverter;
@@ -72,10 +79,13 @@ public class ODEService {
     private String _portName;
     private WSAEndpoint _serviceRef;
     private SoapMessageConverter _converter;
+    private ScheduledExecutorService _timer;
 
-    public ODEService(AxisService axisService, ProcessConf pconf, QName serviceName, String portName, BpelServer server) throws AxisFault {
+    public ODEService(AxisService axisService, ProcessConf pconf, QName serviceName, String portName, BpelServer server,
+                      ScheduledExecutorService timer) throws AxisFault {
         _axisService = axisService;
         _server = server;
+        _timer = timer;
         _serviceName = serviceName;
     _pconf = pconf;
     _wsdlDef = pconf.getDefinitionForService(serviceName);
@@ -88,19 +98,72 @@ public class ODEService {
             throws AxisFault {
         MyRoleMessageExchange odeMex = null;
         try {
-            // Creating mesage exchange
-            String messageId = new GUID().toString();
-            odeMex = _server.createMessageExchange(InvocationStyle.UNRELIABLE, _serviceName,
-                    msgContext.getAxisOperation().getName().getLocalPart(), "" + messageId);
+            odeMex = createMessageExchange(msgContext);
+            try {
+                odeMex.invokeBlocking();
+            } catch (java.util.concurrent.TimeoutException te) {
+                String errmsg = "Call to " + _serviceName + "." + odeMex.getOperationName() + " timed out.";
+                __log.error(errmsg, te);
+                throw new OdeFault(errmsg);         
+            }
             
-            __log.debug("ODE routed to operation " + odeMex.getOperation() + " from service " + _serviceName);
-
-            if (odeMex.getOperation() == null) {
-                String errmsg = "Call to " + _serviceName + "." + odeMex.getOperationName() + " was not routable.";
-                __log.error(errmsg);
-                throw new OdeFault(errmsg);
+            if (odeMex.getOperation().getOutput() != null && outMsgContext != null) {
+                createResponse(odeMex, outMsgContext, soapFactory);
             }
+        } catch (Exception e) {
+            String errmsg = "Call to " + _serviceName + "." + (odeMex == null ? "?" : odeMex.getOperationName())
+                    + " caused an exception.";
+            __log.error(errmsg, e);
+            throw new OdeFault(errmsg, e);         
+        } finally {
+            release(odeMex);
+        }
+    }
 
+    /**
+     * Handles a request-response exchange whose response doesn't go back on the connection of the request (a
+     * non-anonymous WS-Addressing ReplyTo). The receiving thread returns as soon as the request has been handed
+     * to the engine instead of waiting for the process to reply; the response (or fault) is sent from an Axis2
+     * thread once the process replies or the exchange times out.
+     */
+    public void onAxisMessageExchangeAsync(MessageContext msgContext, MessageContext outMsgContext, SOAPFactory soapFactory)
+            throws AxisFault {
+        MyRoleMessageExchange odeMex = null;
+        AsyncResponse response = null;
+        try {
+            odeMex = createMessageExchange(msgContext);
+            response = new AsyncResponse(odeMex, msgContext, outMsgContext, soapFactory);
+            response.scheduleTimeout(resolveTimeout());
+            odeMex.invokeAsync(response);
+        } catch (Exception e) {
+            String errmsg = "Call to " + _serviceName + "." + (odeMex == null ? "?" : odeMex.getOperationName())
+                    + " caused an exception.";
+            __log.error(errmsg, e);
+            if (response != null) response.cancel();
+            release(odeMex);
+            throw new OdeFault(errmsg, e);
+        }
+    }
+
+    /**
+     * Creates the ODE message exchange for an incoming Axis2 request, ready to be invoked.
+     */
+    private MyRoleMessageExchange createMessageExchange(MessageContext msgContext) throws AxisFault {
+        // Creating mesage exchange
+        String messageId = new GUID().toString();
+        MyRoleMessageExchange odeMex = _server.createMessageExchange(InvocationStyle.UNRELIABLE, _serviceName,
+                msgContext.getAxisOperation().getName().getLocalPart(), "" + messageId);
+        
+        __log.debug("ODE routed to operation " + odeMex.getOperation() + " from service " + _serviceName);
+
+        if (odeMex.getOperation() == null) {
+            String errmsg = "Call to " + _serviceName + "." + odeMex.getOperationName() + " was not routable.";
+            __log.error(errmsg);
+            release(odeMex);
+            throw new OdeFault(errmsg);
+        }
+
+        try {
             // Preparing message to send to ODE
             Message odeRequest = odeMex.createMessage(odeMex.getOperation().getInput().getMessage().getQName());
             _converter.parseSoapRequest(odeRequest, msgContext.getEnvelope(), odeMex.getOperation());
@@ -113,34 +176,33 @@ public class ODEService {
 
             odeMex.setRequest(odeRequest);
             odeMex.setTimeout(resolveTimeout());
-            try {
-                odeMex.invokeBlocking();
-            } catch (java.util.concurrent.TimeoutException te) {
-                String errmsg = "Call to " + _serviceName + "." + odeMex.getOperationName() + " timed out.";
-                __log.error(errmsg, te);
-                throw new OdeFault(errmsg);         
-            }
-            
-            if (odeMex.getOperation().getOutput() != null && outMsgContext != null) {
-                SOAPEnvelope envelope = soapFactory.getDefaultEnvelope();
-                outMsgContext.setEnvelope(envelope);
+        } catch (AxisFault f) {
+            release(odeMex);
+            throw f;
+        } catch (RuntimeException e) {
+            release(odeMex);
+            throw e;
+        }
+        return odeMex;
+    }
+
+    private void createResponse(MyRoleMessageExchange odeMex, MessageContext outMsgContext, SOAPFactory soapFactory)
+            throws AxisFault {
+        SOAPEnvelope envelope = soapFactory.getDefaultEnvelope();
+        outMsgContext.setEnvelope(envelope);
+
+        // Hopefully we have a response
+        __log.debug("Handling response for MEX " + odeMex);
+        onResponse(odeMex, outMsgContext);
+    }
 
-                // Hopefully we have a response
-                __log.debug("Handling response for MEX " + odeMex);
-                onResponse(odeMex, outMsgContext);
+    private void release(MyRoleMessageExchange odeMex) {
+        if (odeMex != null)
+            try {
+                odeMex.release();
+            } catch (Exception ex) {
+                __log.error("Error releasing message exchange: " + odeMex.getMessageExchangeId());
             }
-        } catch (Exception e) {
-            String errmsg = "Call to " + _serviceName + "." + odeMex.getOperationName() + " caused an exception.";
-            __log.error(errmsg, e);
-            throw new OdeFault(errmsg, e);         
-        } finally {
-            if (odeMex != null)
-                try {
-                    odeMex.release();
-                } catch (Exception ex) {
-                    __log.error("Error releasing message exchange: " + odeMex.getMessageExchangeId());
-                }
-        }
     }
 
     public boolean respondsTo(QName serviceName, QName portTypeName) {
@@ -237,6 +299,83 @@ public class ODEService {
 
     }
 
+    /**
+     * Sends the response of an asynchronously invoked exchange, whichever of the engine reply and the timeout
+     * comes first.
+     */
+    private class AsyncResponse implements Runnable {
+        private final MyRoleMessageExchange _odeMex;
+        private final MessageContext _msgContext;
+        private final MessageContext _outMsgContext;
+        private final SOAPFactory _soapFactory;
+        private final AtomicBoolean _sent = new AtomicBoolean();
+        private volatile ScheduledFuture<?> _timeout;
+
+        AsyncResponse(MyRoleMessageExchange odeMex, MessageContext msgContext, MessageContext outMsgContext,
+                      SOAPFactory soapFactory) {
+            _odeMex = odeMex;
+            _msgContext = msgContext;
+            _outMsgContext = outMsgContext;
+            _soapFactory = soapFactory;
+        }
+
+        void scheduleTimeout(long timeout) {
+            _timeout = _timer.schedule(new Runnable() {
+                public void run() {
+                    send(true);
+                }
+            }, Math.max(timeout, 1), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Called by the engine once the exchange has been acknowledged.
+         */
+        public void run() {
+            ScheduledFuture<?> timeout = _timeout;
+            if (timeout != null) timeout.cancel(false);
+            send(false);
+        }
+
+        /**
+         * Makes sure nothing gets sent, the caller reports the failure.
+         */
+        void cancel() {
+            _sent.set(true);
+            ScheduledFuture<?> timeout = _timeout;
+            if (timeout != null) timeout.cancel(false);
+        }
+
+        private void send(final boolean timedOut) {
+            if (!_sent.compareAndSet(false, true)) return;
+            // Not on the engine or timer thread, sending may take a while
+            _msgContext.getConfigurationContext().getThreadPool().execute(new Runnable() {
+                public void run() {
+                    respond(timedOut);
+                }
+            });
+        }
+
+        private void respond(boolean timedOut) {
+            try {
+                if (timedOut)
+                    throw new OdeFault("Call to " + _serviceName + "." + _odeMex.getOperationName() + " timed out.");
+                if (_odeMex.getOperation().getOutput() != null) {
+                    createResponse(_odeMex, _outMsgContext, _soapFactory);
+                    AxisEngine.send(_outMsgContext);
+                }
+            } catch (Exception e) {
+                __log.error("Call to " + _serviceName + "." + _odeMex.getOperationName() + " caused an exception.", e);
+                try {
+                    AxisEngine.sendFault(MessageContextBuilder.createFaultMessageContext(_msgContext, e));
+                } catch (AxisFault af) {
+                    __log.error("Couldn't send the fault for " + _serviceName + "." + _odeMex.getOperationName(), af);
+                }
+            } finally {
+                release(_odeMex);
+            }
+        }
+    }
+
     public AxisService getAxisService() {
         return _axisService;
     }
@@ -53,6 +53,28 @@ public class Properties {
     // its default value
     public static final int DEFAULT_MEX_TIMEOUT = 30 * 1000;
 
+    /**
+     * Property used to invoke the endpoint without blocking an engine thread until the response comes back (true/false).
+     * Only applies to request-response operations of persisted processes.
+     */
+    public static final String PROP_MEX_INVOKE_ASYNC = "mex.invoke.async";
+
+    /**
+     * Property used to bound the number of asynchronous invocations in progress on the endpoint, further invocations
+     * wait for one to complete. 0 for no limit. Default value is {@link #DEFAULT_MEX_MAX_IN_FLIGHT}
+     */
+    public static final String PROP_MEX_MAX_IN_FLIGHT = "mex.invoke.max-in-flight";
+    // its default value
+    public static final int DEFAULT_MEX_MAX_IN_FLIGHT = 20;
+
+    /**
+     * Property used to bound the number of asynchronous invocations waiting for the in-flight count to go below its
+     * limit, further invocations fail right away. 0 for no limit. Default value is {@link #DEFAULT_MEX_MAX_PENDING}
+     */
+    public static final String PROP_MEX_MAX_PENDING = "mex.invoke.max-pending";
+    // its default value
+    public static final int DEFAULT_MEX_MAX_PENDING = 1000;
+
 
     public static final String PROP_HTTP_CONNECTION_TIMEOUT = HttpConnectionParams.CONNECTION_TIMEOUT;
     public static final String PROP_HTTP_SOCKET_TIMEOUT = HttpMethodParams.SO_TIMEOUT;
@@ -72,6 +94,20 @@ public class Properties {
     // Httpclient specific
     public static final String PROP_HTTP_MAX_REDIRECTS = HttpClientParams.MAX_REDIRECTS;
 
+    /**
+     * Maximum number of pooled connections to a SOAP endpoint. Default value is {@link #DEFAULT_HTTP_MAX_CONNECTIONS}
+     */
+    public static final String PROP_HTTP_MAX_CONNECTIONS = "http.connection-manager.max-connections";
+    // its default value
+    public static final int DEFAULT_HTTP_MAX_CONNECTIONS = 100;
+
+    /**
+     * Time (in milliseconds) after which an unused pooled connection gets closed. Default value is {@link #DEFAULT_HTTP_IDLE_TIMEOUT}
+     */
+    public static final String PROP_HTTP_IDLE_TIMEOUT = "http.connection-manager.idle-timeout";
+    // its default value
+    public static final int DEFAULT_HTTP_IDLE_TIMEOUT = 30 * 1000;
+
     // Axis2-specific
     public static final String PROP_HTTP_REQUEST_CHUNK = "http.request.chunk";
     public static final String PROP_HTTP_REQUEST_GZIP = "http.request.gzip";
@@ -20,6 +20,7 @@
 package org.apache.ode.axis2.hooks;
 
 import org.apache.axis2.AxisFault;
+import org.apache.axis2.addressing.EndpointReference;
 import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.description.AxisOperation;
 import org.apache.axis2.engine.AxisEngine;
@@ -44,9 +45,14 @@ public class ODEMessageReceiver extends AbstractMessageReceiver {
             if (__log.isDebugEnabled())
                 __log.debug("Received request message for " + msgContext.getAxisService().getName() + "."
                         + msgContext.getAxisOperation().getName());
-            // Client is expecting a response, running in the same thread
             MessageContext outMsgContext = MessageContextBuilder.createOutMessageContext(msgContext);
             outMsgContext.getOperationContext().addMessageContext(outMsgContext);
+            if (isReplyToAddressed(msgContext)) {
+                // The response goes to another connection, no need to hold this thread until it's ready
+                _service.onAxisMessageExchangeAsync(msgContext, outMsgContext, getSOAPFactory(msgContext));
+                return;
+            }
+            // Client is expecting a response, running in the same thread
             invokeBusinessLogic(msgContext, outMsgContext);
             if (__log.isDebugEnabled()) {
                 __log.debug("Reply for " + msgContext.getAxisService().getName() + "."
@@ -72,6 +78,11 @@ public class ODEMessageReceiver extends AbstractMessageReceiver {
         _service = service;
     }
 
+    private boolean isReplyToAddressed(MessageContext msgContext) {
+        EndpointReference replyTo = msgContext.getReplyTo();
+        return replyTo != null && !replyTo.hasAnonymousAddress() && !replyTo.hasNoneAddress();
+    }
+
     private boolean hasResponse(AxisOperation op) {
         switch (op.getAxisSpecificMEPConstant()) {
             case WSDLConstants.MEP_CONSTANT_IN_OUT:
@@ -25,6 +25,7 @@ import org.apache.axis2.addressing.EndpointReference;
 import org.apache.axis2.client.OperationClient;
 import org.apache.axis2.client.Options;
 import org.apache.axis2.client.ServiceClient;
+import org.apache.axis2.client.async.AxisCallback;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.deployment.ServiceBuilder;
@@ -33,7 +34,10 @@ import org.apache.axis2.description.OutOnlyAxisOperation;
 import org.apache.axis2.description.OutInAxisOperation;
 import org.apache.axis2.description.AxisModule;
 import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.axis2.transport.http.HTTPConstants;
 import org.apache.axis2.wsdl.WSDLConstants;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.neethi.PolicyEngine;
@@ -41,6 +45,7 @@ import org.apache.neethi.Policy;
 import org.apache.ode.axis2.ExternalService;
 import org.apache.ode.axis2.ODEService;
 import org.apache.ode.axis2.Properties;
+import org.apache.ode.bpel.iapi.InvocationStyle;
 import org.apache.ode.bpel.iapi.Message;
 import org.apache.ode.bpel.iapi.MessageExchange;
 import org.apache.ode.bpel.iapi.MessageExchange.FailureType;
@@ -69,6 +74,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Acts as a service not provided by ODE. Used mainly for invocation as a way to maintain the WSDL decription of used services.
@@ -96,6 +105,22 @@ public class SoapExternalService implements ExternalService, PartnerRoleChannel
     private SoapMessageConverter _converter;
     private ProcessConf _pconf;
 
+    /** Asynchronous invocations waiting for their response. */
+    private final AtomicInteger _inFlight = new AtomicInteger();
+    /**
+     * Asynchronous invocations waiting for the in-flight count to go below its limit. Bounded by the max-pending
+     * property through {@link #_pendingCount}, the queue itself doesn't count its elements in constant time.
+     */
+    private final ConcurrentLinkedQueue<Runnable> _pending = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger _pendingCount = new AtomicInteger();
+    private final AtomicLong _rejected = new AtomicLong();
+    private final Histogram _latencies = new Histogram();
+    private final AtomicLong _failures = new AtomicLong();
+
+    /** Connections to the endpoint, kept alive between invocations. */
+    private final MultiThreadedHttpConnectionManager _connections = new MultiThreadedHttpConnectionManager();
+    private final HttpClient _httpClient = new HttpClient(_connections);
+
     public SoapExternalService(Definition definition, QName serviceName, String portName,
                                AxisConfiguration axisConfig, ProcessConf pconf) throws AxisFault {
         _definition = definition;
@@ -115,6 +140,9 @@ public class SoapExternalService implements ExternalService, PartnerRoleChannel
         if (eprElmt == null)
             throw new IllegalArgumentException(msgs.msgPortDefinitionNotFound(serviceName, portName));
         endpointReference = EndpointFactory.convertToWSA(ODEService.createServiceRef(eprElmt));
+
+        // Loads the initial configuration, changes are then picked up by checkForUpdates()
+        checkForUpdates();
     }
 
     public void invoke(final PartnerRoleMessageExchange odeMex) {
@@ -156,6 +184,31 @@ public class SoapExternalService implements ExternalService, PartnerRoleChannel
             if (isTwoWay) {
                 final Operation operation = odeMex.getOperation();
 
+                OptionsObserver observer = _axisOptionsWatchDog.getObserver();
+                if (observer.async && odeMex.getInvocationStyle() == InvocationStyle.UNRELIABLE) {
+                    int pending = _pendingCount.incrementAndGet();
+                    if (observer.maxPending > 0 && pending > observer.maxPending) {
+                        _pendingCount.decrementAndGet();
+                        _rejected.incrementAndGet();
+                        String errmsg = "Too many invocations waiting for " + _serviceName + ", rejecting ODE mex " + odeMex;
+                        __log.error(errmsg);
+                        odeMex.replyWithFailure(MessageExchange.FailureType.COMMUNICATION_ERROR, errmsg, null);
+                        return;
+                    }
+                    // The engine thread is released, the response is delivered once received
+                    odeMex.replyAsync(odeMex.getMessageExchangeId());
+                    final MessageContext request = mctx;
+                    _pending.add(new Runnable() {
+                        public void run() {
+                            executeAsync(odeMex, operationClient, request);
+                        }
+                    });
+                    dispatchPending();
+                    return;
+                }
+
+                long start = System.currentTimeMillis();
+                boolean failed = true;
                 try {
                     operationClient.execute(true);
                     MessageContext response = operationClient.getMessageContext(WSDLConstants.MESSAGE_LABEL_IN_VALUE);
@@ -165,13 +218,21 @@ public class SoapExternalService implements ExternalService, PartnerRoleChannel
 
                     if (flt != null) reply(odeMex, operation, flt, true);
                     else reply(odeMex, operation, response, response.isFault());
+                    failed = false;
                 } catch (Throwable t) {
                     String errmsg = "Error sending message to Axis2 for ODE mex " + odeMex;
                     __log.error(errmsg, t);
                     replyWithFailure(odeMex, MessageExchange.FailureType.COMMUNICATION_ERROR, errmsg, null);
+                } finally {
+                    invoked(start, failed);
+                    release(operationClient, mctx);
                 }
             } else /* one-way case */{
-                operationClient.execute(false);
+                try {
+                    operationClient.execute(false);
+                } finally {
+                    release(operationClient, mctx);
+                }
                 odeMex.replyOneWayOk();
             }
         } catch (AxisFault axisFault) {
@@ -181,16 +242,147 @@ public class SoapExternalService implements ExternalService, PartnerRoleChannel
         }
     }
 
-    private ServiceClient getServiceClient() throws AxisFault {
+    /**
+     * Sends the request of a two-way exchange without waiting for the response. Axis2 does the exchange with the
+     * endpoint on a thread of its pool and calls us back with the response.
+     */
+    private void executeAsync(final PartnerRoleMessageExchange odeMex, final OperationClient operationClient,
+                              final MessageContext request) {
+        final Operation operation = odeMex.getOperation();
+        final long start = System.currentTimeMillis();
+        final AtomicBoolean replied = new AtomicBoolean();
+        operationClient.setCallback(new AxisCallback() {
+            public void onMessage(MessageContext response) {
+                if (!replied.compareAndSet(false, true)) return;
+                if (__log.isDebugEnabled())
+                    __log.debug("Service response:\n" + response.getEnvelope().toString());
+                reply(odeMex, operation, response, response.isFault());
+                completed(operationClient, request, start, false);
+            }
+
+            public void onFault(MessageContext fault) {
+                if (!replied.compareAndSet(false, true)) return;
+                reply(odeMex, operation, fault, true);
+                completed(operationClient, request, start, false);
+            }
+
+            public void onError(Exception e) {
+                if (!replied.compareAndSet(false, true)) return;
+                String errmsg = "Error sending message to Axis2 for ODE mex " + odeMex;
+                __log.error(errmsg, e);
+                replyWithFailure(odeMex, MessageExchange.FailureType.COMMUNICATION_ERROR, errmsg, null);
+                completed(operationClient, request, start, true);
+            }
+
+            public void onComplete() {
+                if (!replied.compareAndSet(false, true)) return;
+                String errmsg = "No response received for ODE mex " + odeMex;
+                __log.error(errmsg);
+                replyWithFailure(odeMex, MessageExchange.FailureType.NO_RESPONSE, errmsg, null);
+                completed(operationClient, request, start, true);
+            }
+        });
+        try {
+            operationClient.execute(false);
+        } catch (Throwable t) {
+            if (!replied.compareAndSet(false, true)) return;
+            String errmsg = "Error sending message to Axis2 for ODE mex " + odeMex;
+            __log.error(errmsg, t);
+            replyWithFailure(odeMex, MessageExchange.FailureType.COMMUNICATION_ERROR, errmsg, null);
+            completed(operationClient, request, start, true);
+        }
+    }
+
+    /**
+     * Starts asynchronous invocations waiting for a slot as long as the in-flight limit allows it.
+     */
+    private void dispatchPending() {
+        while (!_pending.isEmpty()) {
+            int max = _axisOptionsWatchDog.getObserver().maxInFlight;
+            int inFlight = _inFlight.get();
+            if (max > 0 && inFlight >= max) return;
+            if (!_inFlight.compareAndSet(inFlight, inFlight + 1)) continue;
+            Runnable next = _pending.poll();
+            if (next == null) {
+                _inFlight.decrementAndGet();
+                continue;
+            }
+            _pendingCount.decrementAndGet();
+            next.run();
+        }
+    }
+
+    private void completed(OperationClient operationClient, MessageContext request, long start, boolean failed) {
+        release(operationClient, request);
+        invoked(start, failed);
+        _inFlight.decrementAndGet();
+        dispatchPending();
+    }
+
+    private void invoked(long start, boolean failed) {
+        _latencies.record(System.currentTimeMillis() - start);
+        if (failed) _failures.incrementAndGet();
+    }
+
+    /**
+     * @return response times of the two-way invocations of this endpoint, in milliseconds
+     */
+    public Histogram getLatencies() {
+        return _latencies;
+    }
+
+    /**
+     * @return number of two-way invocations of this endpoint that failed
+     */
+    public long getFailureCount() {
+        return _failures.get();
+    }
+
+    /**
+     * @return number of asynchronous invocations waiting for their response
+     */
+    public int getInFlightCount() {
+        return _inFlight.get();
+    }
+
+    /**
+     * @return number of asynchronous invocations waiting for the in-flight count to go below its limit
+     */
+    public int getPendingCount() {
+        return _pendingCount.get();
+    }
+
+    /**
+     * @return number of asynchronous invocations failed because too many were already waiting
+     */
+    public long getRejectedCount() {
+        return _rejected.get();
+    }
+
+    /**
+     * Gives the connection of an exchange back to the pool, the response must have been read.
+     */
+    private void release(OperationClient operationClient, MessageContext request) {
         try {
-            // call manually the check procedure
-            // we dont want a dedicated thread for that
-            _axisServiceWatchDog.check();
-            _axisOptionsWatchDog.check();
-        } catch (RuntimeException e) {
-            throw AxisFault.makeFault(e.getCause() != null ? e.getCause() : e);
+            operationClient.complete(request);
+        } catch (Throwable t) {
+            __log.debug("Couldn't release the connection of " + request.getMessageID(), t);
         }
+    }
+
+    /**
+     * Reloads the Axis2 service configuration file and the endpoint properties if they changed. Not meant to be
+     * called while invoking, the server calls it periodically so that the files aren't checked on the request path.
+     * Changes are picked up after at most {@link WatchDog#DEFAULT_DELAY} plus the period of the calls.
+     */
+    public synchronized void checkForUpdates() {
+        _axisServiceWatchDog.check();
+        _axisOptionsWatchDog.check();
+        // Idle connections are closed at the same pace
+        _connections.closeIdleConnections(_axisOptionsWatchDog.getObserver().idleTimeout);
+    }
 
+    private ServiceClient getServiceClient() throws AxisFault {
         // apply the options to the service client
         ServiceClient serviceClient = _cachedClients.get();
         if (serviceClient == null) {
@@ -302,7 +494,7 @@ public class SoapExternalService implements ExternalService, PartnerRoleChannel
     }
 
     public void close() {
-        // nothing
+        _connections.shutdown();
     }
 
     public String getPortName() {
@@ -372,7 +564,7 @@ public class SoapExternalService implements ExternalService, PartnerRoleChannel
      */
     private class ServiceFileObserver extends WatchDog.DefaultObserver {
         String serviceName = "anonymous_service_" + new GUID().toString();
-        AxisService anonymousService;
+        volatile AxisService anonymousService;
         File file;
 
         private ServiceFileObserver(File file) {
@@ -384,45 +576,65 @@ public class SoapExternalService implements ExternalService, PartnerRoleChannel
         }
 
         public void init() {
+            anonymousService = newService();
+        }
+
+        private AxisService newService() {
             // create an anonymous axis service that will be used by the ServiceClient
             // this service will be added to the AxisConfig so do not reuse the name of the external service
             // as it could blow up if the service is deployed in the same axis2 instance
-            anonymousService = new AxisService(serviceName);
-            anonymousService.setParent(_axisConfig);
+            AxisService service = new AxisService(serviceName);
+            service.setParent(_axisConfig);
 
             OutOnlyAxisOperation outOnlyOperation = new OutOnlyAxisOperation(ServiceClient.ANON_OUT_ONLY_OP);
-            anonymousService.addOperation(outOnlyOperation);
+            service.addOperation(outOnlyOperation);
 
             OutInAxisOperation outInOperation = new OutInAxisOperation(ServiceClient.ANON_OUT_IN_OP);
-            anonymousService.addOperation(outInOperation);
+            service.addOperation(outInOperation);
+            return service;
         }
 
         public void onUpdate() {
             // axis2 service configuration
             // if the config file has been modified (i.e added or updated), re-create a ServiceClient
-            // and load the new config.
-            init(); // create a new ServiceClient instance
+            // and load the new config. The service is only published once configured as invoking
+            // threads keep using the previous one in the meantime.
+            AxisService service = newService();
             try {
-                 AxisUtils.configureService(_configContext, anonymousService, file.toURI().toURL());
+                 AxisUtils.configureService(_configContext, service, file.toURI().toURL());
                  // do not allow the service.xml file to change the service name
-                 anonymousService.setName(serviceName);
+                 service.setName(serviceName);
             } catch (Exception e) {
                 if (__log.isWarnEnabled()) __log.warn("Exception while configuring service: " + _serviceName, e);
                 throw new RuntimeException("Exception while configuring service: " + _serviceName, e);
             }
+            anonymousService = service;
         }
     }
 
     private class OptionsObserver extends WatchDog.DefaultObserver {
 
-        Options options;
+        // Read by the invoking threads, a new Options instance is published once fully configured
+        volatile Options options;
+        volatile boolean async;
+        volatile int maxInFlight = Properties.DEFAULT_MEX_MAX_IN_FLIGHT;
+        volatile int maxPending = Properties.DEFAULT_MEX_MAX_PENDING;
+        volatile long idleTimeout = Properties.DEFAULT_HTTP_IDLE_TIMEOUT;
 
         public boolean isInitialized() {
             return options != null;
         }
 
         public void init() {
-            options = new Options();
+            async = false;
+            maxInFlight = Properties.DEFAULT_MEX_MAX_IN_FLIGHT;
+            maxPending = Properties.DEFAULT_MEX_MAX_PENDING;
+            idleTimeout = Properties.DEFAULT_HTTP_IDLE_TIMEOUT;
+            options = newOptions();
+        }
+
+        private Options newOptions() {
+            Options options = new Options();
             // set defaults values
             options.setExceptionToBeThrownOnSOAPFault(false);
 
@@ -430,14 +642,41 @@ public class SoapExternalService implements ExternalService, PartnerRoleChannel
             // nor Properties.PROP_HTTP_SOCKET_TIMEOUT.
             // it will be applied only if the laters are not set.
             options.setTimeOutInMilliSeconds(60000);
+
+            // all invocations of the endpoint share its connection pool
+            options.setProperty(HTTPConstants.REUSE_HTTP_CLIENT, Boolean.TRUE);
+            options.setProperty(HTTPConstants.CACHED_HTTP_CLIENT, _httpClient);
+            return options;
         }
 
         public void onUpdate() {
-            init();
-
             // note: don't make this map an instance attribute, so we always get the latest version
             final Map<String, String> properties = _pconf.getEndpointProperties(endpointReference);
+            Options options = newOptions();
             Properties.Axis2.translate(properties, options);
+
+            async = Boolean.parseBoolean(properties.get(Properties.PROP_MEX_INVOKE_ASYNC));
+            maxInFlight = intProperty(properties, Properties.PROP_MEX_MAX_IN_FLIGHT, Properties.DEFAULT_MEX_MAX_IN_FLIGHT);
+            maxPending = intProperty(properties, Properties.PROP_MEX_MAX_PENDING, Properties.DEFAULT_MEX_MAX_PENDING);
+            idleTimeout = intProperty(properties, Properties.PROP_HTTP_IDLE_TIMEOUT, Properties.DEFAULT_HTTP_IDLE_TIMEOUT);
+            int maxConnections = intProperty(properties, Properties.PROP_HTTP_MAX_CONNECTIONS, Properties.DEFAULT_HTTP_MAX_CONNECTIONS);
+            _connections.getParams().setDefaultMaxConnectionsPerHost(maxConnections);
+            _connections.getParams().setMaxTotalConnections(maxConnections);
+            this.options = options;
+        }
+
+        private int intProperty(Map<String, String> properties, String name, int defaultValue) {
+            String value = properties.get(name);
+            if (value != null) {
+                try {
+                    return Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    if (__log.isWarnEnabled())
+                        __log.warn("Mal-formatted Property: [" + name + "=" + value + "] Default value ("
+                                + defaultValue + ") will be used");
+                }
+            }
+            return defaultValue;
         }
     }
 
@@ -43,6 +43,7 @@ import javax.wsdl.extensions.soap.SOAPBody;
 import javax.wsdl.extensions.soap.SOAPHeader;
 import javax.wsdl.extensions.soap.SOAPOperation;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMAttribute;
@@ -319,12 +320,13 @@ public class SoapMessageConverter {
         if (bi == null)
             throw new OdeFault(__msgs.msgBindingInputNotFound(_serviceName, _portName, op.getName()));
 
+        // headers first, the body parts are streamed out of the envelope
+        if (envelope.getHeader() != null)
+            extractSoapHeaderParts(odeMessage, envelope.getHeader(), getSOAPHeaders(bi), op.getInput().getMessage());
+
         SOAPBody soapBody = getSOAPBody(bi);
         if (soapBody != null)
             extractSoapBodyParts(odeMessage, envelope.getBody(), soapBody, op.getInput().getMessage(), op.getName());
-
-        if (envelope.getHeader() != null)
-            extractSoapHeaderParts(odeMessage, envelope.getHeader(), getSOAPHeaders(bi), op.getInput().getMessage());
     }
 
     public void parseSoapResponse(org.apache.ode.bpel.iapi.Message odeMessage,
@@ -338,12 +340,13 @@ public class SoapMessageConverter {
         if (bo == null)
             throw new OdeFault(__msgs.msgBindingInputNotFound(_serviceName, _portName, op.getName()));
 
+        // headers first, the body parts are streamed out of the envelope
+        if (envelope.getHeader() != null)
+            extractSoapHeaderParts(odeMessage, envelope.getHeader(), getSOAPHeaders(bo), op.getOutput().getMessage());
+
         SOAPBody soapBody = getSOAPBody(bo);
         if (soapBody != null)
              extractSoapBodyParts(odeMessage, envelope.getBody(), soapBody, op.getOutput().getMessage(), op.getName() + "Response");
-
-        if (envelope.getHeader() != null)
-            extractSoapHeaderParts(odeMessage, envelope.getHeader(), getSOAPHeaders(bo), op.getOutput().getMessage());
     }
 
     @SuppressWarnings("unchecked")
@@ -359,9 +362,16 @@ public class SoapMessageConverter {
             if (srcPartEl == null)
                 throw new OdeFault(__msgs.msgOdeMessageMissingRequiredPart(part.getName()));
 
-            OMElement omPart = OMUtils.toOM(srcPartEl, _soapFactory);
-            if (_isRPC) partHolder.addChild(omPart);
-            else for (Iterator<OMNode> i = omPart.getChildren(); i.hasNext();) partHolder.addChild(i.next());
+            // the part content is only written when the message gets serialized, no Axiom copy is built
+            if (_isRPC) partHolder.addChild(OMUtils.streamToOM(srcPartEl, _soapFactory));
+            else {
+                for (Node n = srcPartEl.getFirstChild(); n != null; n = n.getNextSibling()) {
+                    if (n.getNodeType() == Node.ELEMENT_NODE)
+                        partHolder.addChild(OMUtils.streamToOM((Element) n, _soapFactory));
+                    else if (n.getNodeType() == Node.TEXT_NODE || n.getNodeType() == Node.CDATA_SECTION_NODE)
+                        partHolder.addChild(_soapFactory.createOMText(n.getNodeValue()));
+                }
+            }
         }
 
     }
@@ -382,34 +392,57 @@ public class SoapMessageConverter {
             // In RPC the body element is the operation name, wrapping parts. Order doesn't really matter as far as
             // we're concerned. All we need to do is copy the soap:body children, since doc-lit rpc looks the same
             // in ode and soap.
-            for (Part pdef : bodyParts) {
+            for (int i = 0; i < bodyParts.size(); ++i) {
+                Part pdef = bodyParts.get(i);
                 OMElement srcPart = partWrapper.getFirstChildWithName(new QName(null, pdef.getName()));
                 if (srcPart == null)
                     throw new OdeFault(__msgs.msgSOAPBodyDoesNotContainRequiredPart(pdef.getName()));
-                message.setPart(srcPart.getLocalName(), OMUtils.toDOM(srcPart));
+                message.setPart(srcPart.getLocalName(), toDOM(srcPart, DOMUtils.newDocument(), i == bodyParts.size() - 1));
             }
 
         } else {
             // In doc-literal style, we expect the elements in the body to correspond (in order) to the
             // parts defined in the binding. All the parts should be element-typed, otherwise it is a mess.
-            Iterator<OMElement> srcParts = soapBody.getChildElements();
-            for (Part partDef : bodyParts) {
-                if (!srcParts.hasNext())
+            // Not using getChildElements(), its iterator reads ahead and would build each part in Axiom
+            OMElement srcPart = null;
+            for (int i = 0; i < bodyParts.size(); ++i) {
+                Part partDef = bodyParts.get(i);
+                srcPart = i == 0 ? soapBody.getFirstElement() : nextSiblingElement(srcPart);
+                if (srcPart == null)
                     throw new OdeFault(__msgs.msgSOAPBodyDoesNotContainRequiredPart(partDef.getName()));
 
-                OMElement srcPart = srcParts.next();
                 if (partDef.getElementName() == null)
                     throw new OdeFault(__msgs.msgBindingDefinesNonElementDocListParts());
                 if (!srcPart.getQName().equals(partDef.getElementName()))
                     throw new OdeFault(__msgs.msgUnexpectedElementInSOAPBody(srcPart.getQName(), partDef.getElementName()));
                 Document doc = DOMUtils.newDocument();
                 Element destPart = doc.createElementNS(null, partDef.getName());
-                destPart.appendChild(doc.importNode(OMUtils.toDOM(srcPart), true));
+                destPart.appendChild(toDOM(srcPart, doc, i == bodyParts.size() - 1));
                 message.setPart(partDef.getName(), destPart);
             }
         }
     }
 
+    /**
+     * Converts a body part, the last one is streamed from the parser when the body hasn't been read yet as
+     * nothing needs the SOAP envelope anymore once it's converted.
+     */
+    private Element toDOM(OMElement srcPart, Document doc, boolean last) throws AxisFault {
+        if (!last) return OMUtils.toDOM(srcPart, doc);
+        try {
+            return OMUtils.streamToDOM(srcPart, doc);
+        } catch (XMLStreamException e) {
+            throw new OdeFault("Couldn't read SOAP body part " + srcPart.getQName(), e);
+        }
+    }
+
+    private static OMElement nextSiblingElement(OMElement elmt) {
+        OMNode node = elmt.getNextOMSibling();
+        while (node != null && node.getType() != OMNode.ELEMENT_NODE)
+            node = node.getNextOMSibling();
+        return (OMElement) node;
+    }
+
     public void extractSoapHeaderParts(org.apache.ode.bpel.iapi.Message message,
                                        org.apache.axiom.soap.SOAPHeader soapHeader,
                                        List<SOAPHeader> headerDefs, Message msg) throws AxisFault {
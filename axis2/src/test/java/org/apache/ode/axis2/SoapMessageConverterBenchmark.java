@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.axis2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.impl.llom.factory.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
+import org.apache.ode.il.OMUtils;
+import org.apache.ode.utils.DOMUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Compares the conversion of SOAP bodies between Axiom and DOM going through a full Axiom tree with the
+ * streaming conversion, for envelopes from 10KB to 10MB. Not a unit test, run it with the test classpath:
+ * <pre>java org.apache.ode.axis2.SoapMessageConverterBenchmark [iterations]</pre>
+ */
+public class SoapMessageConverterBenchmark {
+
+    private static final int[] SIZES = { 10 * 1024, 100 * 1024, 1024 * 1024, 10 * 1024 * 1024 };
+    private static final String NS = "http://documentum.com/ws/2005/services";
+
+    private static final SOAPFactory _factory = OMAbstractFactory.getSOAP11Factory();
+
+    interface Conversion {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        for (int size : SIZES) {
+            final byte[] envelope = envelope(size);
+            final Element payload = DOMUtils.getFirstChildElement(DOMUtils.getFirstChildElement(
+                    DOMUtils.stringToDOM(new String(envelope, "UTF-8"))));
+
+            System.out.println("Envelope of " + envelope.length / 1024 + "KB");
+            measure("  SOAP to DOM, Axiom tree", iterations, new Conversion() {
+                public Object run() throws Exception {
+                    OMElement part = parse(envelope).getBody().getFirstElement();
+                    Document doc = DOMUtils.newDocument();
+                    return doc.importNode(OMUtils.toDOM(part), true);
+                }
+            });
+            measure("  SOAP to DOM, streaming ", iterations, new Conversion() {
+                public Object run() throws Exception {
+                    OMElement part = parse(envelope).getBody().getFirstElement();
+                    return OMUtils.streamToDOM(part, DOMUtils.newDocument());
+                }
+            });
+            measure("  DOM to SOAP, Axiom tree", iterations, new Conversion() {
+                public Object run() throws Exception {
+                    return write(OMUtils.toOM(payload, _factory));
+                }
+            });
+            measure("  DOM to SOAP, streaming ", iterations, new Conversion() {
+                public Object run() throws Exception {
+                    return write(OMUtils.streamToOM(payload, _factory));
+                }
+            });
+        }
+    }
+
+    private static void measure(String name, int iterations, Conversion conversion) throws Exception {
+        // warm up
+        conversion.run();
+        conversion.run();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) conversion.run();
+        long elapsed = (System.nanoTime() - start) / iterations / 1000;
+
+        // memory still held once converted, the envelope included
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        Object result = conversion.run();
+        System.gc();
+        long held = runtime.totalMemory() - runtime.freeMemory() - before;
+        if (result == null) throw new IllegalStateException();
+
+        System.out.println(name + ": " + elapsed / 1000.0 + "ms, " + Math.max(0, held) / 1024 + "KB held");
+    }
+
+    private static SOAPEnvelope parse(byte[] envelope) throws Exception {
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(envelope));
+        return OMXMLBuilderFactory.createStAXSOAPModelBuilder(_factory, sr).getSOAPEnvelope();
+    }
+
+    private static SOAPEnvelope write(OMElement part) throws Exception {
+        SOAPEnvelope env = _factory.getDefaultEnvelope();
+        env.getBody().addChild(part);
+        env.serializeAndConsume(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        return env;
+    }
+
+    /**
+     * A document-literal request with a payload of repeated elements.
+     */
+    private static byte[] envelope(int size) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 1024);
+        out.write(("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+                + "<getObjectId xmlns=\"" + NS + "\" foo=\"bar\">").getBytes("UTF-8"));
+        byte[] item = "<item id=\"0000\"><name>some name</name><value>some value, some value</value></item>"
+                .getBytes("UTF-8");
+        while (out.size() < size) out.write(item);
+        out.write("</getObjectId></soapenv:Body></soapenv:Envelope>".getBytes("UTF-8"));
+        return out.toByteArray();
+    }
+}
@@ -18,6 +18,9 @@
  */
 package org.apache.ode.axis2;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
 import javax.wsdl.Definition;
 import javax.wsdl.Operation;
 import javax.wsdl.PortType;
@@ -29,6 +32,7 @@ import javax.xml.stream.XMLStreamReader;
 
 import junit.framework.TestCase;
 
+import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.impl.llom.factory.OMXMLBuilderFactory;
 import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axiom.soap.impl.builder.StAXSOAPModelBuilder;
@@ -147,6 +151,31 @@ public class SoapMessageConverterTest extends TestCase {
         assertNull(odeMsg2.getPart("DocumentumRequestHeader"));
     }
 
+    /** Parts are written straight from the DOM and read back from the parser. */
+    public void testStreamedRoundTrip() throws Exception {
+        MessageContext msgCtx = new MessageContext();
+        MemBackedMessageImpl odeMsg1 = new MemBackedMessageImpl(null, req1.getDocumentElement(), null, false);
+        odeMsg1.setHeaderPart("DocumentumRequestHeader", DOMUtils.findChildByName(req1.getDocumentElement(),
+                new QName("http://documentum.com/ws/2005/services", "DocumentumSecurityToken")));
+        portmapper.createSoapRequest(msgCtx, odeMsg1, op1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        msgCtx.getEnvelope().serializeAndConsume(out);
+
+        XMLStreamReader sr = XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(out.toByteArray()));
+        StAXSOAPModelBuilder builder = OMXMLBuilderFactory.createStAXSOAPModelBuilder(OMAbstractFactory.getSOAP11Factory(), sr);
+        MemBackedMessageImpl odeMsg2 = new MemBackedMessageImpl(null, DOMUtils.stringToDOM("<message/>"), null, false);
+        portmapper.parseSoapRequest(odeMsg2, builder.getSOAPEnvelope(), op1);
+
+        Element params = DOMUtils.findChildByName(odeMsg2.getMessage(), new QName(null, "parameters"));
+        assertNotNull(params);
+        Element payload = DOMUtils.getFirstChildElement(params);
+        assertEquals(new QName(wsdl1tns, "getObjectId"), new QName(payload.getNamespaceURI(), payload.getLocalName()));
+        assertEquals("bar", payload.getAttribute("foo"));
+        assertNotNull(DOMUtils.findChildByName(payload, new QName(wsdl1tns, "someFooBar")));
+        assertNotNull(DOMUtils.findChildByName(payload, new QName(null, "barbaz")));
+        assertNotNull(odeMsg2.getHeaderPart("DocumentumRequestHeader"));
+    }
+
     /** Make sure hello world request parses correctly. */
     public void testHelloWorldRequest() throws Exception {
         SoapMessageConverter portmaper1 = new SoapMessageConverter(wsdlHW, new QName(wsdlHW
@@ -94,6 +94,16 @@ public interface MyRoleMessageExchange extends MessageExchange {
      * @return
      */
     Future<MessageExchange.Status> invokeAsync();
+
+    /**
+     * Invoke a process asynchronously like {@link #invokeAsync()}, running the given callback once the operation
+     * completes. This lets the integration layer send the response without keeping a thread waiting on the
+     * returned future. The callback is run by an engine thread, it should hand off anything lengthy.
+     *
+     * @param onCompletion callback run once the exchange has been acknowledged
+     * @return
+     */
+    Future<MessageExchange.Status> invokeAsync(Runnable onCompletion);
         
     /**
      * Complete the message, exchange: indicates that the client has receive the
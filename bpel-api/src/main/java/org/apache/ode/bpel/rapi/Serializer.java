@@ -22,6 +22,8 @@ import javax.xml.namespace.QName;
 import java.io.*;
 import java.util.Arrays;
 
+import org.apache.ode.utils.Interner;
+
 /**
  * Header written at the beginning of every compiled BPEL object file.
  */
@@ -37,6 +39,13 @@ public class Serializer {
 
     public static final short FORMAT_SERIALIZED_JAVA14 = 0x01;
 
+    /**
+     * Names, namespaces and expressions are mostly the same from one version of a process to the next, all the
+     * models loaded share a single instance of each. QNames aren't interned themselves: their equality ignores
+     * the prefix, so a shared instance could carry the prefix of another process.
+     */
+    private static final Interner<String> __strings = new Interner<String>();
+
     // START PERSISTED FIELDS
     public final byte[] magic = new byte[MAGIC_NUMBER.length];
 
@@ -179,7 +188,10 @@ public class Serializer {
         protected Object resolveObject(Object obj) throws IOException {
             if(obj instanceof OQName){
                 OQName q = (OQName)obj;
-                return new QName(q.uri, q.local, q.prefix);
+                return new QName(__strings.intern(q.uri), __strings.intern(q.local), __strings.intern(q.prefix));
+            }
+            if (obj instanceof String) {
+                return __strings.intern((String) obj);
             }
             return super.resolveObject(obj);
         }
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ode.utils.StreamUtils;
+
+/**
+ * {@link DefaultResourceFinder} keeping the content of the resources it opens in a cache that can be shared with
+ * other finders, possibly used concurrently. Compilations sharing a cache read each WSDL and schema document once.
+ * The resources must not change while the cache is in use. A finder itself isn't thread safe, each compilation
+ * should have its own.
+ */
+public class CachingResourceFinder extends DefaultResourceFinder {
+
+    private final File _relativeDir;
+    private final ConcurrentMap<String, byte[]> _cache;
+    private final Map<URI, byte[]> _opened = new LinkedHashMap<URI, byte[]>();
+
+    /**
+     * @param relativeDir base path for relative URLs.
+     * @param absoluteDir base path for absolute URLs.
+     * @param cache content of the resources already read
+     */
+    public CachingResourceFinder(File relativeDir, File absoluteDir, ConcurrentMap<String, byte[]> cache) {
+        super(relativeDir, absoluteDir);
+        _relativeDir = relativeDir;
+        _cache = cache;
+    }
+
+    public InputStream openResource(URI uri) throws MalformedURLException, IOException {
+        // Anything but a file URI is resolved against the relative directory
+        String key = uri.isAbsolute() && "file".equals(uri.getScheme()) ? uri.toString() : _relativeDir.toURI() + " " + uri;
+        byte[] content = _cache.get(key);
+        if (content == null) {
+            InputStream is = super.openResource(uri);
+            if (is == null) return null;
+            try {
+                content = StreamUtils.read(is);
+            } finally {
+                is.close();
+            }
+            byte[] existing = _cache.putIfAbsent(key, content);
+            if (existing != null) content = existing;
+        }
+        _opened.put(uri, content);
+        return new ByteArrayInputStream(content);
+    }
+
+    /**
+     * @return the content of the resources opened through this finder (and not any other sharing the cache),
+     * in the order they've been opened
+     */
+    public Map<URI, byte[]> getOpenedResources() {
+        return Collections.unmodifiableMap(_opened);
+    }
+}
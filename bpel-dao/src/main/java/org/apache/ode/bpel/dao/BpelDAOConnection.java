@@ -26,6 +26,7 @@ import javax.xml.namespace.QName;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents the physical resource for connecting to the bpel state store.
@@ -79,6 +80,15 @@ public interface BpelDAOConnection {
      */
     void insertBpelEvent(BpelEvent event, ProcessDAO process, ProcessInstanceDAO instance);
 
+    /**
+     * Insert BPEL events of process instances into the database at once, in JDBC batches when the database
+     * allows it.
+     *
+     * @param events
+     *            the BPEL events, in insertion order, with the instance each one belongs to
+     */
+    void insertBpelEvents(Map<BpelEvent, ProcessInstanceDAO> events);
+
     /**
      * Execute a query for the timeline for BPEL events matching the criteria.
      * 
@@ -18,6 +18,8 @@
  */
 package org.apache.ode.bpel.dao;
 
+import java.util.Collection;
+
 import org.apache.ode.bpel.common.CorrelationKey;
 
 /**
@@ -77,6 +79,35 @@ public interface CorrelatorDAO {
    */
   MessageRouteDAO findRoute(CorrelationKey correlationKey);
 
+  /**
+   * Find the routes matching several correlation keys in a single lookup.
+   * @param correlationKeys correlation keys
+   * @return route matching each correlation key, in the same order, <code>null</code> for
+   *         the keys without route
+   */
+  MessageRouteDAO[] findRoute(CorrelationKey[] correlationKeys);
+
+  /**
+   * Get the correlation keys of all the routes {@link #findRoute(CorrelationKey)} could currently
+   * return, including the routes of the other versions of the process.
+   * @return correlation keys of the existing routes
+   */
+  Collection<CorrelationKey> getRouteKeys();
+
+  /**
+   * Get the number of times {@link #incrementRouteVersion()} has been committed, across all the versions
+   * of the process like {@link #getRouteKeys()}. Lets a node tell whether other nodes added routes since it
+   * last read them.
+   * @return route version of the correlator
+   */
+  long getRouteVersion();
+
+  /**
+   * Increment the route version of this correlator. The correlator stays locked until the end of the
+   * transaction, only call it when something actually tracks the route version.
+   */
+  void incrementRouteVersion();
+
   /**
    * Add a route from the given correlation key to the given process instance.
    * @param routeGroupId identifier of the group of routes to which this route belongs
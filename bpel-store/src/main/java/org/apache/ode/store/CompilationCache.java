@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.store;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URI;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ode.bpel.compiler.BpelC;
+import org.apache.ode.bpel.compiler.ResourceFinder;
+import org.apache.ode.utils.DOMUtils;
+import org.apache.ode.utils.StreamUtils;
+import org.w3c.dom.Node;
+
+/**
+ * Content addressed store of compiled processes, so that the processes of a redeployed unit that haven't
+ * changed don't get compiled again. A compiled process is keyed by a hash of its BPEL source, its compile
+ * properties, the compiler version and all the documents (WSDL, schemas, stylesheets...) read while compiling
+ * it. As those documents are only known once the process has been compiled, each source key maps to a
+ * manifest listing the documents of its last compilation along with their hashes.
+ * <p>
+ * Entries are written to temporary files first and then renamed, the cache directory can be shared by several
+ * servers. Nothing is ever evicted, old entries can be deleted at any time.
+ */
+class CompilationCache {
+    private static final Log __log = LogFactory.getLog(CompilationCache.class);
+
+    private static final String COMPILER_VERSION = compilerVersion();
+
+    private final File _dir;
+
+    CompilationCache(File dir) {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IllegalArgumentException("Couldn't create the compilation cache directory " + dir);
+        _dir = dir;
+    }
+
+    /**
+     * @return the key of the process source, null if it couldn't be computed
+     */
+    String sourceKey(File bpelFile, Map<String, Object> compileProperties, File bpel11Wsdl) {
+        try {
+            MessageDigest digest = newDigest();
+            update(digest, COMPILER_VERSION);
+            digest.update(StreamUtils.read(bpelFile.toURL()));
+            if (bpel11Wsdl != null) {
+                update(digest, "wsdl11");
+                digest.update(StreamUtils.read(bpel11Wsdl.toURL()));
+            }
+            if (compileProperties != null && compileProperties.get(BpelC.PROCESS_CUSTOM_PROPERTIES) != null) {
+                Map<QName, Node> props = (Map<QName, Node>) compileProperties.get(BpelC.PROCESS_CUSTOM_PROPERTIES);
+                // Sorted, the properties come in no particular order
+                TreeMap<String, Node> sorted = new TreeMap<String, Node>();
+                for (Map.Entry<QName, Node> prop : props.entrySet())
+                    sorted.put(prop.getKey().toString(), prop.getValue());
+                for (Map.Entry<String, Node> prop : sorted.entrySet()) {
+                    update(digest, prop.getKey());
+                    digest.update(DOMUtils.domToBytes(prop.getValue()));
+                }
+            }
+            return toHex(digest.digest());
+        } catch (IOException e) {
+            __log.warn("Couldn't compute the compilation cache key of " + bpelFile + ", it won't be cached.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Copies the process compiled for the given source to the cbp file, provided that the documents it was
+     * compiled with haven't changed.
+     *
+     * @param baseURI URI of the deployment unit directory, documents of the unit are recorded relatively to it
+     * @param finder finder used to read the documents
+     * @return true if the compiled process has been restored, false if the process needs compiling
+     */
+    boolean restore(String sourceKey, URI baseURI, ResourceFinder finder, File cbpFile) {
+        File manifestFile = new File(_dir, sourceKey + ".deps");
+        if (!manifestFile.exists()) return false;
+        try {
+            String manifest = new String(StreamUtils.read(manifestFile.toURL()), "UTF-8");
+            BufferedReader reader = new BufferedReader(new StringReader(manifest));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // <hash> <d|a> <uri>, d for a document of the unit
+                String[] entry = line.split(" ", 3);
+                URI uri = "d".equals(entry[1]) ? baseURI.resolve(entry[2]) : new URI(entry[2]);
+                InputStream is = finder.openResource(uri);
+                if (is == null) return false;
+                try {
+                    if (!entry[0].equals(toHex(newDigest().digest(StreamUtils.read(is))))) return false;
+                } finally {
+                    is.close();
+                }
+            }
+
+            File cached = new File(_dir, entryKey(sourceKey, manifest) + ".cbp");
+            if (!cached.exists()) return false;
+            copy(cached, cbpFile);
+            return true;
+        } catch (Exception e) {
+            __log.debug("Couldn't use the compilation cache for " + cbpFile + ", compiling.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Adds a compiled process to the cache.
+     *
+     * @param documents content of the documents read while compiling the process, by URI
+     */
+    void store(String sourceKey, URI baseURI, Map<URI, byte[]> documents, File cbpFile) {
+        try {
+            StringBuffer manifest = new StringBuffer();
+            for (Map.Entry<URI, byte[]> doc : documents.entrySet()) {
+                URI relative = doc.getKey().isAbsolute() ? baseURI.relativize(doc.getKey()) : null;
+                manifest.append(toHex(newDigest().digest(doc.getValue())));
+                if (relative != null && !relative.isAbsolute()) manifest.append(" d ").append(relative);
+                else manifest.append(" a ").append(doc.getKey());
+                manifest.append('\n');
+            }
+
+            // The compiled process goes first so that it can always be found once the manifest is visible
+            File tmp = File.createTempFile("cbp", ".tmp", _dir);
+            copy(cbpFile, tmp);
+            publish(tmp, new File(_dir, entryKey(sourceKey, manifest.toString()) + ".cbp"));
+
+            tmp = File.createTempFile("deps", ".tmp", _dir);
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+            try {
+                writer.write(manifest.toString());
+            } finally {
+                writer.close();
+            }
+            publish(tmp, new File(_dir, sourceKey + ".deps"));
+        } catch (IOException e) {
+            __log.warn("Couldn't add " + cbpFile + " to the compilation cache.", e);
+        }
+    }
+
+    private static String entryKey(String sourceKey, String manifest) throws IOException {
+        MessageDigest digest = newDigest();
+        update(digest, sourceKey);
+        update(digest, manifest);
+        return toHex(digest.digest());
+    }
+
+    private static void publish(File tmp, File target) throws IOException {
+        // Renaming over an existing file fails on some platforms, the content is the same anyway
+        if (target.exists()) target.delete();
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            if (!target.exists()) throw new IOException("Couldn't rename " + tmp + " to " + target);
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream is = new FileInputStream(from);
+        try {
+            OutputStream os = new FileOutputStream(to);
+            try {
+                StreamUtils.copy(os, is);
+            } finally {
+                os.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 isn't available: " + e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) throws IOException {
+        digest.update(value.getBytes("UTF-8"));
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuffer hex = new StringBuffer(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Version of the compiler, the timestamp of its archive when it doesn't have one (development builds).
+     */
+    private static String compilerVersion() {
+        String version = BpelC.class.getPackage() == null ? null : BpelC.class.getPackage().getImplementationVersion();
+        if (version != null) return version;
+        try {
+            CodeSource source = BpelC.class.getProtectionDomain().getCodeSource();
+            if (source != null && "file".equals(source.getLocation().getProtocol()))
+                return "dev-" + new File(source.getLocation().toURI()).lastModified();
+        } catch (Exception e) {
+            __log.debug("Couldn't locate the compiler archive.", e);
+        }
+        return "unknown";
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.ode.store;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.ode.bpel.compiler.BpelC;
+import org.apache.ode.bpel.compiler.CachingResourceFinder;
 import org.apache.ode.bpel.compiler.DefaultResourceFinder;
 import org.apache.ode.bpel.compiler.WSDLLocatorImpl;
 import org.apache.ode.bpel.extension.ExtensionValidator;
@@ -53,6 +54,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Container providing various functions on the deployment directory.
@@ -69,6 +76,7 @@ class DeploymentUnitDir {
     private HashMap<QName, CBPInfo> _processes = new HashMap<QName,CBPInfo>();
     private HashMap<QName, TDeployment.Process> _processInfo = new HashMap<QName,TDeployment.Process>();
     private Map<QName, ExtensionValidator> _extensionValidators;
+    private CompilationCache _compilationCache;
     
     private volatile DeployDocument _dd;
     private volatile DocumentRegistry _docRegistry;
@@ -127,11 +135,51 @@ class DeploymentUnitDir {
      * starts compilation.
      */
     void compile() {
+        compile(1);
+    }
+
+    /**
+     * Compiles the BPEL files concurrently with the given number of threads. Whatever the number of threads, the
+     * WSDL and schema documents of the unit are only read once for all the processes.
+     */
+    void compile(int threads) {
         ArrayList<File> bpels = listFilesRecursively(_duDirectory, DeploymentUnitDir._bpelFilter);
         if (bpels.size() == 0)
             throw new IllegalArgumentException("Directory " + _duDirectory.getName() + " does not contain any process!");
-        for (File bpel : bpels) {
-            compile(bpel);
+        final ConcurrentHashMap<String, byte[]> documents = new ConcurrentHashMap<String, byte[]>();
+        if (threads <= 1 || bpels.size() == 1) {
+            for (File bpel : bpels) {
+                compile(bpel, documents);
+            }
+            return;
+        }
+
+        // Parsed lazily otherwise, better done once before the compilations need it
+        getDeploymentDescriptor();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, bpels.size()));
+        try {
+            ArrayList<Future<?>> compilations = new ArrayList<Future<?>>();
+            for (final File bpel : bpels) {
+                compilations.add(pool.submit(new Runnable() {
+                    public void run() {
+                        compile(bpel, documents);
+                    }
+                }));
+            }
+            // Failures are reported in the order of the files, like a serial compilation would
+            for (Future<?> compilation : compilations) {
+                try {
+                    compilation.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ContextException("Interrupted while compiling " + _duDirectory.getName(), e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                    throw new ContextException("Error compiling " + _duDirectory.getName(), e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
         }
     }
 
@@ -156,15 +204,31 @@ class DeploymentUnitDir {
         return !_duDirectory.exists();
     }
 
-    private void compile(File bpelFile) {
-        BpelC bpelc = BpelC.newBpelCompiler();
-
+    private void compile(File bpelFile, ConcurrentMap<String, byte[]> documents) {
+        CachingResourceFinder finder = new CachingResourceFinder(bpelFile.getAbsoluteFile().getParentFile(),
+                _duDirectory.getAbsoluteFile(), documents);
         // BPEL 1.1 does not suport the <import> element, so "global" WSDL needs to be configured explicitly.
         File bpel11wsdl = findBpel11Wsdl(bpelFile);
+        Map<String, Object> compileProperties = prepareCompileProperties(bpelFile);
+
+        String bpelPath = bpelFile.getAbsolutePath();
+        File cbpFile = new File(bpelPath.substring(0, bpelPath.lastIndexOf(".")) + ".cbp");
+        URI baseURI = _duDirectory.getAbsoluteFile().toURI();
+        String cacheKey = null;
+        if (_compilationCache != null) {
+            cacheKey = _compilationCache.sourceKey(bpelFile, compileProperties, bpel11wsdl);
+            if (cacheKey != null && _compilationCache.restore(cacheKey, baseURI, finder, cbpFile)) {
+                __log.debug("Unchanged process " + bpelFile + ", reusing its cached compilation.");
+                return;
+            }
+        }
+
+        BpelC bpelc = BpelC.newBpelCompiler();
+        bpelc.setResourceFinder(finder);
         if (bpel11wsdl != null)
             bpelc.setProcessWSDL(bpel11wsdl.toURI());
 
-        bpelc.setCompileProperties(prepareCompileProperties(bpelFile));
+        bpelc.setCompileProperties(compileProperties);
         bpelc.setExtensionValidators(_extensionValidators);
         bpelc.setBaseDirectory(_duDirectory);
         try {
@@ -173,6 +237,8 @@ class DeploymentUnitDir {
             __log.error("Compile error in " + bpelFile, e);
             throw new RuntimeException(e);
         }
+        if (cacheKey != null)
+            _compilationCache.store(cacheKey, baseURI, finder.getOpenedResources(), cbpFile);
     }
 
     /**
@@ -389,4 +455,8 @@ class DeploymentUnitDir {
     public void setExtensionValidators(Map<QName, ExtensionValidator> extensionValidators) {
     	_extensionValidators = extensionValidators;
     }
+
+    void setCompilationCache(CompilationCache compilationCache) {
+        _compilationCache = compilationCache;
+    }
 }
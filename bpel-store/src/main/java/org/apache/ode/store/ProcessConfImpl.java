@@ -18,6 +18,7 @@
  */
 package org.apache.ode.store;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -223,7 +224,8 @@ public class ProcessConfImpl implements ProcessConf {
         if (cbpInfo == null)
             throw new ContextException("CBP record not found for type " + getType());
         try {
-            return new FileInputStream(cbpInfo.cbp);
+            // Deserialization does lots of tiny reads
+            return new BufferedInputStream(new FileInputStream(cbpInfo.cbp), 64 * 1024);
         } catch (FileNotFoundException e) {
             throw new ContextException("File Not Found: " + cbpInfo.cbp, e);
         }
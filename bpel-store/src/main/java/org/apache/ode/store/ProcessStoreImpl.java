@@ -22,7 +22,9 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -114,12 +116,25 @@ public class ProcessStoreImpl implements ProcessStore {
      */
     private DataSource _inMemDs;
 
+    /** Number of threads loading deployment units and activating processes in {@link #loadAll()}. */
+    private int _loadThreads = 1;
+
+    /** Number of threads compiling the processes of a deployment unit. */
+    private int _compileThreads = 1;
+
+    /** Compiled processes of previous deployments, null when caching is disabled. */
+    private CompilationCache _compilationCache;
+
     public ProcessStoreImpl() {
         this(null, null, "", new OdeConfigProperties(new Properties(), ""), true);
     }
 
     public ProcessStoreImpl(EndpointReferenceContext eprContext, DataSource ds, String persistenceType, OdeConfigProperties props, boolean createDatamodel) {
         this.eprContext = eprContext;
+        _loadThreads = props.getStartupThreads();
+        _compileThreads = props.getCompileThreads();
+        if (props.getCompilationCacheDir() != null)
+            _compilationCache = new CompilationCache(props.getCompilationCacheDir());
         if (ds != null) {
             // ugly hack
             if (persistenceType.toLowerCase().indexOf("hib") != -1)
@@ -179,8 +194,9 @@ public class ProcessStoreImpl implements ProcessStore {
         // Create the DU and compile/scan it before acquiring lock.
         final DeploymentUnitDir du = new DeploymentUnitDir(deploymentUnitDirectory);
         du.setExtensionValidators(_extensionValidators);
+        du.setCompilationCache(_compilationCache);
         try {
-            du.compile();
+            du.compile(_compileThreads);
         } catch (CompilationException ce) {
             String errmsg = __msgs.msgDeployFailCompileErrors(ce);
             __log.error(errmsg, ce);
@@ -465,24 +481,101 @@ public class ProcessStoreImpl implements ProcessStore {
     }
 
     /**
-     * Load all the deployment units out of the store. Called on start-up.
-     *
+     * Load all the deployment units out of the store. Called on start-up. When more than one load thread is
+     * configured, the deployment unit directories are scanned concurrently and the processes of different types are
+     * activated concurrently, the versions of a same process type still being activated in order.
      */
     public void loadAll() {
-        final ArrayList<ProcessConfImpl> loaded = new ArrayList<ProcessConfImpl>();
-        exec(new Callable<Object>() {
-            public Object call(ConfStoreConnection conn) {
-                Collection<DeploymentUnitDAO> dus = conn.getDeploymentUnits();
-                for (DeploymentUnitDAO du : dus)
+        long start = System.currentTimeMillis();
+        ExecutorService pool = null;
+        if (_loadThreads > 1)
+            pool = Executors.newFixedThreadPool(_loadThreads, new SimpleThreadFactory("ProcessStoreLoader-"));
+        try {
+            final Map<String, DeploymentUnitDir> scanned = pool == null ? null : scanAll(pool);
+            long scanTime = System.currentTimeMillis() - start;
+
+            final ArrayList<ProcessConfImpl> loaded = new ArrayList<ProcessConfImpl>();
+            exec(new Callable<Object>() {
+                public Object call(ConfStoreConnection conn) {
+                    Collection<DeploymentUnitDAO> dus = conn.getDeploymentUnits();
+                    for (DeploymentUnitDAO du : dus)
+                        try {
+                            loaded.addAll(load(du, scanned == null ? null : scanned.get(du.getName())));
+                        } catch (Exception ex) {
+                            __log.error("Error loading DU from store: " + du.getName(), ex);
+                        }
+                    return null;
+                }
+            });
+            long loadTime = System.currentTimeMillis() - start - scanTime;
+
+            if (pool == null) {
+                activate(loaded);
+            } else {
+                // Versions of a process replace each other when activated, so they're activated in order
+                LinkedHashMap<QName, List<ProcessConfImpl>> byType = new LinkedHashMap<QName, List<ProcessConfImpl>>();
+                for (ProcessConfImpl p : loaded) {
+                    List<ProcessConfImpl> versions = byType.get(p.getType());
+                    if (versions == null) byType.put(p.getType(), versions = new ArrayList<ProcessConfImpl>());
+                    versions.add(p);
+                }
+                ArrayList<Future<?>> activations = new ArrayList<Future<?>>();
+                for (final List<ProcessConfImpl> versions : byType.values()) {
+                    activations.add(pool.submit(new Runnable() {
+                        public void run() {
+                            activate(versions);
+                        }
+                    }));
+                }
+                waitFor(activations);
+            }
+            long activationTime = System.currentTimeMillis() - start - scanTime - loadTime;
+
+            __log.info("Loaded " + loaded.size() + " processes with " + _loadThreads + " threads: scan " + scanTime
+                    + "ms, load " + loadTime + "ms, activation " + activationTime + "ms.");
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+    }
+
+    /**
+     * Scans the directories of all the deployment units concurrently: deployment descriptors, compiled process
+     * headers and WSDL documents.
+     */
+    private Map<String, DeploymentUnitDir> scanAll(ExecutorService pool) {
+        final Map<String, File> dirs = exec(new Callable<Map<String, File>>() {
+            public Map<String, File> call(ConfStoreConnection conn) {
+                HashMap<String, File> dirs = new HashMap<String, File>();
+                for (DeploymentUnitDAO du : conn.getDeploymentUnits()) {
+                    File dudir = findDeployDir(du);
+                    if (dudir != null) dirs.put(du.getName(), dudir);
+                }
+                return dirs;
+            }
+        });
+
+        final ConcurrentHashMap<String, DeploymentUnitDir> scanned = new ConcurrentHashMap<String, DeploymentUnitDir>();
+        ArrayList<Future<?>> scans = new ArrayList<Future<?>>();
+        for (final Map.Entry<String, File> entry : dirs.entrySet()) {
+            scans.add(pool.submit(new Runnable() {
+                public void run() {
                     try {
-                        loaded.addAll(load(du));
+                        DeploymentUnitDir dud = new DeploymentUnitDir(entry.getValue());
+                        dud.scan();
+                        dud.getDocRegistry();
+                        scanned.put(entry.getKey(), dud);
                     } catch (Exception ex) {
-                        __log.error("Error loading DU from store: " + du.getName(), ex);
+                        // Scanned again (and reported) when loaded
+                        __log.debug("Error scanning DU " + entry.getKey(), ex);
                     }
-                return null;
-            }
-        });
+                }
+            }));
+        }
+        waitFor(scans);
+        return scanned;
+    }
 
+    private void activate(List<ProcessConfImpl> loaded) {
         for (ProcessConfImpl p : loaded) {
             try {
                 fireStateChange(p.getProcessId(), p.getState(), p.getDeploymentUnit().getName());
@@ -490,7 +583,19 @@ public class ProcessStoreImpl implements ProcessStore {
                 __log.error("Error while activating process: pid=" + p.getProcessId() + " package="+p.getDeploymentUnit().getName(), except);
             }
         }
+    }
 
+    private void waitFor(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ContextException("Interrupted while loading deployment units.", e);
+            } catch (ExecutionException e) {
+                __log.error("Error while loading deployment units.", e.getCause());
+            }
+        }
     }
 
     public List<QName> getProcesses() {
@@ -614,16 +719,28 @@ public class ProcessStoreImpl implements ProcessStore {
      * @param dudao
      */
     protected List<ProcessConfImpl> load(DeploymentUnitDAO dudao) {
+        return load(dudao, null);
+    }
+
+    /**
+     * Load a deployment unit record stored in the db into memory.
+     *
+     * @param dudao
+     * @param dud already scanned deployment unit directory, <code>null</code> to scan it now
+     */
+    private List<ProcessConfImpl> load(DeploymentUnitDAO dudao, DeploymentUnitDir dud) {
 
         __log.debug("Loading deployment unit record from db: " + dudao.getName());
 
-        File dudir = findDeployDir(dudao);
+        if (dud == null) {
+            File dudir = findDeployDir(dudao);
 
-        if (dudir == null || !dudir.exists())
-            throw new ContextException("Deployed directory " +
-                    (dudir == null ? "(unknown)" : dudir) + " no longer there!");
-        DeploymentUnitDir dud = new DeploymentUnitDir(dudir);
-        dud.scan();
+            if (dudir == null || !dudir.exists())
+                throw new ContextException("Deployed directory " +
+                        (dudir == null ? "(unknown)" : dudir) + " no longer there!");
+            dud = new DeploymentUnitDir(dudir);
+            dud.scan();
+        }
 
         ArrayList<ProcessConfImpl> loaded = new ArrayList<ProcessConfImpl>();
 
@@ -804,16 +921,40 @@ public class ProcessStoreImpl implements ProcessStore {
         return old;
     }
 
+    /**
+     * @param loadThreads number of threads loading deployment units and activating processes on start-up
+     */
+    public void setLoadThreads(int loadThreads) {
+        _loadThreads = loadThreads;
+    }
+
+    /**
+     * @param compileThreads number of threads compiling the processes of a deployment unit
+     */
+    public void setCompileThreads(int compileThreads) {
+        _compileThreads = compileThreads;
+    }
+
 	public void setExtensionValidators(Map<QName, ExtensionValidator> extensionValidators) {
 		_extensionValidators = extensionValidators;
 	}
     
 
     private class SimpleThreadFactory implements ThreadFactory {
+        private final String prefix;
         int threadNumber = 0;
-        public Thread newThread(Runnable r) {
+
+        SimpleThreadFactory() {
+            this("ProcessStoreImpl-");
+        }
+
+        SimpleThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public synchronized Thread newThread(Runnable r) {
             threadNumber += 1;
-            Thread t = new Thread(r, "ProcessStoreImpl-"+threadNumber);
+            Thread t = new Thread(r, prefix+threadNumber);
             t.setDaemon(true);
             return t;
         }
@@ -19,11 +19,21 @@
 package org.apache.ode.store;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 
 import javax.xml.namespace.QName;
 
 import junit.framework.TestCase;
 
+import org.apache.ode.utils.StreamUtils;
+import org.apache.ode.utils.fs.FileUtils;
+
 /**
  * Test for {@link org.apache.ode.store.DeploymentUnitDir}. 
  * @author Maciej Szefler - m s z e f l e r @ g m a i l . c o m
@@ -48,5 +58,65 @@ public class DeploymentUnitTest  extends TestCase {
     public void testCompile() {
         du.compile();
     }
+
+    public void testCompilationCache() throws Exception {
+        File cache = tempDir("cbpcache");
+        // Documents of the unit get modified, work on a copy
+        File dir = tempDir("complexImport");
+        try {
+            copy(new File(getClass().getResource("/complexImport/deploy.xml").toURI().getPath()).getParentFile(), dir);
+            DeploymentUnitDir unit = new DeploymentUnitDir(dir);
+            unit.setCompilationCache(new CompilationCache(cache));
+            unit.compile();
+            unit.scan();
+            QName pid = unit.getProcessNames().iterator().next();
+            String guid = unit.getCBPInfo(pid).guid;
+
+            // A new compilation would generate a new guid
+            unit.compile();
+            unit.scan();
+            assertEquals(guid, unit.getCBPInfo(pid).guid);
+
+            // A schema imported through the WSDL documents of the process changes
+            Writer writer = new FileWriter(new File(dir, "dir1/dir11/baz.xsd"), true);
+            try {
+                writer.write("<!-- changed -->\n");
+            } finally {
+                writer.close();
+            }
+            unit.compile();
+            unit.scan();
+            assertFalse(guid.equals(unit.getCBPInfo(pid).guid));
+        } finally {
+            FileUtils.deepDelete(dir);
+            FileUtils.deepDelete(cache);
+        }
+    }
+
+    private static File tempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        if (from.isDirectory()) {
+            to.mkdirs();
+            for (File file : from.listFiles()) copy(file, new File(to, file.getName()));
+            return;
+        }
+        InputStream is = new FileInputStream(from);
+        try {
+            OutputStream os = new FileOutputStream(to);
+            try {
+                StreamUtils.copy(os, is);
+            } finally {
+                os.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
     
 }
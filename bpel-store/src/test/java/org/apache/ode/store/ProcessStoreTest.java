@@ -20,14 +20,21 @@ package org.apache.ode.store;
 
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Properties;
 
 import javax.xml.namespace.QName;
 
 import junit.framework.TestCase;
 
 import org.apache.ode.bpel.iapi.ProcessConf;
+import org.apache.ode.bpel.iapi.ProcessStoreEvent;
+import org.apache.ode.bpel.iapi.ProcessStoreListener;
+import org.apache.ode.il.config.OdeConfigProperties;
 
 public class ProcessStoreTest extends TestCase {
 
@@ -77,6 +84,35 @@ public class ProcessStoreTest extends TestCase {
         List<QName> pconfs = _ps.getProcesses();
         assertEquals(pname,pconfs.get(0));
     }
+
+    public void testParallelLoadAll() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(OdeConfigProperties.PROP_STARTUP_THREADS, "4");
+        ProcessStoreImpl ps = new ProcessStoreImpl(null, null, "", new OdeConfigProperties(props, ""), true);
+        try {
+            File complexImport = new File(getClass().getResource("/complexImport/deploy.xml").toURI().getPath()).getParentFile();
+            HashSet<QName> deployed = new HashSet<QName>();
+            deployed.addAll(ps.deploy(_testdd));
+            deployed.addAll(ps.deploy(complexImport));
+            assertEquals(2, deployed.size());
+
+            // As on start-up, the deployment units get loaded back from the store and their processes activated
+            final List<QName> activated = Collections.synchronizedList(new ArrayList<QName>());
+            ps.registerListener(new ProcessStoreListener() {
+                public void onProcessStoreEvent(ProcessStoreEvent event) {
+                    if (event.type == ProcessStoreEvent.Type.ACTIVATED) activated.add(event.pid);
+                }
+            });
+            ps.loadAll();
+
+            assertEquals(deployed.size(), activated.size());
+            assertEquals(deployed, new HashSet<QName>(activated));
+            for (QName pid : deployed) assertNotNull(ps.getProcessConfiguration(pid));
+            assertEquals(2, ps.getPackages().size());
+        } finally {
+            ps.shutdown();
+        }
+    }
     
     
 }
@@ -117,6 +117,10 @@ public class BpelDAOConnectionFactoryImpl implements BpelDAOConnectionFactoryJDB
             }
         }
 
+        // Lets the events written together by the engine go in JDBC batches
+        if (properties.get(Environment.STATEMENT_BATCH_SIZE) == null)
+            properties.put(Environment.STATEMENT_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+
         // Isolation levels override
         if (System.getProperty("ode.connection.isolation") != null) {
             String level = System.getProperty("ode.connection.isolation", "2");
@@ -135,6 +139,8 @@ public class BpelDAOConnectionFactoryImpl implements BpelDAOConnectionFactoryJDB
         _sessionManager = sm;
     }
 
+    private static final String DEFAULT_BATCH_SIZE = "50";
+
     private static final String DEFAULT_HIBERNATE_DIALECT = "org.hibernate.dialect.DerbyDialect";
 
     private static final HashMap<String, DialectFactory.VersionInsensitiveMapper> HIBERNATE_DIALECTS = new HashMap<String, DialectFactory.VersionInsensitiveMapper>();
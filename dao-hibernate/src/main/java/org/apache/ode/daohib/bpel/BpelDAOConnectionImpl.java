@@ -165,6 +165,15 @@ class BpelDAOConnectionImpl implements BpelDAOConnection {
         _insertBpelEvent(_sm.getSession(), event, process, instance);
     }
 
+    public void insertBpelEvents(Map<BpelEvent, ProcessInstanceDAO> events) {
+        Session sess = _sm.getSession();
+        for (Map.Entry<BpelEvent, ProcessInstanceDAO> entry : events.entrySet())
+            _insertBpelEvent(sess, entry.getKey(), entry.getValue().getProcess(), entry.getValue());
+        // Rows whose ids aren't generated by the database on insert (sequence, hilo) are only sent now, in
+        // batches of hibernate.jdbc.batch_size. Identity columns force Hibernate to insert them right away.
+        sess.flush();
+    }
+
     /**
      * Helper method for inserting bpel events into the database.
      * 
@@ -175,7 +184,8 @@ class BpelDAOConnectionImpl implements BpelDAOConnection {
      */
     static void _insertBpelEvent(Session sess, BpelEvent event, ProcessDAO process, ProcessInstanceDAO instance) {
         HBpelEvent hevent = new HBpelEvent();
-        hevent.setTstamp(new Timestamp(System.currentTimeMillis()));
+        // Events may be written some time after they occurred
+        hevent.setTstamp(new Timestamp(event.getTimestamp().getTime()));
         hevent.setType(BpelEvent.eventName(event));
         hevent.setDetail(event.toString());
         if (process != null)
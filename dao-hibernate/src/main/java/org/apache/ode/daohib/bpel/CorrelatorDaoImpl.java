@@ -19,8 +19,11 @@
 package org.apache.ode.daohib.bpel;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,8 +60,26 @@ class CorrelatorDaoImpl extends HibernateDao implements CorrelatorDAO {
     private static final String FLTR_SELECTORS = ("from " + HCorrelatorSelector.class.getName()
             + " hs where hs.correlationKey = ? and hs.processType = ? and hs.correlator.correlatorId = ?").intern();
 
+    /** Correlation keys of all the selectors of a correlator, across process versions. */
+    private static final String QRY_SELECTOR_KEYS = ("select hs.correlationKey from " + HCorrelatorSelector.class.getName()
+            + " hs where hs.processType = ? and hs.correlator.correlatorId = ?").intern();
+
+    /** Route version of a correlator, summed over the versions of its process. */
+    private static final String QRY_ROUTE_VERSION = ("select sum(hc.routeVersion) from " + HCorrelator.class.getName()
+            + " hc where hc.correlatorId = ? and hc.process.typeName = ? and hc.process.typeNamespace = ?").intern();
+
+    private static final String INCR_ROUTE_VERSION = ("update " + HCorrelator.class.getName()
+            + " set routeVersion = routeVersion+1 where id = ?").intern();
+
     private static final String LOCK_SELECTORS = "update from " + HCorrelatorSelector.class.getName() +
         " set lock = lock+1 where correlationKey = ? and processType = ?".intern();
+
+    /** Same as {@link #FLTR_SELECTORS} and {@link #LOCK_SELECTORS} for several correlation keys. */
+    private static final String FLTR_SELECTORS_MULTI = ("from " + HCorrelatorSelector.class.getName()
+            + " hs where hs.correlationKey in (:ckeys) and hs.processType = :ptype and hs.correlator.correlatorId = :corrid").intern();
+
+    private static final String LOCK_SELECTORS_MULTI = "update from " + HCorrelatorSelector.class.getName() +
+        " set lock = lock+1 where correlationKey in (:ckeys) and processType = :ptype".intern();
     
     /** Query for removing routes. */
     private static final String QRY_DELSELECTORS = "delete from " + HCorrelatorSelector.class.getName()
@@ -146,6 +167,74 @@ class CorrelatorDaoImpl extends HibernateDao implements CorrelatorDAO {
         return null;
     }
 
+    public MessageRouteDAO[] findRoute(CorrelationKey[] keys) {
+        entering("CorrelatorDaoImpl.findRoute");
+        String[] ckeys = canonifyKeys(keys);
+        String hdr = "findRoute(keys=" + CollectionUtils.makeCollection(ArrayList.class, ckeys) + "): ";
+        if (__log.isDebugEnabled())
+            __log.debug(hdr);
+
+        MessageRouteDAO[] routes = new MessageRouteDAO[keys.length];
+        if (keys.length == 0) return routes;
+
+        // Same locking as findRoute(CorrelationKey), done for all the keys in one statement
+        String processType = new QName(_hobj.getProcess().getTypeNamespace(), _hobj.getProcess().getTypeName()).toString();
+        Query lockQry = getSession().createQuery(LOCK_SELECTORS_MULTI);
+        lockQry.setParameterList("ckeys", ckeys);
+        lockQry.setString("ptype", processType);
+        if (lockQry.executeUpdate() == 0) return routes;
+
+        Query q = getSession().createQuery(FLTR_SELECTORS_MULTI);
+        q.setParameterList("ckeys", ckeys);
+        q.setString("ptype", processType);
+        q.setString("corrid", _hobj.getCorrelatorId());
+        q.setLockMode("hs", LockMode.UPGRADE);
+
+        // there shouldn't be more than one selector per key, if there is the first one is used
+        HashMap<String, HCorrelatorSelector> selectors = new HashMap<String, HCorrelatorSelector>();
+        for (Object o : q.list()) {
+            HCorrelatorSelector selector = (HCorrelatorSelector) o;
+            if (!selectors.containsKey(selector.getCorrelationKey()))
+                selectors.put(selector.getCorrelationKey(), selector);
+        }
+        for (int i = 0; i < ckeys.length; ++i) {
+            HCorrelatorSelector selector = selectors.get(ckeys[i]);
+            if (selector != null) routes[i] = new MessageRouteDaoImpl(_sm, selector);
+        }
+
+        __log.debug(hdr + "found " + selectors.values());
+        return routes;
+    }
+
+    public Collection<CorrelationKey> getRouteKeys() {
+        entering("CorrelatorDaoImpl.getRouteKeys");
+        String processType = new QName(_hobj.getProcess().getTypeNamespace(), _hobj.getProcess().getTypeName()).toString();
+        Query q = getSession().createQuery(QRY_SELECTOR_KEYS);
+        q.setString(0, processType);
+        q.setString(1, _hobj.getCorrelatorId());
+        List ckeys = q.list();
+        ArrayList<CorrelationKey> keys = new ArrayList<CorrelationKey>(ckeys.size());
+        for (Object ckey : ckeys) keys.add(new CorrelationKey((String) ckey));
+        return keys;
+    }
+
+    public long getRouteVersion() {
+        entering("CorrelatorDaoImpl.getRouteVersion");
+        Query q = getSession().createQuery(QRY_ROUTE_VERSION);
+        q.setString(0, _hobj.getCorrelatorId());
+        q.setString(1, _hobj.getProcess().getTypeName());
+        q.setString(2, _hobj.getProcess().getTypeNamespace());
+        Number version = (Number) q.uniqueResult();
+        return version == null ? 0 : version.longValue();
+    }
+
+    public void incrementRouteVersion() {
+        entering("CorrelatorDaoImpl.incrementRouteVersion");
+        Query q = getSession().createQuery(INCR_ROUTE_VERSION);
+        q.setLong(0, _hobj.getId());
+        q.executeUpdate();
+    }
+
     public void enqueueMessage(MessageExchangeDAO mex, CorrelationKey[] correlationKeys) {
         entering("CorrelatorDaoImpl.enqueueMessage");
         String[] keys = canonifyKeys(correlationKeys);
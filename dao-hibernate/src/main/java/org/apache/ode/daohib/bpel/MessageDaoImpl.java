@@ -26,7 +26,7 @@ import org.apache.ode.bpel.dao.MessageDAO;
 import org.apache.ode.daohib.SessionManager;
 import org.apache.ode.daohib.bpel.hobj.HLargeData;
 import org.apache.ode.daohib.bpel.hobj.HMessage;
-import org.apache.ode.utils.DOMUtils;
+import org.apache.ode.utils.StorageEncoding;
 import org.hibernate.Session;
 import org.w3c.dom.Element;
 
@@ -57,7 +57,7 @@ public class MessageDaoImpl extends HibernateDao implements MessageDAO {
         if (value == null) return;
         if (_hself.getMessageData() != null)
             _session.delete(_hself.getMessageData());
-        HLargeData newdata = new HLargeData(DOMUtils.domToString(value));
+        HLargeData newdata = new HLargeData(StorageEncoding.getDefault().encodeToBytes(value));
         _session.save(newdata);
         _hself.setMessageData(newdata);
         update();
@@ -68,7 +68,7 @@ public class MessageDaoImpl extends HibernateDao implements MessageDAO {
         if (_hself.getMessageData() == null)
             return null;
         try {
-            return DOMUtils.stringToDOM(_hself.getMessageData().getText());
+            return StorageEncoding.decode(_hself.getMessageData().getBinary());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -79,7 +79,7 @@ public class MessageDaoImpl extends HibernateDao implements MessageDAO {
         if (value == null) return;
         if (_hself.getHeader() != null)
             _session.delete(_hself.getHeader());
-        HLargeData newdata = new HLargeData(DOMUtils.domToString(value));
+        HLargeData newdata = new HLargeData(StorageEncoding.getDefault().encodeToBytes(value));
         _session.save(newdata);
         _hself.setHeader(newdata);
         update();
@@ -89,7 +89,7 @@ public class MessageDaoImpl extends HibernateDao implements MessageDAO {
         entering("MessageDaoImpl.getHeader");
         if (_hself.getHeader() == null) return null;
         try {
-            return DOMUtils.stringToDOM(_hself.getHeader().getText());
+            return StorageEncoding.decode(_hself.getHeader().getBinary());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
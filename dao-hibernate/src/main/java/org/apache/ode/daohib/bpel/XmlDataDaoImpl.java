@@ -25,6 +25,7 @@ import org.apache.ode.daohib.bpel.hobj.HLargeData;
 import org.apache.ode.daohib.bpel.hobj.HVariableProperty;
 import org.apache.ode.daohib.bpel.hobj.HXmlData;
 import org.apache.ode.utils.DOMUtils;
+import org.apache.ode.utils.StorageEncoding;
 
 import java.util.Iterator;
 
@@ -93,7 +94,7 @@ class XmlDataDaoImpl extends HibernateDao implements XmlDataDAO {
             ld.setBinary(_node.getNodeValue().getBytes());
             _data.setData(ld);
         } else {
-            ld.setBinary(DOMUtils.domToString(_node).getBytes());
+            ld.setBinary(StorageEncoding.getDefault().encodeToBytes((Element) _node));
             _data.setData(ld);
         }
         getSession().save(ld);
@@ -149,8 +150,8 @@ class XmlDataDaoImpl extends HibernateDao implements XmlDataDAO {
     private Node prepare(){
         if(_data.getData() == null)
             return null;
-        String data = _data.getData().getText();
         if(_data.isSimpleType()){
+            String data = _data.getData().getText();
             Document d = DOMUtils.newDocument();
             // we create a dummy wrapper element
             // prevents some apps from complaining
@@ -162,7 +163,7 @@ class XmlDataDaoImpl extends HibernateDao implements XmlDataDAO {
             return tnode;
         }else{
             try{
-                return DOMUtils.stringToDOM(data);
+                return StorageEncoding.decode(_data.getData().getBinary());
             }catch(Exception e){
                 throw new RuntimeException(e);
             }
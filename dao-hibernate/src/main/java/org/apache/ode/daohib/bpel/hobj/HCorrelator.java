@@ -38,6 +38,8 @@ public class HCorrelator extends HObject {
 
     private String _correlatorId;
 
+    private long _routeVersion;
+
     /** Receives/picks waiting for message. */
     private Set<HCorrelatorSelector> _selectors = new HashSet<HCorrelatorSelector>();
 
@@ -79,6 +81,20 @@ public class HCorrelator extends HObject {
         _correlatorId = correlatorId;
     }
 
+    /**
+     * Number of route additions tracked on this correlator, only ever changed through bulk updates.
+     *
+     * @hibernate.property column="ROUTE_VERSION" not-null="true" update="false"
+     */
+    public long getRouteVersion() {
+        return _routeVersion;
+    }
+
+    /** Hibernate-mandated setter. */
+    public void setRouteVersion(long routeVersion) {
+        _routeVersion = routeVersion;
+    }
+
     /**
      * @hibernate.many-to-one column="PROCESS_ID"
      */
@@ -112,6 +112,9 @@ public class SelectObjectTest extends TestCase {
 		assertEquals(route.getGroupId(),"testRoute" );
 		assertEquals(route.getIndex() , 1 );
 		assertNotNull(route.getTargetInstance() );
+		MessageRouteDAO[] routes = corr.findRoute(new CorrelationKey[] { new CorrelationKey(2,correlationKeys), key1 });
+		assertNull( routes[0] );
+		assertEquals(routes[1].getGroupId(),"testRoute" );
 
 		// Assert the ProcessInstanceDAO
 		for ( ProcessInstanceDAO inst : insts ) {
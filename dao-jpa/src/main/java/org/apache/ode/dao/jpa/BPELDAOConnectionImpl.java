@@ -113,7 +113,8 @@ public class BPELDAOConnectionImpl implements BpelDAOConnection {
 
     public void insertBpelEvent(BpelEvent event, ProcessDAO process, ProcessInstanceDAO instance) {
         EventDAOImpl eventDao = new EventDAOImpl();
-        eventDao.setTstamp(new Timestamp(System.currentTimeMillis()));
+        // Events may be written some time after they occurred
+        eventDao.setTstamp(new Timestamp(event.getTimestamp().getTime()));
         eventDao.setType(BpelEvent.eventName(event));
         String evtStr = event.toString();
         eventDao.setDetail(evtStr.substring(0, Math.min(254, evtStr.length())));
@@ -126,6 +127,13 @@ public class BPELDAOConnectionImpl implements BpelDAOConnection {
         eventDao.setEvent(event);
         _em.persist(eventDao);
 	}
+
+    public void insertBpelEvents(Map<BpelEvent, ProcessInstanceDAO> events) {
+        for (Map.Entry<BpelEvent, ProcessInstanceDAO> entry : events.entrySet())
+            insertBpelEvent(entry.getKey(), entry.getValue().getProcess(), entry.getValue());
+        // A single flush lets OpenJPA send the inserts as statement batches
+        _em.flush();
+    }
     
     private static String dateFilter(String filter) {
         String date = Filter.getDateWithoutOp(filter);
@@ -28,6 +28,7 @@ import org.apache.ode.bpel.dao.ProcessInstanceDAO;
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
@@ -38,7 +39,18 @@ import java.util.List;
             "FROM MessageRouteDAOImpl as route " +
             "WHERE route._correlationKey = :ckey " +
                    "and route._correlator._process._processType = :ptype " +
-                   "and route._correlator._correlatorKey = :corrkey")
+                   "and route._correlator._correlatorKey = :corrkey"),
+    @NamedQuery(name="RouteKeys", query="SELECT route._correlationKey " +
+            "FROM MessageRouteDAOImpl as route " +
+            "WHERE route._correlator._process._processType = :ptype " +
+                   "and route._correlator._correlatorKey = :corrkey"),
+    @NamedQuery(name="RouteVersion", query="SELECT SUM(corr._routeVersion) " +
+            "FROM CorrelatorDAOImpl as corr " +
+            "WHERE corr._process._processType = :ptype " +
+                   "and corr._correlatorKey = :corrkey"),
+    @NamedQuery(name="IncrementRouteVersion", query="UPDATE CorrelatorDAOImpl as corr " +
+            "SET corr._routeVersion = corr._routeVersion + 1 " +
+            "WHERE corr._correlatorId = :corrid")
         })
 public class CorrelatorDAOImpl extends OpenJPADAO implements CorrelatorDAO {
 
@@ -47,6 +59,9 @@ public class CorrelatorDAOImpl extends OpenJPADAO implements CorrelatorDAO {
     private Long _correlatorId;
     @Basic @Column(name="CORRELATOR_KEY")
     private String _correlatorKey;
+    /** Only ever changed through bulk updates, the field itself may be stale. */
+    @Basic @Column(name="ROUTE_VERSION")
+    private long _routeVersion;
     @OneToMany(targetEntity=MessageRouteDAOImpl.class,mappedBy="_correlator",fetch=FetchType.EAGER,cascade={CascadeType.ALL})
     private Collection<MessageRouteDAOImpl> _routes = new ArrayList<MessageRouteDAOImpl>();
     @OneToMany(targetEntity=MessageExchangeDAOImpl.class,mappedBy="_correlator",fetch=FetchType.LAZY,cascade={CascadeType.ALL})
@@ -99,6 +114,58 @@ public class CorrelatorDAOImpl extends OpenJPADAO implements CorrelatorDAO {
         else return null;
     }
 
+    public MessageRouteDAO[] findRoute(CorrelationKey[] correlationKeys) {
+        MessageRouteDAO[] routes = new MessageRouteDAO[correlationKeys.length];
+        if (correlationKeys.length == 0) return routes;
+
+        // JPQL has no list parameters, one parameter per key
+        StringBuffer query = new StringBuffer("SELECT route FROM MessageRouteDAOImpl as route " +
+                "WHERE route._correlator._process._processType = ?1 and route._correlator._correlatorKey = ?2 " +
+                "and route._correlationKey IN (");
+        for (int i = 0; i < correlationKeys.length; ++i) {
+            if (i > 0) query.append(", ");
+            query.append("?").append(i + 3);
+        }
+        query.append(")");
+
+        Query qry = getEM().createQuery(query.toString());
+        qry.setParameter(1, _process.getType().toString());
+        qry.setParameter(2, _correlatorKey);
+        for (int i = 0; i < correlationKeys.length; ++i)
+            qry.setParameter(i + 3, correlationKeys[i].toCanonicalString());
+
+        HashMap<CorrelationKey, MessageRouteDAO> found = new HashMap<CorrelationKey, MessageRouteDAO>();
+        for (MessageRouteDAOImpl route : (List<MessageRouteDAOImpl>) qry.getResultList()) {
+            if (!found.containsKey(route.getCorrelationKey())) found.put(route.getCorrelationKey(), route);
+        }
+        for (int i = 0; i < correlationKeys.length; ++i) routes[i] = found.get(correlationKeys[i]);
+        return routes;
+    }
+
+    public Collection<CorrelationKey> getRouteKeys() {
+        Query qry = getEM().createNamedQuery("RouteKeys");
+        qry.setParameter("ptype", _process.getType().toString());
+        qry.setParameter("corrkey", _correlatorKey);
+        List<String> ckeys = (List<String>) qry.getResultList();
+        ArrayList<CorrelationKey> keys = new ArrayList<CorrelationKey>(ckeys.size());
+        for (String ckey : ckeys) keys.add(new CorrelationKey(ckey));
+        return keys;
+    }
+
+    public long getRouteVersion() {
+        Query qry = getEM().createNamedQuery("RouteVersion");
+        qry.setParameter("ptype", _process.getType().toString());
+        qry.setParameter("corrkey", _correlatorKey);
+        Number version = (Number) qry.getSingleResult();
+        return version == null ? 0 : version.longValue();
+    }
+
+    public void incrementRouteVersion() {
+        Query qry = getEM().createNamedQuery("IncrementRouteVersion");
+        qry.setParameter("corrid", _correlatorId);
+        qry.executeUpdate();
+    }
+
     public String getCorrelatorId() {
         return _correlatorKey;
     }
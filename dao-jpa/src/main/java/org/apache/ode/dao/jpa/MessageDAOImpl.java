@@ -32,7 +32,7 @@ import javax.persistence.Transient;
 import javax.xml.namespace.QName;
 
 import org.apache.ode.bpel.dao.MessageDAO;
-import org.apache.ode.utils.DOMUtils;
+import org.apache.ode.utils.StorageEncoding;
 import org.w3c.dom.Element;
 
 
@@ -64,7 +64,7 @@ public class MessageDAOImpl implements MessageDAO {
     public Element getData() {
         if ( _element == null && _data != null && !"".equals(_data) ) {
             try {
-                _element = DOMUtils.stringToDOM(_data);
+                _element = StorageEncoding.decode(_data);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -79,7 +79,7 @@ public class MessageDAOImpl implements MessageDAO {
 
     public void setData(Element value) {
         if (value == null) return;
-        _data = DOMUtils.domToString(value);
+        _data = StorageEncoding.getDefault().encodeToString(value);
         _element = value;
     }
 
@@ -90,7 +90,7 @@ public class MessageDAOImpl implements MessageDAO {
     public Element getHeader() {
         if ( _headerElement == null && _header != null && !"".equals(_header)) {
             try {
-                _headerElement = DOMUtils.stringToDOM(_header);
+                _headerElement = StorageEncoding.decode(_header);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -100,7 +100,7 @@ public class MessageDAOImpl implements MessageDAO {
 
     public void setHeader(Element value) {
         if (value == null) return;
-        _header = DOMUtils.domToString(value);
+        _header = StorageEncoding.getDefault().encodeToString(value);
         _headerElement = value;
     }
 
@@ -22,6 +22,7 @@ package org.apache.ode.dao.jpa;
 import org.apache.ode.bpel.dao.ScopeDAO;
 import org.apache.ode.bpel.dao.XmlDataDAO;
 import org.apache.ode.utils.DOMUtils;
+import org.apache.ode.utils.StorageEncoding;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -88,7 +89,7 @@ public class XmlDataDAOImpl implements XmlDataDAO {
 		        _node = tnode;
 		   }else{
 		      try{
-		          _node = DOMUtils.stringToDOM(_data);
+		          _node = StorageEncoding.decode(_data);
 		      }catch(Exception e){
 		          throw new RuntimeException(e);
 		      }
@@ -125,7 +126,7 @@ public class XmlDataDAOImpl implements XmlDataDAO {
 		_node = val;
 		if ( val instanceof Element ) {
 			_isSimpleType = false;
-			_data = DOMUtils.domToString(val);
+			_data = StorageEncoding.getDefault().encodeToString((Element) val);
 		} else if (_node != null) {
 			_isSimpleType = true;
 			_data = _node.getNodeValue();
@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.bpel.evt.BpelEvent;
+import org.apache.ode.bpel.evt.ProcessInstanceEvent;
+import org.apache.ode.bpel.iapi.BpelEngineException;
+
+/**
+ * Persists instance events outside of the instance transactions. Events are queued in a bounded buffer once
+ * the transaction that produced them commits and a background thread writes them in batches, each batch
+ * in its own transaction and inserted together, in JDBC batches when the DAO and the database allow it. When a
+ * batch fails its events are written again one at a time, so a bad event doesn't take the others with it. The buffer size bounds the number of events that can be lost on a
+ * crash.
+ */
+class BpelEventWriter implements Runnable {
+    private static final Log __log = LogFactory.getLog(BpelEventWriter.class);
+
+    /** How long the writer waits for new events before checking whether it's been stopped. */
+    private static final long POLL_INTERVAL = 250;
+
+    public enum Durability {
+        /** Events are inserted in the transaction of the instance that produced them. */
+        SYNC,
+        /**
+         * Events are written in batches. When the buffer is full, events produced in a transaction are inserted
+         * in it as with {@link #SYNC} and other threads wait for space.
+         */
+        ASYNC,
+        /** Events are written in batches and dropped when the buffer is full. */
+        BEST_EFFORT
+    }
+
+    private final Contexts _contexts;
+    private final Durability _durability;
+    private final int _batchSize;
+    private final BlockingQueue<PendingEvent> _queue;
+
+    /** Space left in the buffer, reserved when an event is produced and released once it's written. */
+    private final Semaphore _space;
+
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+
+    private volatile boolean _running;
+    private Thread _thread;
+
+    BpelEventWriter(Contexts contexts, Durability durability, int bufferSize, int batchSize) {
+        if (durability == Durability.SYNC)
+            throw new IllegalArgumentException("Synchronous events aren't written by the event writer.");
+        _contexts = contexts;
+        _durability = durability;
+        _batchSize = Math.max(1, batchSize);
+        int capacity = Math.max(_batchSize, bufferSize);
+        _queue = new ArrayBlockingQueue<PendingEvent>(capacity);
+        _space = new Semaphore(capacity);
+    }
+
+    synchronized void start() {
+        if (_running) return;
+        _running = true;
+        _thread = new Thread(this, "ODEEventWriter");
+        _thread.setDaemon(true);
+        _thread.start();
+        __log.info("Asynchronous event persistence started (" + _durability + ", buffer of "
+                + _queue.remainingCapacity() + " events, batches of " + _batchSize + ").");
+    }
+
+    /**
+     * Stops the writer after the events already queued have been written.
+     */
+    synchronized void stop() {
+        if (!_running) return;
+        _running = false;
+        try {
+            _thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _thread = null;
+        if (_dropped.get() > 0)
+            __log.warn(_dropped.get() + " events have been dropped because the event buffer was full.");
+        if (_failed.get() > 0)
+            __log.warn(_failed.get() + " events have been lost because they couldn't be written.");
+    }
+
+    /**
+     * Queues an event for persistence. When called in a transaction, space is reserved in the buffer right away
+     * but the event is only queued once the transaction commits, so events of rolled back transactions never get
+     * written. Nothing blocks once the transaction completes.
+     * @return false if the event couldn't be buffered and has to be inserted by the caller
+     */
+    boolean enqueue(ProcessInstanceEvent event, Long instanceId) {
+        final PendingEvent pending = new PendingEvent(event, instanceId);
+        boolean transacted = _contexts.isTransacted();
+        if (!_space.tryAcquire()) {
+            if (_durability == Durability.BEST_EFFORT) {
+                drop(pending);
+                return true;
+            }
+            // Waiting for space in a transaction could deadlock with the writer waiting for the locks it holds
+            if (transacted) return false;
+            try {
+                _space.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        if (!transacted) {
+            _queue.offer(pending);
+            return true;
+        }
+        try {
+            _contexts.txManager.getTransaction().registerSynchronization(new Synchronization() {
+                public void beforeCompletion() {
+                }
+
+                public void afterCompletion(int status) {
+                    // Can't fail, the space has been reserved
+                    if (status == Status.STATUS_COMMITTED) _queue.offer(pending);
+                    else _space.release();
+                }
+            });
+        } catch (Exception ex) {
+            _space.release();
+            throw new BpelEngineException("Error registering synchronizer.", ex);
+        }
+        return true;
+    }
+
+    private void drop(PendingEvent pending) {
+        long dropped = _dropped.incrementAndGet();
+        if (dropped == 1 || dropped % 1000 == 0)
+            __log.warn("Event buffer full, dropped " + dropped + " events so far (last one for instance "
+                    + pending.instanceId + ").");
+    }
+
+    public void run() {
+        List<PendingEvent> batch = new ArrayList<PendingEvent>(_batchSize);
+        while (_running || !_queue.isEmpty()) {
+            try {
+                PendingEvent first = _queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                _queue.drainTo(batch, _batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                // Only stop() is supposed to end the writer
+            } finally {
+                _space.release(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingEvent> batch) {
+        try {
+            insert(batch);
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                lose(batch.get(0), e);
+                return;
+            }
+            __log.warn("Failed to write a batch of " + batch.size() + " events, writing them one at a time.", e);
+            for (PendingEvent pending : batch) {
+                try {
+                    insert(Collections.singletonList(pending));
+                } catch (Exception ex) {
+                    lose(pending, ex);
+                }
+            }
+        }
+    }
+
+    private void lose(PendingEvent pending, Exception e) {
+        _failed.incrementAndGet();
+        __log.error("Failed to write event " + pending.event + " of instance " + pending.instanceId
+                + ", it will be lost.", e);
+    }
+
+    private void insert(final List<PendingEvent> batch) throws Exception {
+        _contexts.execTransaction(new Callable<Void>() {
+            public Void call() throws Exception {
+                BpelDAOConnection conn = _contexts.dao.getConnection();
+                HashMap<Long, ProcessInstanceDAO> instances = new HashMap<Long, ProcessInstanceDAO>();
+                Map<BpelEvent, ProcessInstanceDAO> events = new LinkedHashMap<BpelEvent, ProcessInstanceDAO>();
+                for (PendingEvent pending : batch) {
+                    ProcessInstanceDAO instance = instances.get(pending.instanceId);
+                    if (instance == null) {
+                        instance = conn.getInstance(pending.instanceId);
+                        if (instance == null) {
+                            __log.debug("Instance " + pending.instanceId + " is gone, skipping event " + pending.event);
+                            continue;
+                        }
+                        instances.put(pending.instanceId, instance);
+                    }
+                    events.put(pending.event, instance);
+                }
+                if (!events.isEmpty()) conn.insertBpelEvents(events);
+                return null;
+            }
+        });
+    }
+
+    /** @return number of events dropped because the buffer was full */
+    long getDroppedCount() {
+        return _dropped.get();
+    }
+
+    /** @return number of events lost because they couldn't be written */
+    long getFailedCount() {
+        return _failed.get();
+    }
+
+    private static class PendingEvent {
+        final ProcessInstanceEvent event;
+        final Long instanceId;
+
+        PendingEvent(ProcessInstanceEvent event, Long instanceId) {
+            this.event = event;
+            this.instanceId = instanceId;
+        }
+    }
+}
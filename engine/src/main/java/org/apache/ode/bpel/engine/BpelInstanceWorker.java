@@ -36,10 +36,14 @@ class BpelInstanceWorker implements Runnable {
 
     private CachedState _cachedState;
 
+    private final VariableCache _variableCache;
+
     BpelInstanceWorker(ODEProcess process, Long iid) {
         _process = process;
         _iid = iid;
         _contexts = _process._contexts;
+        int cached = process.getVariablesCached();
+        _variableCache = cached > 0 ? new VariableCache(cached) : null;
     }
 
     Long getIID() {
@@ -200,6 +204,13 @@ class BpelInstanceWorker implements Runnable {
         _cachedState = new CachedState(uuid, state);
     }
     
+    /**
+     * @return the variable values cached for the instance, null if variables aren't cached
+     */
+    VariableCache getVariableCache() {
+        return _variableCache;
+    }
+
     private class CachedState {
         final Object uuid;
         final Object state;
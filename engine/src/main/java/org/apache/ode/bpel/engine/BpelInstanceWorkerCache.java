@@ -1,55 +1,120 @@
 package org.apache.ode.bpel.engine;
 
-import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * A cache of {@link BpelInstanceWorker} objects. 
+ *
+ * Workers are weakly referenced so that a single worker exists for an instance as long as anybody uses it,
+ * which is what keeps the work of an instance ordered. On top of that, the most recently used workers can be
+ * strongly retained (up to the {@link org.apache.ode.il.config.OdeConfigProperties#PROP_WORKERS_RETAINED} bound,
+ * none by default) so that their cached execution state survives between two messages. Workers of finished
+ * instances aren't retained.
+ * The cache is split in independently locked stripes to avoid contention between instances.
  * 
  * @author Maciej Szefler <mszefler at gmail dot com>
  *
  */
 class BpelInstanceWorkerCache {
-    private HashMap<Long, WeakReference<BpelInstanceWorker>> _cache = new HashMap<Long, WeakReference<BpelInstanceWorker>>();
-    private ReferenceQueue<BpelInstanceWorker> _refQ = new ReferenceQueue<BpelInstanceWorker>();
-    
+    private static final int STRIPES = 16;
+
+    private final Stripe[] _stripes = new Stripe[STRIPES];
+
     private ODEProcess _process;
     
-    public BpelInstanceWorkerCache(ODEProcess process) {
+    /**
+     * @param retained maximum number of idle workers strongly retained, for all the stripes
+     */
+    public BpelInstanceWorkerCache(ODEProcess process, int retained) {
         _process = process;
+        int perStripe = retained <= 0 ? 0 : (retained + STRIPES - 1) / STRIPES;
+        for (int i = 0; i < STRIPES; i++)
+            _stripes[i] = new Stripe(perStripe);
     }
     
-    synchronized BpelInstanceWorker get(long iid) {
-        expungeStaleEntries();
-        WeakReference<BpelInstanceWorker> wref = _cache.get(iid);
-        BpelInstanceWorker worker;
-        
-        // Case: not in cache.
-        if (wref == null) {
-            worker = new BpelInstanceWorker(_process, iid);
-            wref = new WeakReference<BpelInstanceWorker>(worker,_refQ);
-            _cache.put(iid, wref);
-        } else {
-            worker = wref.get();
-            
-            // Case: garbage collected
-            if (worker == null) {
+    BpelInstanceWorker get(long iid) {
+        return stripe(iid).get(iid);
+    }
+
+    /**
+     * Stops retaining the worker of a finished instance. It stays reachable as long as it's used.
+     */
+    void release(long iid) {
+        stripe(iid).release(iid);
+    }
+
+    /** Number of workers currently known to the cache, some of them may already be garbage collected. */
+    int getWorkerCount() {
+        int count = 0;
+        for (Stripe stripe : _stripes)
+            count += stripe.size();
+        return count;
+    }
+
+    private Stripe stripe(long iid) {
+        int h = (int) (iid ^ (iid >>> 32));
+        h ^= (h >>> 16);
+        return _stripes[h & (STRIPES - 1)];
+    }
+
+    private class Stripe {
+        private final HashMap<Long, WorkerRef> _cache = new HashMap<Long, WorkerRef>();
+        private final ReferenceQueue<BpelInstanceWorker> _refQ = new ReferenceQueue<BpelInstanceWorker>();
+        private final LinkedHashMap<Long, BpelInstanceWorker> _retained;
+
+        Stripe(final int maxRetained) {
+            _retained = maxRetained == 0 ? null : new LinkedHashMap<Long, BpelInstanceWorker>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                protected boolean removeEldestEntry(Map.Entry<Long, BpelInstanceWorker> eldest) {
+                    // Dropping the strong reference is enough, the worker stays reachable as long as it's used
+                    return size() > maxRetained;
+                }
+            };
+        }
+
+        synchronized BpelInstanceWorker get(long iid) {
+            expungeStaleEntries();
+            WorkerRef wref = _cache.get(iid);
+            BpelInstanceWorker worker = wref == null ? null : wref.get();
+
+            // Case: not in cache or garbage collected
+            boolean hit = worker != null;
+            if (!hit) {
                 worker = new BpelInstanceWorker(_process, iid);
-                wref = new WeakReference<BpelInstanceWorker>(worker,_refQ);
-                _cache.put(iid, wref); 
+                _cache.put(iid, new WorkerRef(worker, _refQ));
             }
+            _process.getMetrics().workerLookedUp(hit);
+            if (_retained != null) _retained.put(iid, worker);
+            return worker;
+        }
+
+        synchronized void release(long iid) {
+            if (_retained != null) _retained.remove(iid);
+        }
+
+        synchronized int size() {
+            return _cache.size();
         }
 
-        return worker;
+        private void expungeStaleEntries() {
+            WorkerRef x;
+            while ((x = (WorkerRef) _refQ.poll()) != null) {
+                // The entry may already have been replaced by a new worker
+                if (_cache.get(x.iid) == x) _cache.remove(x.iid);
+            }
+        }
     }
-    
-    
-    private void expungeStaleEntries() {
-        Reference<? extends BpelInstanceWorker> x;
-        while ((x=_refQ.poll()) != null){
-            _cache.values().remove(x);
+
+    private static class WorkerRef extends WeakReference<BpelInstanceWorker> {
+        final Long iid;
+
+        WorkerRef(BpelInstanceWorker worker, ReferenceQueue<BpelInstanceWorker> refQ) {
+            super(worker, refQ);
+            iid = worker.getIID();
         }
     }
 }
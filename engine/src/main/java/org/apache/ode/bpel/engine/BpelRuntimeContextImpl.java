@@ -74,6 +74,7 @@ import org.apache.ode.bpel.rapi.UninitializedPartnerEPR;
 import org.apache.ode.bpel.rapi.UninitializedVariableException;
 import org.apache.ode.bpel.rapi.Variable;
 import org.apache.ode.il.config.OdeConfigProperties;
+import org.apache.ode.jacob.vpu.ExecutionQueueImpl;
 import org.apache.ode.utils.DOMUtils;
 import org.apache.ode.utils.GUID;
 import org.apache.ode.utils.Namespaces;
@@ -109,13 +110,19 @@ class BpelRuntimeContextImpl implements OdeRTInstanceContext {
     private int _retryCount;
     
     private boolean _atomicScope;
+
+    /** Variable values cached by the instance worker, null for in-memory processes. */
+    private final VariableCache _variables;
+
+    /** Variable writes are only flushed to the DAOs when the state gets saved while the instance executes. */
+    private boolean _deferWrites;
+
+    /** Whether the current execution is sampled for the process metrics. */
+    private boolean _measured;
     
     /** Process instance as represented by runtime. */
     final OdeRTInstance _rti;
 
-    /** Five second maximum for continuous execution. */
-    private long _maxReductionTimeMs = 2000000;
-
     public BpelRuntimeContextImpl(BpelInstanceWorker instanceWorker, ProcessInstanceDAO instanceDAO, OdeRTInstance rti) {
         _instanceWorker = instanceWorker;
         _bpelProcess = instanceWorker._process;
@@ -124,6 +131,9 @@ class BpelRuntimeContextImpl implements OdeRTInstanceContext {
         _iid = instanceDAO.getInstanceId();
         _rti = rti;
         _rti.setContext(this);
+        _variables = _bpelProcess.isInMemory() ? null : instanceWorker.getVariableCache();
+        if (_variables != null)
+            _variables.open(this, instanceDAO.getExecutionStateCounter());
     }
     
     public String toString() {
@@ -154,12 +164,17 @@ class BpelRuntimeContextImpl implements OdeRTInstanceContext {
     }
 
     public boolean isVariableInitialized(Variable var) {
+        if (_variables != null && _variables.get(var) != null) return true;
         ScopeDAO scopeDAO = _dao.getScope(var.getScopeId());
         XmlDataDAO dataDAO = scopeDAO.getVariable(var.getName());
         return !dataDAO.isNull();
     }
 
     public Node initializeVariable(Variable variable, Node initData) {
+        if (_variables != null) {
+            writeVariable(variable, initData);
+            return initData;
+        }
         ScopeDAO scopeDAO = _dao.getScope(variable.getScopeId());
         XmlDataDAO dataDAO = scopeDAO.getVariable(variable.getName());
 
@@ -294,6 +309,8 @@ class BpelRuntimeContextImpl implements OdeRTInstanceContext {
             Selector selector = selectors[i];
 
             correlator.addRoute(selectChannelId, _dao, i, selector.getCorrelationKey());
+            CorrelationRouteIndex routeIndex = _bpelProcess.getRouteIndex(correlator.getCorrelatorId());
+            if (routeIndex != null) routeIndex.routeAdded(correlator, selector.getCorrelationKey());
             scheduleCorrelatorMatcher(correlator.getCorrelatorId(), selector.getCorrelationKey());
 
             if (ODEProcess.__log.isDebugEnabled()) {
@@ -344,17 +361,65 @@ class BpelRuntimeContextImpl implements OdeRTInstanceContext {
      *             in case of selection or other fault
      */
     public String readVariableProperty(Variable variable, QName property) throws UninitializedVariableException {
-        ScopeDAO scopeDAO = _dao.getScope(variable.getScopeId());
-        XmlDataDAO dataDAO = scopeDAO.getVariable(variable.getName());
+        XmlDataDAO dataDAO = fetchVariableDAO(variable);
         if (dataDAO.isNull()) throw new UninitializedVariableException();
         return dataDAO.getProperty(QNameUtils.fromQName(property));
     }
 
     public Node fetchVariableData(Variable variable, boolean forWriting) {
+        if (_variables != null) {
+            Node cached = _variables.get(variable);
+            if (cached != null) {
+                if (forWriting) _variables.modifying(this);
+                return cached;
+            }
+        }
         ScopeDAO scopeDAO = _dao.getScope(variable.getScopeId());
         XmlDataDAO dataDAO = scopeDAO.getVariable(variable.getName());
         if (dataDAO.isNull()) return null;
-        return dataDAO.get();
+        Node value = dataDAO.get();
+        if (_variables != null) {
+            _variables.put(variable, value);
+            if (forWriting) _variables.modifying(this);
+        }
+        return value;
+    }
+
+    /**
+     * Gets the DAO of a variable, writing its deferred value first: the properties are kept by the DAO and have
+     * to go with the value.
+     */
+    private XmlDataDAO fetchVariableDAO(Variable variable) {
+        ScopeDAO scopeDAO = _dao.getScope(variable.getScopeId());
+        XmlDataDAO dataDAO = scopeDAO.getVariable(variable.getName());
+        Node pending = _variables == null ? null : _variables.takeWrite(variable);
+        if (pending != null) dataDAO.set(pending);
+        return dataDAO;
+    }
+
+    private void writeVariable(Variable variable, Node value) {
+        if (_deferWrites) {
+            _variables.write(this, variable, value);
+            return;
+        }
+        ScopeDAO scopeDAO = _dao.getScope(variable.getScopeId());
+        XmlDataDAO dataDAO = scopeDAO.getVariable(variable.getName());
+        dataDAO.set(value);
+        if (_variables != null) {
+            _variables.modifying(this);
+            _variables.put(variable, value);
+        }
+    }
+
+    /**
+     * Writes the variable values changed during the execution to the DAO layer.
+     */
+    private void flushVariables() {
+        if (_variables == null) return;
+        for (VariableCache.Entry entry : _variables.getDirtyEntries()) {
+            ScopeDAO scopeDAO = _dao.getScope(entry.variable.getScopeId());
+            scopeDAO.getVariable(entry.variable.getName()).set(entry.value);
+        }
     }
 
 
@@ -385,14 +450,11 @@ class BpelRuntimeContextImpl implements OdeRTInstanceContext {
     }
 
     public void commitChanges(Variable variable, Node changes) {
-        ScopeDAO scopeDAO = _dao.getScope(variable.getScopeId());
-        XmlDataDAO dataDAO = scopeDAO.getVariable(variable.getName());
-        dataDAO.set(changes);
+        writeVariable(variable, changes);
     }
 
     public void writeVariableProperty(Variable variable, QName property, String value) throws UninitializedVariableException {
-        ScopeDAO scopeDAO = _dao.getScope(variable.getScopeId());
-        XmlDataDAO dataDAO = scopeDAO.getVariable(variable.getName());
+        XmlDataDAO dataDAO = fetchVariableDAO(variable);
         if (dataDAO.isNull()) throw new UninitializedVariableException();
         dataDAO.setProperty(QNameUtils.fromQName(property), value);
     }
@@ -585,16 +647,35 @@ class BpelRuntimeContextImpl implements OdeRTInstanceContext {
         if (!_contexts.isTransacted())
             throw new BpelEngineException("MUST RUN IN TRANSACTION!");
         
-        long maxTime = System.currentTimeMillis() + _maxReductionTimeMs;
+        // The quantum bounds how long the instance holds the thread and the transaction
+        long maxTime = System.currentTimeMillis() + _bpelProcess.getMaxReductionTime();
+        int maxReductions = _bpelProcess.getMaxReductions();
+        int reductions = 0;
+        ProcessMetrics metrics = _bpelProcess.getMetrics();
+        _measured = metrics.executionStarted();
+        long startTime = _measured ? System.nanoTime() : 0;
 
         // Execute the process state reductions
         boolean canReduce = true;
-        while (ProcessState.canExecute(_dao.getState()) && System.currentTimeMillis() < maxTime && canReduce && !_forceFlush && !_forceRollback) {
-            canReduce = _rti.execute();
+        _deferWrites = _variables != null;
+        try {
+            while (ProcessState.canExecute(_dao.getState()) && System.currentTimeMillis() < maxTime
+                    && (maxReductions <= 0 || reductions < maxReductions) && canReduce && !_forceFlush && !_forceRollback) {
+                canReduce = _rti.execute();
+                reductions++;
+            }
+        } finally {
+            _deferWrites = false;
         }
+        if (_measured) metrics.reductionsExecuted(reductions, System.nanoTime() - startTime);
+        boolean exhausted = ProcessState.canExecute(_dao.getState()) && canReduce && !_forceFlush && !_forceRollback;
+        metrics.executionFinished(exhausted);
         
         _dao.setLastActiveTime(new Date());
-        if (!ProcessState.isFinished(_dao.getState())) {
+        if (ProcessState.isFinished(_dao.getState())) {
+            flushVariables();
+            _bpelProcess._instanceWorkerCache.release(_iid);
+        } else {
             if (_forceRollback) {
                 rollbackState();
             } else {
@@ -602,9 +683,9 @@ class BpelRuntimeContextImpl implements OdeRTInstanceContext {
             }
 
             if (ProcessState.canExecute(_dao.getState()) && canReduce) {
-                // Max time exceeded (possibly an infinite loop).
+                // Quantum exhausted (or possibly an infinite loop), let other instances run and resume later.
                 if (__log.isDebugEnabled())
-                    __log.debug("MaxTime exceeded for instance # " + _iid);
+                    __log.debug("Reduction quantum exhausted for instance # " + _iid + " after " + reductions + " reductions.");
 
                 try {
                     WorkEvent we = new WorkEvent();
@@ -636,10 +717,16 @@ class BpelRuntimeContextImpl implements OdeRTInstanceContext {
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
+            if (_measured && cachedState instanceof ExecutionQueueImpl) {
+                ExecutionQueueImpl soup = (ExecutionQueueImpl) cachedState;
+                _bpelProcess.getMetrics().stateSaved(bos.size(), soup.getChannelCount(), soup.getContinuationCount());
+            }
+            flushVariables();
             int newcount = _dao.getExecutionStateCounter() + 1;
             _dao.setExecutionStateCounter(newcount);
             _dao.setExecutionState(bos.toByteArray());
             _instanceWorker.setCachedState(newcount, cachedState);
+            if (_variables != null) _variables.saved(newcount);
             __log.debug("CACHE SAVE: #" + newcount + " for instance " + _dao.getInstanceId());
         }
     }
@@ -649,6 +736,7 @@ class BpelRuntimeContextImpl implements OdeRTInstanceContext {
         int newcount = _dao.getExecutionStateCounter();
         _dao.setExecutionStateCounter(newcount);
         _instanceWorker.setCachedState(newcount, null);
+        if (_variables != null) _variables.clear();
         __log.debug("CACHE SAVE: #" + newcount + " for instance " + _dao.getInstanceId());
     }
 
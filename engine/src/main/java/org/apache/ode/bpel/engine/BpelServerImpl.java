@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -66,6 +67,7 @@ import org.apache.ode.bpel.iapi.Scheduler.JobProcessorException;
 import org.apache.ode.bpel.intercept.MessageExchangeInterceptor;
 import org.apache.ode.bpel.rapi.ProcessModel;
 import org.apache.ode.il.config.OdeConfigProperties;
+import org.apache.ode.jacob.vpu.JacobVPU;
 import org.apache.ode.utils.GUID;
 import org.apache.ode.utils.msg.MessageBundle;
 import org.apache.ode.utils.stl.CollectionsX;
@@ -118,10 +120,18 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
 
     private DehydrationPolicy _dehydrationPolicy;
 
+    private Thread _reaper;
+
     private OdeConfigProperties _properties;
 
     private ExecutorService _exec;
 
+    /** Background writer for instance events, null when events are persisted synchronously. */
+    private volatile BpelEventWriter _eventWriter;
+
+    /** Correlation route indexes by process type and correlator, null when route indexing is disabled. */
+    private volatile ConcurrentHashMap<String, CorrelationRouteIndex> _routeIndexes;
+
     BpelDatabase _db;
 
     /**
@@ -221,17 +231,70 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
                 throw new IllegalStateException(errmsg);
             }
             
+            _eventWriter = createEventWriter();
+            if (_eventWriter != null)
+                _eventWriter.start();
+
+            if (_properties != null && _properties.isCorrelationRouteIndexEnabled()) {
+                __log.info("Correlation route index enabled.");
+                _routeIndexes = new ConcurrentHashMap<String, CorrelationRouteIndex>();
+            }
+
             _contexts.scheduler.start();
             _state = State.RUNNING;
             __log.info(__msgs.msgServerStarted());
-            if (_dehydrationPolicy != null)
-                new Thread(new ProcessDefReaper()).start();
+            if (_dehydrationPolicy != null) {
+                final ProcessDefReaper reaper = new ProcessDefReaper();
+                _reaper = new Thread(reaper, "ODEProcessDefReaper");
+                _reaper.setDaemon(true);
+                _reaper.start();
+                if (_dehydrationPolicy instanceof MemoryDehydrationPolicy) {
+                    ((MemoryDehydrationPolicy) _dehydrationPolicy).start(new Runnable() {
+                        public void run() {
+                            reaper.trigger();
+                        }
+                    });
+                }
+            }
         } finally {
             _mngmtLock.writeLock().unlock();
         }
     }
     
     
+    private BpelEventWriter createEventWriter() {
+        if (_properties == null) return null;
+        BpelEventWriter.Durability durability;
+        try {
+            durability = BpelEventWriter.Durability.valueOf(_properties.getEventPersistence().trim().toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            __log.warn("Unknown event persistence mode " + _properties.getEventPersistence() + ", using sync.");
+            return null;
+        }
+        if (durability == BpelEventWriter.Durability.SYNC) return null;
+        return new BpelEventWriter(_contexts, durability, _properties.getEventBufferSize(), _properties.getEventBatchSize());
+    }
+
+    BpelEventWriter getEventWriter() {
+        return _eventWriter;
+    }
+
+    /**
+     * Route index shared by all the versions of a process for a correlator, null if route indexing is disabled.
+     */
+    CorrelationRouteIndex getRouteIndex(QName processType, String correlatorId) {
+        ConcurrentHashMap<String, CorrelationRouteIndex> indexes = _routeIndexes;
+        if (indexes == null) return null;
+        String name = processType + "." + correlatorId;
+        CorrelationRouteIndex index = indexes.get(name);
+        if (index == null) {
+            index = new CorrelationRouteIndex(_contexts, _exec, name, _properties.getCorrelationRouteIndexCapacity());
+            CorrelationRouteIndex existing = indexes.putIfAbsent(name, index);
+            if (existing != null) index = existing;
+        }
+        return index;
+    }
+
     public void registerExternalVariableEngine(ExternalVariableModule eve) {
         _contexts.externalVariableEngines.put(eve.getName(), eve);
     }
@@ -291,6 +354,17 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
             __log.debug("BPEL SERVER STOPPING");
 
             _contexts.scheduler.stop();
+            if (_eventWriter != null) {
+                _eventWriter.stop();
+                _eventWriter = null;
+            }
+            _routeIndexes = null;
+            if (_reaper != null) {
+                if (_dehydrationPolicy instanceof MemoryDehydrationPolicy)
+                    ((MemoryDehydrationPolicy) _dehydrationPolicy).stop();
+                _reaper.interrupt();
+                _reaper = null;
+            }
             _state = State.INIT;
             __log.info(__msgs.msgServerStopped());
         } finally {
@@ -346,6 +420,7 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
             throw new BpelEngineException(__msgs.msgOperationInterrupted());
         }
 
+        ODEProcess process;
         try {
             // If the process is already active, do nothing.
             if (_registeredProcesses.containsKey(conf.getProcessId())) {
@@ -355,7 +430,7 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
 
             __log.debug("Registering process " + conf.getProcessId() + " with server.");
 
-            ODEProcess process = new ODEProcess(this, conf, null, _myRoleMexCache);
+            process = new ODEProcess(this, conf, null, _myRoleMexCache);
 
             for (Endpoint e : process.getServiceNames()) {
                 __log.debug("Register process: serviceId=" + e + ", process=" + process);
@@ -380,12 +455,28 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
             process.activate(_contexts);
 
             _registeredProcesses.put(process.getPID(), process);
-            if (_dehydrationPolicy == null) process.hydrate();
-
-            __log.info(__msgs.msgProcessRegistered(conf.getProcessId()));
         } finally {
             _mngmtLock.writeLock().unlock();
         }
+
+        // Loading the model is the expensive part, the hydration latch already guards it so processes can be
+        // registered concurrently. The process may get unregistered in the meantime, its model mustn't stay
+        // loaded then.
+        if (_dehydrationPolicy == null && isRegistered(process)) {
+            process.hydrate();
+            if (!isRegistered(process)) process.dehydrate();
+        }
+
+        __log.info(__msgs.msgProcessRegistered(conf.getProcessId()));
+    }
+
+    private boolean isRegistered(ODEProcess process) {
+        _mngmtLock.readLock().lock();
+        try {
+            return _registeredProcesses.get(process.getPID()) == process;
+        } finally {
+            _mngmtLock.readLock().unlock();
+        }
     }
 
     public void unregister(QName pid) throws BpelEngineException {
@@ -549,6 +640,7 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
 
     public void setConfigProperties(OdeConfigProperties properties) {
         _properties = properties;
+        if (properties != null) JacobVPU.setTimingSampleRate(properties.getJacobTimingSample());
     }
     
     public OdeConfigProperties getConfigProperties() {
@@ -860,36 +952,52 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
     }
 
     private class ProcessDefReaper implements Runnable {
+        private boolean _triggered;
+
+        /**
+         * Runs a dehydration pass right away instead of waiting for the next poll.
+         */
+        synchronized void trigger() {
+            _triggered = true;
+            notify();
+        }
+
         public void run() {
             __log.debug("Starting process definition reaper thread.");
             long pollingTime = 10000;
             try {
                 while (true) {
-                    Thread.sleep(pollingTime);
-                    _mngmtLock.writeLock().lockInterruptibly();
+                    synchronized (this) {
+                        if (!_triggered) wait(pollingTime);
+                        _triggered = false;
+                    }
+
+                    // Copying the running process list to avoid synchronization problems and a potential
+                    // mess if a policy modifies the list. The management lock is only held for the copy,
+                    // the hydration latch of each process already keeps its users away while it dehydrates.
+                    List<ODEProcess> candidates;
+                    _mngmtLock.readLock().lockInterruptibly();
                     try {
-                        // Copying the runnning process list to avoid synchronizatMessageExchangeInterion
-                        // problems and a potential mess if a policy modifies the list
-                        List<ODEProcess> candidates = new ArrayList<ODEProcess>(_registeredProcesses.values());
-                        CollectionsX.remove_if(candidates, new MemberOfFunction<ODEProcess>() {
-                            public boolean isMember(ODEProcess o) {
-                                return !o.hintIsHydrated();
-                            }
-                        });
-
-                        // And the happy winners are...
-                        List<ODEProcess> ripped = _dehydrationPolicy.markForDehydration(candidates);
-                        // Bye bye
-                        for (ODEProcess process : ripped) {
-                            __log.debug("Dehydrating process " + process.getPID());
-                            process.dehydrate();
-                        }
+                        candidates = new ArrayList<ODEProcess>(_registeredProcesses.values());
                     } finally {
-                        _mngmtLock.writeLock().unlock();
+                        _mngmtLock.readLock().unlock();
+                    }
+                    CollectionsX.remove_if(candidates, new MemberOfFunction<ODEProcess>() {
+                        public boolean isMember(ODEProcess o) {
+                            return !o.hintIsHydrated();
+                        }
+                    });
+
+                    // And the happy winners are...
+                    List<ODEProcess> ripped = _dehydrationPolicy.markForDehydration(candidates);
+                    // Bye bye
+                    for (ODEProcess process : ripped) {
+                        __log.debug("Dehydrating process " + process.getPID());
+                        process.dehydrate();
                     }
                 }
             } catch (InterruptedException e) {
-                __log.info(e);
+                __log.debug("Process definition reaper thread stopped.");
             }
         }
     }
@@ -903,6 +1011,18 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
         }
     }
 
+    /**
+     * @return identifiers of the processes currently registered with the server
+     */
+    public List<QName> getRegisteredProcessIds() {
+        _mngmtLock.readLock().lock();
+        try {
+            return new ArrayList<QName>(_registeredProcesses.keySet());
+        } finally {
+            _mngmtLock.readLock().unlock();
+        }
+    }
+
     private void ticktock() {
         _lastTimeOfServerCallable.set(System.currentTimeMillis());
         
@@ -49,6 +49,19 @@ public class BrokeredUnreliableMyRoleMessageExchangeImpl
         return new CompletedFuture();
     }
 
+    /**
+     * Propagate the invoke asynchronous call to each subscriber, like {@link #invokeAsync()} we don't wait for them
+     *
+     * @param onCompletion callback, run right away
+     *
+     * @return type
+     */
+    public Future<Status> invokeAsync(Runnable onCompletion) {
+        Future<Status> future = invokeAsync();
+        if (onCompletion != null) onCompletion.run();
+        return future;
+    }
+
     /**
      * Propagate the invoke blocking call to each subscriber
      *
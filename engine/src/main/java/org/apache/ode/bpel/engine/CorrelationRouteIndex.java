@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+import javax.xml.namespace.QName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ode.bpel.common.CorrelationKey;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.ProcessDAO;
+
+/**
+ * In-memory index of the correlation keys routes exist for, for one correlator across all the versions of a
+ * process. It's a Bloom filter: when it says no route matches a key, the route lookup can be skipped, when it
+ * says one may match the database has to be checked. Removed routes can't be taken out of the filter so it
+ * gets rebuilt from the database once enough routes have been added since it was last built.
+ * <p>
+ * Other nodes sharing the database add routes the filter never sees. Every route addition bumps the route
+ * version of the correlator, so before trusting a negative answer the index compares the version it was built
+ * at, plus the additions made through this server since, with the current one. Any difference means another
+ * node may have added routes: the database gets checked and the filter rebuilt. Rebuilds run on the server
+ * executor, lookups check the database while there's no usable filter.
+ * </p>
+ */
+class CorrelationRouteIndex {
+    private static final Log __log = LogFactory.getLog(CorrelationRouteIndex.class);
+
+    private final Contexts _contexts;
+    private final Executor _executor;
+    private final String _name;
+    private final int _minCapacity;
+
+    private final Object _lock = new Object();
+
+    /** Filter in use, null until it has been built or once it's known to miss routes. */
+    private Filter _filter;
+
+    /** Filter being built, receives the routes added while it's loaded from the database. */
+    private Filter _next;
+
+    /** Routes added by transactions that haven't completed yet, by canonical key. */
+    private final Map<String, Integer> _inflight = new HashMap<String, Integer>();
+
+    /** Route version increments made through this server, counted as soon as their transaction starts committing. */
+    private long _local;
+
+    /** Capacity of the next filter, adjusted to the number of routes found on each build. */
+    private int _capacity;
+
+    CorrelationRouteIndex(Contexts contexts, Executor executor, String name, int minCapacity) {
+        _contexts = contexts;
+        _executor = executor;
+        _name = name;
+        _minCapacity = Math.max(64, minCapacity);
+        _capacity = _minCapacity;
+    }
+
+    /**
+     * Filters out the keys no route can match. The index gets (re)built from the correlator of the process in
+     * the background when needed, all the keys have to be checked until then.
+     * @param processId process the correlator is loaded from on rebuilds
+     * @param correlator correlator of the lookup, in the caller's transaction
+     * @param keys keys to look up
+     * @return the keys a route may exist for
+     */
+    List<CorrelationKey> candidateKeys(QName processId, CorrelatorDAO correlator, CorrelationKey[] keys) {
+        Filter toBuild = null;
+        synchronized (_lock) {
+            if (_next == null && (_filter == null || _filter.isSaturated())) toBuild = prepareBuild();
+        }
+        if (toBuild != null) submitBuild(processId, correlator.getCorrelatorId(), toBuild);
+
+        Filter filter;
+        long local;
+        List<CorrelationKey> candidates = new ArrayList<CorrelationKey>(keys.length);
+        synchronized (_lock) {
+            filter = _filter;
+            if (filter == null) return new ArrayList<CorrelationKey>(Arrays.asList(keys));
+            for (CorrelationKey key : keys) {
+                if (filter.mightContain(key.toCanonicalString())) candidates.add(key);
+            }
+            local = _local;
+        }
+        if (candidates.size() == keys.length) return candidates;
+
+        // Read after the local count: a local addition committing in between looks like a remote one, which
+        // only costs a rebuild, never the other way around.
+        long version = correlator.getRouteVersion();
+        if (version - filter._version == local - filter._local) return candidates;
+
+        if (__log.isDebugEnabled())
+            __log.debug("Route version of " + _name + " is " + version + ", index built at " + filter._version + " with "
+                    + (local - filter._local) + " routes added since, rebuilding.");
+        synchronized (_lock) {
+            if (_filter == filter) _filter = null;
+            toBuild = _next == null ? prepareBuild() : null;
+        }
+        if (toBuild != null) submitBuild(processId, correlator.getCorrelatorId(), toBuild);
+        return new ArrayList<CorrelationKey>(Arrays.asList(keys));
+    }
+
+    /**
+     * Records a route added in the current transaction and bumps the route version of its correlator.
+     */
+    void routeAdded(CorrelatorDAO correlator, CorrelationKey key) {
+        if (key == null) return;
+        correlator.incrementRouteVersion();
+        final String ckey = key.toCanonicalString();
+        boolean inflight = _contexts.isTransacted();
+        synchronized (_lock) {
+            if (_filter != null) _filter.add(ckey);
+            if (_next != null) _next.add(ckey);
+            if (inflight) {
+                Integer count = _inflight.get(ckey);
+                _inflight.put(ckey, count == null ? 1 : count + 1);
+            } else {
+                _local++;
+            }
+        }
+        if (!inflight) return;
+
+        try {
+            Transaction tx = _contexts.txManager.getTransaction();
+            tx.registerSynchronization(new Synchronization() {
+                private boolean _committing;
+
+                public void beforeCompletion() {
+                    synchronized (_lock) {
+                        _local++;
+                    }
+                    _committing = true;
+                }
+
+                public void afterCompletion(int status) {
+                    synchronized (_lock) {
+                        Integer count = _inflight.remove(ckey);
+                        if (count != null && count > 1) _inflight.put(ckey, count - 1);
+                        if (_committing && status != Status.STATUS_COMMITTED) _local--;
+                        // Already in a filter being built, unless it was created and copied the in-flight
+                        // routes between the addition and now. Harmless either way.
+                        if (_next != null) _next.add(ckey);
+                    }
+                }
+            });
+        } catch (Exception ex) {
+            // Can't tell when the route gets committed, don't trust the index anymore
+            __log.warn("Couldn't track route addition on " + _name + ", disabling route index until next rebuild.", ex);
+            invalidate();
+        }
+    }
+
+    /**
+     * Drops the filter, it will get rebuilt on the next lookup.
+     */
+    void invalidate() {
+        synchronized (_lock) {
+            _filter = null;
+        }
+    }
+
+    /**
+     * Route version increments made through this server so far.
+     */
+    long localVersions() {
+        synchronized (_lock) {
+            return _local;
+        }
+    }
+
+    /**
+     * Creates the next filter, to be called holding the lock. Routes added before it exists are either
+     * committed, and loaded with the others, or still in flight and copied here. Routes added later go to
+     * the new filter.
+     */
+    private Filter prepareBuild() {
+        Filter filter = _next = new Filter(_capacity);
+        for (String ckey : _inflight.keySet()) filter.add(ckey);
+        return filter;
+    }
+
+    private void submitBuild(final QName processId, final String correlatorId, final Filter filter) {
+        try {
+            _executor.execute(new Runnable() {
+                public void run() {
+                    build(processId, correlatorId, filter);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            __log.warn("Couldn't schedule route index build for " + _name + ", checking the database.", ex);
+            synchronized (_lock) {
+                if (_next == filter) _next = null;
+            }
+        }
+    }
+
+    private void build(QName processId, String correlatorId, Filter filter) {
+        boolean built = false;
+        try {
+            Routes routes = loadRoutes(processId, correlatorId);
+            synchronized (_lock) {
+                for (CorrelationKey key : routes.keys) filter.add(key.toCanonicalString());
+                filter._version = routes.version;
+                filter._local = routes.local;
+                _capacity = Math.max(_minCapacity, 2 * routes.keys.size());
+            }
+            built = true;
+            if (__log.isDebugEnabled())
+                __log.debug("Built route index for " + _name + " with " + routes.keys.size() + " routes at version "
+                        + routes.version + ".");
+        } catch (Exception ex) {
+            __log.warn("Couldn't build route index for " + _name + ", checking the database.", ex);
+        } finally {
+            synchronized (_lock) {
+                if (_next == filter) {
+                    _next = null;
+                    if (built) _filter = filter;
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the existing routes in a transaction of its own: with repeatable reads the caller's snapshot
+     * could predate the new filter and miss routes that committed in between.
+     */
+    Routes loadRoutes(final QName processId, final String correlatorId) throws Exception {
+        return _contexts.execTransaction(new Callable<Routes>() {
+            public Routes call() throws Exception {
+                ProcessDAO process = _contexts.dao.getConnection().getProcess(processId);
+                CorrelatorDAO correlator = process == null ? null : process.getCorrelator(correlatorId);
+                if (correlator == null)
+                    throw new IllegalStateException("Correlator " + correlatorId + " of " + processId + " not found.");
+                // Version before the keys: routes committed in between get loaded and counted as missing,
+                // which only costs a rebuild.
+                long version = correlator.getRouteVersion();
+                return new Routes(version, localVersions(), correlator.getRouteKeys());
+            }
+        });
+    }
+
+    /**
+     * Routes loaded from the database, with the route version and local count they're complete for.
+     */
+    static class Routes {
+        final long version;
+        final long local;
+        final Collection<CorrelationKey> keys;
+
+        Routes(long version, long local, Collection<CorrelationKey> keys) {
+            this.version = version;
+            this.local = local;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Bloom filter over canonical correlation keys, sized for about 1% of false positives at capacity.
+     * Not thread-safe, always accessed holding the index lock.
+     */
+    private static class Filter {
+        private static final int BITS_PER_KEY = 10;
+        private static final int HASHES = 7;
+
+        private final long[] _bits;
+        private final int _size;
+        private final int _capacity;
+        private int _count;
+
+        /** Route version and local count the filter was built at. */
+        private long _version;
+        private long _local;
+
+        Filter(int capacity) {
+            _capacity = capacity;
+            _size = capacity * BITS_PER_KEY;
+            _bits = new long[(_size + 63) / 64];
+        }
+
+        void add(String key) {
+            int h1 = key.hashCode();
+            int h2 = mix(h1);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % _size;
+                _bits[bit >>> 6] |= 1L << bit;
+            }
+            _count++;
+        }
+
+        boolean mightContain(String key) {
+            int h1 = key.hashCode();
+            int h2 = mix(h1);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % _size;
+                if ((_bits[bit >>> 6] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        /** Too many keys have been added for the filter to stay selective. */
+        boolean isSaturated() {
+            return _count > _capacity;
+        }
+
+        private static int mix(int h) {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return h | 1;
+        }
+    }
+}
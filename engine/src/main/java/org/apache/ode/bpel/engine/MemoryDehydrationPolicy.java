@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Dehydrates processes when the heap fills up. Once the usage of the tenured heap goes above the high watermark,
+ * hydrated processes get dehydrated until the estimated memory they retain brings the usage back under the low
+ * watermark. Processes are elected by cost/benefit: the memory retained by their model against the time it would
+ * take to hydrate them again, weighted by how long they've been idle. Processes used recently are left alone to
+ * avoid hydration storms, and processes idle for longer than the maximum age are always dehydrated.
+ * <p>
+ * Only the heap pools supporting usage thresholds are watched, which leaves out the young generation pools that
+ * fill up and get emptied all the time. Once started, the policy registers usage thresholds on those pools and asks
+ * for a dehydration pass as soon as the JVM notifies that one has been crossed, instead of waiting for the next
+ * periodic pass. The thresholds are JVM-wide, the ones in place before are restored when the policy is stopped.
+ */
+public class MemoryDehydrationPolicy implements DehydrationPolicy, NotificationListener {
+    private static final Log __log = LogFactory.getLog(MemoryDehydrationPolicy.class);
+
+    /** Fraction of a heap pool in use above which processes get dehydrated. */
+    private double _highWatermark = 0.8;
+    /** Fraction of a heap pool in use dehydration aims for. */
+    private double _lowWatermark = 0.6;
+    /** Processes used more recently than this (in ms) are never dehydrated. */
+    private long _minIdleTime = 30 * 1000;
+    /** Maximum age of a process before it is dehydrated regardless of memory. */
+    private long _processMaxAge = 20 * 60 * 1000;
+    /** Estimated ratio between the heap retained by a hydrated model and the size of its compiled form. */
+    private int _modelSizeFactor = 4;
+
+    private volatile Runnable _trigger;
+
+    /** Thresholds of the pools before the policy got started, to restore them on stop. */
+    private final List<Runnable> _restoreThresholds = new ArrayList<Runnable>();
+
+    public List<ODEProcess> markForDehydration(List<ODEProcess> runningProcesses) {
+        ArrayList<ODEProcess> ripped = new ArrayList<ODEProcess>();
+        final long now = System.currentTimeMillis();
+        ArrayList<ODEProcess> candidates = new ArrayList<ODEProcess>();
+        for (ODEProcess process : runningProcesses) {
+            long idle = now - process.getLastUsed();
+            if (_processMaxAge > 0 && idle > _processMaxAge) ripped.add(process);
+            else if (idle > _minIdleTime) candidates.add(process);
+        }
+
+        long excess = getExcessMemory();
+        for (ODEProcess process : ripped) excess -= retainedSize(process);
+        if (excess <= 0 || candidates.isEmpty()) return ripped;
+
+        // Most memory freed for the least expected rehydration cost goes first
+        Collections.sort(candidates, new Comparator<ODEProcess>() {
+            public int compare(ODEProcess p1, ODEProcess p2) {
+                return Double.compare(score(p2, now), score(p1, now));
+            }
+        });
+        for (ODEProcess process : candidates) {
+            if (excess <= 0) break;
+            ripped.add(process);
+            excess -= retainedSize(process);
+        }
+        if (__log.isDebugEnabled())
+            __log.debug("Heap above watermark, dehydrating " + ripped.size() + " processes.");
+        return ripped;
+    }
+
+    private double score(ODEProcess process, long now) {
+        return (double) retainedSize(process) * (now - process.getLastUsed()) / (process.getHydrationTime() + 1);
+    }
+
+    private long retainedSize(ODEProcess process) {
+        return process.getModelSize() * _modelSizeFactor;
+    }
+
+    /**
+     * @return memory to free to go back under the low watermark, 0 or less if the high watermark isn't reached
+     */
+    long getExcessMemory() {
+        long excess = 0;
+        for (MemoryPoolMXBean pool : tenuredPools()) {
+            // Usage right after a collection is what's actually retained, when the pool tracks it
+            MemoryUsage usage = pool.isCollectionUsageThresholdSupported() ? pool.getCollectionUsage() : null;
+            if (usage == null) usage = pool.getUsage();
+            long max = usage.getMax();
+            if (max <= 0) continue;
+            if (usage.getUsed() > max * _highWatermark)
+                excess = Math.max(excess, usage.getUsed() - (long) (max * _lowWatermark));
+        }
+        return excess;
+    }
+
+    /**
+     * Starts listening to the low memory notifications of the JVM.
+     * @param trigger called whenever a dehydration pass should run right away
+     */
+    public synchronized void start(Runnable trigger) {
+        _trigger = trigger;
+        for (final MemoryPoolMXBean pool : tenuredPools()) {
+            long max = pool.getUsage().getMax();
+            if (max <= 0) continue;
+            if (pool.isCollectionUsageThresholdSupported()) {
+                final long previous = pool.getCollectionUsageThreshold();
+                pool.setCollectionUsageThreshold((long) (max * _highWatermark));
+                _restoreThresholds.add(new Runnable() {
+                    public void run() {
+                        pool.setCollectionUsageThreshold(previous);
+                    }
+                });
+            } else {
+                final long previous = pool.getUsageThreshold();
+                pool.setUsageThreshold((long) (max * _highWatermark));
+                _restoreThresholds.add(new Runnable() {
+                    public void run() {
+                        pool.setUsageThreshold(previous);
+                    }
+                });
+            }
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+    }
+
+    public synchronized void stop() {
+        _trigger = null;
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+        } catch (Exception e) {
+            __log.debug("Memory notification listener already removed.", e);
+        }
+        for (Runnable restore : _restoreThresholds) {
+            try {
+                restore.run();
+            } catch (Exception e) {
+                __log.debug("Couldn't restore memory pool threshold.", e);
+            }
+        }
+        _restoreThresholds.clear();
+    }
+
+    /**
+     * @return the heap pools objects get promoted to, the only ones supporting usage thresholds
+     */
+    private static List<MemoryPoolMXBean> tenuredPools() {
+        ArrayList<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid() && pool.isUsageThresholdSupported())
+                pools.add(pool);
+        }
+        return pools;
+    }
+
+    public void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (!MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                && !MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type))
+            return;
+        Runnable trigger = _trigger;
+        if (trigger != null) {
+            __log.debug("Low memory notification received, requesting process dehydration.");
+            trigger.run();
+        }
+    }
+
+    public void setHighWatermark(double highWatermark) {
+        _highWatermark = highWatermark;
+    }
+
+    public void setLowWatermark(double lowWatermark) {
+        _lowWatermark = lowWatermark;
+    }
+
+    public void setMinIdleTime(long minIdleTime) {
+        _minIdleTime = minIdleTime;
+    }
+
+    public void setProcessMaxAge(long processMaxAge) {
+        _processMaxAge = processMaxAge;
+    }
+
+    public void setModelSizeFactor(int modelSizeFactor) {
+        _modelSizeFactor = modelSizeFactor;
+    }
+}
@@ -75,6 +75,10 @@ abstract class MyRoleMessageExchangeImpl extends MessageExchangeImpl implements
         throw new BpelEngineException("Unsupported InvocationStyle");
     }
 
+    public Future<Status> invokeAsync(Runnable onCompletion) {
+        throw new BpelEngineException("Unsupported InvocationStyle");
+    }
+
     public Status invokeBlocking() throws BpelEngineException, TimeoutException {
         throw new BpelEngineException("Unsupported InvocationStyle");
     }
@@ -19,6 +19,7 @@
 package org.apache.ode.bpel.engine;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -103,6 +104,15 @@ public class ODEProcess {
 
     private static final Messages __msgs = MessageBundle.getMessages(Messages.class);
 
+    /** Name of the process property selecting the execution state format (<code>serialized</code> or <code>compact</code>). */
+    static final QName PROP_STATE_FORMAT = new QName(Namespaces.ODE_EXTENSION_NS, "jacobStateFormat");
+
+    /** Name of the process property limiting the number of reductions an instance runs in one transaction. */
+    static final QName PROP_MAX_REDUCTIONS = new QName(Namespaces.ODE_EXTENSION_NS, "maxReductions");
+
+    /** Name of the process property limiting the time (in ms) an instance runs in one transaction. */
+    static final QName PROP_MAX_REDUCTION_TIME = new QName(Namespaces.ODE_EXTENSION_NS, "maxReductionTime");
+
     private volatile Map<PartnerLinkModel, PartnerLinkPartnerRoleImpl> _partnerRoles;
 
     private volatile Map<PartnerLinkModel, PartnerLinkMyRoleImpl> _myRoles;
@@ -130,6 +140,12 @@ public class ODEProcess {
     /** Last time the process was used. */
     private volatile long _lastUsed;
 
+    /** Size of the compiled model read on the last hydration, in bytes. */
+    private volatile long _modelSize;
+
+    /** Time taken by the last hydration, in ms. */
+    private volatile long _hydrationTime;
+
     volatile OdeRuntime _runtime;
 
     DebuggerSupport _debugger;
@@ -144,7 +160,7 @@ public class ODEProcess {
 
     protected Contexts _contexts;
 
-    final BpelInstanceWorkerCache _instanceWorkerCache = new BpelInstanceWorkerCache(this);
+    final BpelInstanceWorkerCache _instanceWorkerCache;
 
     private final Set<InvocationStyle> _invocationStyles;
 
@@ -158,6 +174,19 @@ public class ODEProcess {
     private ExternalVariableConf _extVarConf;
     
     private ExternalVariableManager _evm;
+
+    private final ProcessMetrics _metrics;
+
+    /** Maximum number of variable values cached per instance worker. */
+    private final int _variablesCached;
+
+    /** Reduction quantum of the instances, read from the process properties on hydration. */
+    private volatile int _maxReductions;
+
+    private volatile long _maxReductionTime = OdeConfigProperties.DEFAULT_MAX_REDUCTION_TIME;
+
+    /** Format of the persisted execution state, read from the process properties on hydration. */
+    private volatile ExecutionQueueImpl.StateFormat _stateFormat = ExecutionQueueImpl.StateFormat.SERIALIZED;
     
     ODEProcess(BpelServerImpl server, ProcessConf conf, BpelEventListener debugger, MyRoleMessageExchangeCache mexCache) {
         _server = server;
@@ -167,6 +196,12 @@ public class ODEProcess {
         _contexts = server._contexts;
         _inMemDao = new BpelDAOConnectionFactoryImpl(_contexts.txManager);
         _myRoleMexCache = mexCache;
+        _variablesCached = server.getConfigProperties() == null
+                ? OdeConfigProperties.DEFAULT_VARIABLES_CACHED : server.getConfigProperties().getVariablesCached();
+        _instanceWorkerCache = new BpelInstanceWorkerCache(this,
+                server.getConfigProperties() == null ? 0 : server.getConfigProperties().getWorkersRetained());
+        _metrics = new ProcessMetrics(server.getConfigProperties() == null
+                ? OdeConfigProperties.DEFAULT_METRICS_SAMPLE : server.getConfigProperties().getMetricsSample());
 
         // TODO : do this on a per-partnerlink basis, support transacted styles.
         HashSet<InvocationStyle> istyles = new HashSet<InvocationStyle>();
@@ -562,17 +597,19 @@ public class ODEProcess {
 
     private Object getState(BpelInstanceWorker worker, ProcessInstanceDAO instanceDAO) {
         ExecutionQueueImpl state = (ExecutionQueueImpl) worker.getCachedState(instanceDAO.getExecutionStateCounter());
-        if (state != null) return state;
-
-        if (isInMemory()) {
-            ProcessInstanceDaoImpl inmem = (ProcessInstanceDaoImpl) instanceDAO;
-            if (inmem.getSoup() != null) {
-                state = (ExecutionQueueImpl) inmem.getSoup();
+        if (state == null) {
+            if (isInMemory()) {
+                ProcessInstanceDaoImpl inmem = (ProcessInstanceDaoImpl) instanceDAO;
+                if (inmem.getSoup() != null) {
+                    state = (ExecutionQueueImpl) inmem.getSoup();
+                }
+                return state;
             }
-        } else {
+
+            // New instances get an empty queue as well, so that their first save uses the configured format
+            state = new ExecutionQueueImpl(getClass().getClassLoader());
             byte[] daoState = instanceDAO.getExecutionState();
             if (daoState != null) {
-                state = new ExecutionQueueImpl(getClass().getClassLoader());
                 state.setReplacementMap((ReplacementMap) _runtime.getReplacementMap(instanceDAO.getProcess().getProcessId()));
 
                 ByteArrayInputStream iis = new ByteArrayInputStream(daoState);
@@ -583,9 +620,96 @@ public class ODEProcess {
                 }
             }
         }
+        // Whatever format the state was read from, it gets written back in the current one
+        if (!isInMemory()) state.setStateFormat(getStateFormat());
         return state;
     }
 
+    /**
+     * Reads the format used to persist the execution state of this process' instances. The
+     * {@link #PROP_STATE_FORMAT} process property takes precedence over the server-wide
+     * {@link OdeConfigProperties#PROP_JACOB_STATE_FORMAT} setting. This is called from hydration logic, an
+     * invalid value is reported once per hydration rather than on each execution.
+     */
+    void initStateFormat() {
+        Node prop = getProcessProperty(PROP_STATE_FORMAT);
+        String format;
+        if (prop != null) format = prop.getTextContent();
+        else if (getProperties() != null) format = getProperties().getJacobStateFormat();
+        else format = null;
+
+        if (format == null) {
+            _stateFormat = ExecutionQueueImpl.StateFormat.SERIALIZED;
+            return;
+        }
+        try {
+            _stateFormat = ExecutionQueueImpl.StateFormat.valueOf(format.trim().toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            __log.warn("Unknown execution state format " + format + " for process " + _pid + ", using serialized.");
+            _stateFormat = ExecutionQueueImpl.StateFormat.SERIALIZED;
+        }
+    }
+
+    /**
+     * Format used to persist the execution state of this process' instances.
+     */
+    ExecutionQueueImpl.StateFormat getStateFormat() {
+        return _stateFormat;
+    }
+
+    /**
+     * Reads the reduction quantum of the instances. The {@link #PROP_MAX_REDUCTIONS} and
+     * {@link #PROP_MAX_REDUCTION_TIME} process properties take precedence over the server-wide
+     * {@link OdeConfigProperties#PROP_MAX_REDUCTIONS} and {@link OdeConfigProperties#PROP_MAX_REDUCTION_TIME}
+     * settings. This is called from hydration logic, the properties aren't parsed on each execution.
+     */
+    void initQuantum() {
+        _maxReductions = (int) getQuantumProperty(PROP_MAX_REDUCTIONS,
+                getProperties() == null ? 0 : getProperties().getMaxReductions());
+        _maxReductionTime = getQuantumProperty(PROP_MAX_REDUCTION_TIME,
+                getProperties() == null ? OdeConfigProperties.DEFAULT_MAX_REDUCTION_TIME : getProperties().getMaxReductionTime());
+    }
+
+    /**
+     * Maximum number of reductions an instance runs before yielding, 0 for no limit.
+     */
+    int getMaxReductions() {
+        return _maxReductions;
+    }
+
+    /**
+     * Maximum time (in ms) an instance runs before yielding.
+     */
+    long getMaxReductionTime() {
+        return _maxReductionTime;
+    }
+
+    private long getQuantumProperty(QName name, long dflt) {
+        Node prop = getProcessProperty(name);
+        if (prop == null) return dflt;
+        try {
+            return Long.parseLong(prop.getTextContent().trim());
+        } catch (NumberFormatException nfe) {
+            __log.warn("Invalid value " + prop.getTextContent() + " for process property " + name + " of process "
+                    + _pid + ", using " + dflt + ".");
+            return dflt;
+        }
+    }
+
+    /**
+     * Maximum number of variable values an instance worker keeps between transactions, 0 if they aren't kept.
+     */
+    int getVariablesCached() {
+        return _variablesCached;
+    }
+
+    /**
+     * @return execution metrics of the instances of this process
+     */
+    public ProcessMetrics getMetrics() {
+        return _metrics;
+    }
+
     private void execInstanceEvent(WorkEvent we) {
         BpelInstanceWorker worker = _instanceWorkerCache.get(we.getIID());
         assert worker.isWorkerThread();
@@ -802,6 +926,13 @@ public class ODEProcess {
         return _pconf.getType();
     }
 
+    /**
+     * Route index of a correlator of this process, null when routes aren't indexed.
+     */
+    CorrelationRouteIndex getRouteIndex(String correlatorId) {
+        return isInMemory() ? null : _server.getRouteIndex(getProcessType(), correlatorId);
+    }
+
     PartnerRoleChannel getPartnerRoleChannel(PartnerLinkModel partnerLink) {
         _hydrationLatch.latch(1);
         try {
@@ -822,10 +953,11 @@ public class ODEProcess {
         if (_pconf.isEventEnabled(scopeNames, event.getType())) {
             // notify the listeners
             _server.fireEvent(event);
-            if (instanceDao != null)
-                instanceDao.insertBpelEvent(event);
-            else
+            BpelEventWriter writer = _server.getEventWriter();
+            if (instanceDao == null)
                 __log.debug("Couldn't find instance to save event, no event generated!");
+            else if (writer == null || isInMemory() || !writer.enqueue(event, instanceDao.getInstanceId()))
+                instanceDao.insertBpelEvent(event);
         }
     }
 
@@ -983,6 +1115,21 @@ public class ODEProcess {
         return _lastUsed;
     }
 
+    /**
+     * Size of the compiled process model read when the process was last hydrated, in bytes. The heap retained by the
+     * hydrated model is proportional to it.
+     */
+    public long getModelSize() {
+        return _modelSize;
+    }
+
+    /**
+     * @return time the last hydration took, in ms
+     */
+    public long getHydrationTime() {
+        return _hydrationTime;
+    }
+
     /**
      * Get a hint as to whether this process is hydrated. Note this is only a hint, since things could change.
      */
@@ -1237,13 +1384,15 @@ public class ODEProcess {
 
         private void doHydrate() {
             markused();
+            long start = System.currentTimeMillis();
             try {
-                InputStream inputStream = _pconf.getCBPInputStream();
+                CountingInputStream inputStream = new CountingInputStream(_pconf.getCBPInputStream());
                 try {
                     _processModel = deserializeCompiledProcess(inputStream);
                 } finally {
                     inputStream.close();
                 }
+                _modelSize = inputStream.count;
             } catch (Exception e) {
                 String errmsg = "Error reloading compiled process " + _pconf.getProcessId() + "; the file appears to be corrupted.";
                 __log.error(errmsg);
@@ -1254,6 +1403,8 @@ public class ODEProcess {
 
             setRoles(_processModel);
             initExternalVariables();
+            initQuantum();
+            initStateFormat();
     
             if (!_hydratedOnce) {
                 for (PartnerLinkPartnerRoleImpl prole : _partnerRoles.values()) {
@@ -1311,10 +1462,37 @@ public class ODEProcess {
                     throw new BpelEngineException(errmsg, ex);
                 }
             }
+            _hydrationTime = System.currentTimeMillis() - start;
         }
 
     }
 
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
     public String scheduleWorkEvent(WorkEvent we, Date timeToFire) {
         // if (isInMemory())
         // throw new InvalidProcessException("In-mem process execution resulted in event scheduling.");
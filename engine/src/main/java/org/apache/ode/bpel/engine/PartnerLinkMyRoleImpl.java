@@ -135,14 +135,21 @@ class PartnerLinkMyRoleImpl extends PartnerLinkRoleImpl {
 
         CorrelationKey matchedKey = null;
 
-        // Try to find a route for one of our keys.
-        for (CorrelationKey key : processKeys) {
-            messageRoute = correlator.findRoute(key);
-            if (messageRoute != null) {
+        // Try to find a route for one of our keys, the index tells us which ones can't possibly match.
+        // The others are all looked up at once, the first key with a route wins.
+        CorrelationRouteIndex routeIndex = _process.getRouteIndex(correlatorId);
+        List<CorrelationKey> candidateKeys = routeIndex == null ? Arrays.asList(processKeys)
+                : routeIndex.candidateKeys(_process.getPID(), correlator, processKeys);
+        if (!candidateKeys.isEmpty()) {
+            CorrelationKey[] keys = candidateKeys.toArray(new CorrelationKey[candidateKeys.size()]);
+            MessageRouteDAO[] routes = correlator.findRoute(keys);
+            for (int i = 0; i < keys.length; ++i) {
+                if (routes[i] == null) continue;
+                messageRoute = routes[i];
+                matchedKey = keys[i];
                 if (__log.isDebugEnabled()) {
-                    __log.debug("INPUTMSG: " + correlatorId + ": ckey " + key + " ROUTED TO (grp,index,iid) = (" + messageRoute.getGroupId() + "," + messageRoute.getIndex() + ", " + messageRoute.getTargetInstance().getInstanceId() +  ")");
+                    __log.debug("INPUTMSG: " + correlatorId + ": ckey " + matchedKey + " ROUTED TO (grp,index,iid) = (" + messageRoute.getGroupId() + "," + messageRoute.getIndex() + ", " + messageRoute.getTargetInstance().getInstanceId() +  ")");
                 }
-                matchedKey = key;
                 break;
             }
         }
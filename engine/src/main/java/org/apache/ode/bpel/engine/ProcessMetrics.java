@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ode.il.config.OdeConfigProperties;
+import org.apache.ode.utils.Histogram;
+
+/**
+ * Execution metrics of the instances of a process: reductions run per transaction, time taken by a reduction, size of
+ * the persisted state and number of channels and continuations it holds. Every execution is counted but only one in
+ * {@link OdeConfigProperties#PROP_METRICS_SAMPLE} is measured, so recording stays off the critical path of instance
+ * execution.
+ */
+public class ProcessMetrics {
+
+    /** One instance execution in this many gets measured. */
+    private final int _sampleRate;
+
+    private final AtomicLong _executions = new AtomicLong();
+    private final AtomicLong _quantaExhausted = new AtomicLong();
+    private final AtomicLong _workerHits = new AtomicLong();
+    private final AtomicLong _workerMisses = new AtomicLong();
+
+    private final Histogram _reductions = new Histogram();
+    private final Histogram _reductionTimes = new Histogram();
+    private final Histogram _stateSizes = new Histogram();
+    private final Histogram _channels = new Histogram();
+    private final Histogram _continuations = new Histogram();
+
+    /**
+     * @param sampleRate one instance execution in this many gets measured
+     */
+    ProcessMetrics(int sampleRate) {
+        _sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * Records the start of an instance execution.
+     * @return whether this execution should be measured
+     */
+    boolean executionStarted() {
+        return _executions.incrementAndGet() % _sampleRate == 0;
+    }
+
+    /**
+     * Records the reductions run by a measured execution.
+     * @param reductions number of reductions
+     * @param elapsedNanos time spent running them
+     */
+    void reductionsExecuted(int reductions, long elapsedNanos) {
+        _reductions.record(reductions);
+        if (reductions > 0) _reductionTimes.record(elapsedNanos / reductions);
+    }
+
+    /**
+     * @param exhausted whether the instance had to yield because its reduction quantum was exhausted
+     */
+    void executionFinished(boolean exhausted) {
+        if (exhausted) _quantaExhausted.incrementAndGet();
+    }
+
+    /**
+     * Records the state saved by a measured execution.
+     * @param bytes size of the serialized state
+     * @param channels number of channels in the soup
+     * @param continuations number of continuations in the soup
+     */
+    void stateSaved(int bytes, int channels, int continuations) {
+        _stateSizes.record(bytes);
+        _channels.record(channels);
+        _continuations.record(continuations);
+    }
+
+    /**
+     * @return number of instance executions since the process was registered
+     */
+    public long getExecutionCount() {
+        return _executions.get();
+    }
+
+    /**
+     * @return number of instance executions that yielded because they ran out of their reduction quantum
+     */
+    public long getQuantumExhaustedCount() {
+        return _quantaExhausted.get();
+    }
+
+    /**
+     * Records the lookup of an instance worker.
+     * @param hit whether a live worker was found for the instance
+     */
+    void workerLookedUp(boolean hit) {
+        if (hit) _workerHits.incrementAndGet();
+        else _workerMisses.incrementAndGet();
+    }
+
+    /**
+     * @return ratio of instance worker lookups that found a live worker, and with it the cached instance state
+     */
+    public double getWorkerHitRate() {
+        long hits = _workerHits.get();
+        long total = hits + _workerMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /** @return reductions run per transaction */
+    public Histogram getReductions() {
+        return _reductions;
+    }
+
+    /** @return average time of a reduction in a transaction, in nanoseconds */
+    public Histogram getReductionTimes() {
+        return _reductionTimes;
+    }
+
+    /** @return size of the saved instance state, in bytes */
+    public Histogram getStateSizes() {
+        return _stateSizes;
+    }
+
+    /** @return number of channels in the saved instance state */
+    public Histogram getChannels() {
+        return _channels;
+    }
+
+    /** @return number of continuations in the saved instance state */
+    public Histogram getContinuations() {
+        return _continuations;
+    }
+
+    public void reset() {
+        _executions.set(0);
+        _quantaExhausted.set(0);
+        _workerHits.set(0);
+        _workerMisses.set(0);
+        _reductions.reset();
+        _reductionTimes.reset();
+        _stateSizes.reset();
+        _channels.reset();
+        _continuations.reset();
+    }
+
+    public String toString() {
+        return "executions=" + _executions + ", quantaExhausted=" + _quantaExhausted + ", workerHitRate="
+                + getWorkerHitRate() + ", reductions=" + _reductions
+                + ", reductionNanos=" + _reductionTimes + ", stateBytes=" + _stateSizes + ", channels=" + _channels
+                + ", continuations=" + _continuations;
+    }
+}
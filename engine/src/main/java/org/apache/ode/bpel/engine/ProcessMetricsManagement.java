@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.ode.bpel.iapi.BpelServer;
+import org.apache.ode.utils.Histogram;
+
+/**
+ * Standard MBean exposing the {@link ProcessMetrics} of the processes registered with a {@link BpelServerImpl}.
+ */
+public class ProcessMetricsManagement implements ProcessMetricsManagementMBean {
+
+    private final BpelServerImpl _server;
+
+    public ProcessMetricsManagement(BpelServer server) {
+        _server = (BpelServerImpl) server;
+    }
+
+    public String[] getProcesses() {
+        List<QName> pids = _server.getRegisteredProcessIds();
+        String[] names = new String[pids.size()];
+        for (int i = 0; i < names.length; i++) names[i] = pids.get(i).toString();
+        return names;
+    }
+
+    public long[] getBucketBounds() {
+        return Histogram.getBounds();
+    }
+
+    public long getExecutionCount(String pid) {
+        return metrics(pid).getExecutionCount();
+    }
+
+    public long getQuantumExhaustedCount(String pid) {
+        return metrics(pid).getQuantumExhaustedCount();
+    }
+
+    public double getWorkerHitRate(String pid) {
+        return metrics(pid).getWorkerHitRate();
+    }
+
+    public int getWorkerCount(String pid) {
+        return process(pid)._instanceWorkerCache.getWorkerCount();
+    }
+
+    public long[] getReductionsPerTransaction(String pid) {
+        return metrics(pid).getReductions().getCounts();
+    }
+
+    public long[] getReductionTimes(String pid) {
+        return metrics(pid).getReductionTimes().getCounts();
+    }
+
+    public long[] getStateSizes(String pid) {
+        return metrics(pid).getStateSizes().getCounts();
+    }
+
+    public long[] getChannelCounts(String pid) {
+        return metrics(pid).getChannels().getCounts();
+    }
+
+    public long[] getContinuationCounts(String pid) {
+        return metrics(pid).getContinuations().getCounts();
+    }
+
+    public String getSummary(String pid) {
+        return metrics(pid).toString();
+    }
+
+    public void reset(String pid) {
+        metrics(pid).reset();
+    }
+
+    private ProcessMetrics metrics(String pid) {
+        return process(pid).getMetrics();
+    }
+
+    private ODEProcess process(String pid) {
+        ODEProcess process = _server.getBpelProcess(QName.valueOf(pid));
+        if (process == null) throw new IllegalArgumentException("Process " + pid + " isn't registered.");
+        return process;
+    }
+}
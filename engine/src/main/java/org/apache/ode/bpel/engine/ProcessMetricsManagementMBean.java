@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+/**
+ * Management interface of the instance execution metrics of the registered processes. Processes are identified by
+ * the string form of their process id, histograms are returned as bucket counts matching {@link #getBucketBounds()}.
+ */
+public interface ProcessMetricsManagementMBean {
+
+    /** @return ids of the registered processes */
+    String[] getProcesses();
+
+    /** @return exclusive upper bound of each histogram bucket */
+    long[] getBucketBounds();
+
+    long getExecutionCount(String pid);
+
+    long getQuantumExhaustedCount(String pid);
+
+    /** @return ratio of instance worker lookups that found the worker still in memory */
+    double getWorkerHitRate(String pid);
+
+    /** @return number of instance workers currently in memory */
+    int getWorkerCount(String pid);
+
+    /** @return histogram of the reductions run per transaction */
+    long[] getReductionsPerTransaction(String pid);
+
+    /** @return histogram of the time taken by a reduction, in nanoseconds */
+    long[] getReductionTimes(String pid);
+
+    /** @return histogram of the saved instance state sizes, in bytes */
+    long[] getStateSizes(String pid);
+
+    /** @return histogram of the number of channels in the saved instance states */
+    long[] getChannelCounts(String pid);
+
+    /** @return histogram of the number of continuations in the saved instance states */
+    long[] getContinuationCounts(String pid);
+
+    /** @return human readable summary of the metrics of a process */
+    String getSummary(String pid);
+
+    void reset(String pid);
+}
@@ -1,5 +1,7 @@
 package org.apache.ode.bpel.engine;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -35,10 +37,18 @@ public class UnreliableMyRoleMessageExchangeImpl extends MyRoleMessageExchangeIm
     }
 
     public Future<Status> invokeAsync() {
-        if (_future != null) return _future;
+        return invokeAsync(null);
+    }
+
+    public Future<Status> invokeAsync(Runnable onCompletion) {
+        if (_future != null) {
+            _future.onDone(onCompletion);
+            return _future;
+        }
         if (_request == null) throw new IllegalStateException("Must call setRequest(...)!");
 
         _future = new ResponseFuture();
+        _future.onDone(onCompletion);
         _process.enqueueTransaction(new Callable<Void>() {
             public Void call() throws Exception {
                 MessageExchangeDAO dao = doInvoke();
@@ -75,6 +85,7 @@ public class UnreliableMyRoleMessageExchangeImpl extends MyRoleMessageExchangeIm
 
     private static class ResponseFuture implements Future<Status> {
         private Status _status;
+        private List<Runnable> _callbacks;
 
         public boolean cancel(boolean mayInterruptIfRunning) {
             return false;
@@ -109,10 +120,36 @@ public class UnreliableMyRoleMessageExchangeImpl extends MyRoleMessageExchangeIm
             return _status != null;
         }
 
+        /**
+         * Registers a callback to run once the exchange is done, right away if it already is.
+         */
+        void onDone(Runnable callback) {
+            if (callback == null) return;
+            synchronized (this) {
+                if (_status == null) {
+                    if (_callbacks == null) _callbacks = new ArrayList<Runnable>(1);
+                    _callbacks.add(callback);
+                    return;
+                }
+            }
+            callback.run();
+        }
+
         void done(Status status) {
+            List<Runnable> callbacks;
             synchronized (this) {
                 _status = status;
                 this.notifyAll();
+                callbacks = _callbacks;
+                _callbacks = null;
+            }
+            if (callbacks == null) return;
+            for (Runnable callback : callbacks) {
+                try {
+                    callback.run();
+                } catch (Throwable t) {
+                    __log.error("Message exchange completion callback failed.", t);
+                }
             }
         }
     }
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ode.bpel.rapi.Variable;
+import org.w3c.dom.Node;
+
+/**
+ * Values of the variables of an instance, kept by its worker across transactions so they don't get
+ * parsed again every time they're read. The cached values are valid for one execution state of the instance:
+ * the cache is stamped with the execution state counter when the state gets saved and dropped when it
+ * doesn't match the instance anymore (a rolled back transaction or the instance being run elsewhere).
+ * Variables written while the instance executes are only handed to the DAO layer once, when the state
+ * gets saved. Only used by the thread doing work for the instance.
+ */
+class VariableCache {
+
+    /** Maximum number of variable values kept. */
+    private final int _maxVariables;
+
+    private final LinkedHashMap<String, Entry> _entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            // Written values have to stay until they're flushed
+            return size() > _maxVariables && !eldest.getValue().dirty;
+        }
+    };
+
+    /** Execution state counter the cached values match, null if unknown. */
+    private Integer _stateCounter;
+
+    /** Runtime context that changed the cached values since the state was last saved. */
+    private Object _owner;
+
+    VariableCache(int maxVariables) {
+        _maxVariables = maxVariables;
+    }
+
+    /**
+     * Starts using the cache for a runtime context, dropping the values that may not match the instance state.
+     */
+    void open(Object owner, int stateCounter) {
+        if ((_owner != null && _owner != owner) || _stateCounter == null || _stateCounter != stateCounter) {
+            _entries.clear();
+            _owner = null;
+            _stateCounter = stateCounter;
+        }
+    }
+
+    Node get(Variable var) {
+        Entry entry = _entries.get(key(var));
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Caches a value read from the DAO layer.
+     */
+    void put(Variable var, Node value) {
+        _entries.put(key(var), new Entry(var, value, false));
+    }
+
+    /**
+     * Caches a value that has yet to be written to the DAO layer.
+     */
+    void write(Object owner, Variable var, Node value) {
+        _owner = owner;
+        _entries.put(key(var), new Entry(var, value, true));
+    }
+
+    /**
+     * Notes that cached values may be modified in place by the runtime context, they aren't trusted anymore
+     * unless the context saves the instance state.
+     */
+    void modifying(Object owner) {
+        _owner = owner;
+    }
+
+    /**
+     * Takes the value written for a variable that has yet to be written to the DAO layer, the caller writes it.
+     * @return the value, null if the variable has no pending write
+     */
+    Node takeWrite(Variable var) {
+        Entry entry = _entries.get(key(var));
+        if (entry == null || !entry.dirty) return null;
+        entry.dirty = false;
+        return entry.value;
+    }
+
+    /**
+     * @return the values that have to be written to the DAO layer
+     */
+    List<Entry> getDirtyEntries() {
+        ArrayList<Entry> dirty = new ArrayList<Entry>();
+        for (Entry entry : _entries.values())
+            if (entry.dirty) dirty.add(entry);
+        return dirty;
+    }
+
+    /**
+     * Called once the values have been written and the instance state saved with a new counter.
+     */
+    void saved(int stateCounter) {
+        for (Entry entry : _entries.values()) entry.dirty = false;
+        _owner = null;
+        _stateCounter = stateCounter;
+    }
+
+    void clear() {
+        _entries.clear();
+        _owner = null;
+        _stateCounter = null;
+    }
+
+    private static String key(Variable var) {
+        return var.getScopeId() + "." + var.getName();
+    }
+
+    static class Entry {
+        final Variable variable;
+        final Node value;
+        boolean dirty;
+
+        Entry(Variable variable, Node value, boolean dirty) {
+            this.variable = variable;
+            this.value = value;
+            this.dirty = dirty;
+        }
+    }
+}
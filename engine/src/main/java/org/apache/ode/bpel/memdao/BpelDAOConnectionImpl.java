@@ -351,6 +351,10 @@ class BpelDAOConnectionImpl implements BpelDAOConnection {
         _events.add(event);
     }
 
+    public void insertBpelEvents(Map<BpelEvent, ProcessInstanceDAO> events) {
+        _events.addAll(events.keySet());
+    }
+
     public List<Date> bpelEventTimelineQuery(InstanceFilter ifilter, BpelEventFilter efilter) {
         // TODO : Provide more correct implementation:
         ArrayList<Date> dates = new ArrayList<Date>();
@@ -28,6 +28,7 @@ import org.apache.ode.bpel.dao.ProcessInstanceDAO;
 import org.apache.ode.utils.CollectionUtils;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -44,6 +45,7 @@ class CorrelatorDaoImpl extends DaoBaseImpl implements CorrelatorDAO {
     private List<MsgQueueEntry> _messages;
     private List<MessageRouteDaoImpl> _routes;
     private BpelDAOConnectionImpl _conn;
+    private long _routeVersion;
 
     CorrelatorDaoImpl(String correlatorId, BpelDAOConnectionImpl conn) {
         _messages = new ArrayList<MsgQueueEntry>();
@@ -82,6 +84,34 @@ class CorrelatorDaoImpl extends DaoBaseImpl implements CorrelatorDAO {
         return null;
     }
 
+    public MessageRouteDAO[] findRoute(CorrelationKey[] keys) {
+        MessageRouteDAO[] routes = new MessageRouteDAO[keys.length];
+        for (int i = 0; i < keys.length; ++i) routes[i] = findRoute(keys[i]);
+        return routes;
+    }
+
+    public Collection<CorrelationKey> getRouteKeys() {
+        ArrayList<CorrelationKey> keys = new ArrayList<CorrelationKey>(_routes.size());
+        for (MessageRouteDaoImpl we : _routes) {
+            if (we._ckey != null) keys.add(we._ckey);
+        }
+        return keys;
+    }
+
+    public synchronized long getRouteVersion() {
+        return _routeVersion;
+    }
+
+    public void incrementRouteVersion() {
+        _conn.defer(new Runnable() {
+            public void run() {
+                synchronized (CorrelatorDaoImpl.this) {
+                    _routeVersion++;
+                }
+            }
+        });
+    }
+
     public String getCorrelatorId() {
         return _correlatorId;
     }
@@ -104,6 +104,14 @@ public class XPath20ExpressionRuntimeTest extends TestCase implements Evaluation
         assertNull(DOMUtils.getFirstChildElement((Element)retVal));
     }
 
+    public void testCompiledExpressionReevaluated() throws Exception {
+        OXPath20ExpressionBPEL20 exp = compile("$foo");
+        assertSame(_vars.get("foo"), _runtime.evaluateNode(exp, this));
+        // Same compiled expression must pick up the current variable values
+        _vars.put("foo", _vars.get("emptyVar"));
+        assertSame(_vars.get("emptyVar"), _runtime.evaluateNode(exp, this));
+    }
+
     public Node readVariable(OScope.Variable variable, OMessageVarType.Part part) throws FaultException {
         return _vars.get(variable.name);
     }
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.BpelDAOConnectionFactory;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.bpel.evt.BpelEvent;
+import org.apache.ode.bpel.evt.ProcessInstanceEvent;
+import org.apache.ode.bpel.evt.ProcessInstanceStartedEvent;
+import org.apache.ode.il.EmbeddedGeronimoFactory;
+
+public class BpelEventWriterTest extends TestCase {
+    private static final Long IID = 1L;
+
+    private Contexts _contexts;
+
+    /** Events whose insertion committed. */
+    private final List<BpelEvent> _written = new CopyOnWriteArrayList<BpelEvent>();
+
+    /** Number of events in each insertion. */
+    private final List<Integer> _batches = new CopyOnWriteArrayList<Integer>();
+
+    /** Event failing to be inserted. */
+    private ProcessInstanceEvent _bad;
+
+    protected void setUp() throws Exception {
+        _contexts = new Contexts();
+        _contexts.txManager = new EmbeddedGeronimoFactory().getTransactionManager();
+        _contexts.dao = (BpelDAOConnectionFactory) proxy(BpelDAOConnectionFactory.class, new InvocationHandler() {
+            public Object invoke(Object p, Method method, Object[] args) {
+                return method.getName().equals("getConnection") ? connection() : null;
+            }
+        });
+    }
+
+    public void testSyncIsNotBuffered() {
+        try {
+            new BpelEventWriter(_contexts, BpelEventWriter.Durability.SYNC, 10, 10);
+            fail("Synchronous events aren't written by the event writer");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testWrittenOnCommit() throws Exception {
+        BpelEventWriter writer = new BpelEventWriter(_contexts, BpelEventWriter.Durability.ASYNC, 10, 2);
+        ProcessInstanceEvent committed1 = new ProcessInstanceStartedEvent();
+        ProcessInstanceEvent committed2 = new ProcessInstanceStartedEvent();
+        ProcessInstanceEvent rolledBack = new ProcessInstanceStartedEvent();
+        ProcessInstanceEvent outside = new ProcessInstanceStartedEvent();
+
+        _contexts.txManager.begin();
+        assertTrue(writer.enqueue(committed1, IID));
+        assertTrue(writer.enqueue(committed2, IID));
+        _contexts.txManager.commit();
+        _contexts.txManager.begin();
+        assertTrue(writer.enqueue(rolledBack, IID));
+        _contexts.txManager.rollback();
+        assertTrue(writer.enqueue(outside, IID));
+
+        writer.start();
+        writer.stop();
+        assertEquals(Arrays.asList(committed1, committed2, outside), _written);
+        // Inserted together, up to the batch size
+        assertEquals(Arrays.asList(2, 1), _batches);
+    }
+
+    public void testAsyncFullBuffer() throws Exception {
+        BpelEventWriter writer = new BpelEventWriter(_contexts, BpelEventWriter.Durability.ASYNC, 2, 1);
+        ProcessInstanceEvent[] events = events(4);
+
+        _contexts.txManager.begin();
+        assertTrue(writer.enqueue(events[0], IID));
+        assertTrue(writer.enqueue(events[1], IID));
+        // Left to the caller to insert rather than blocking the transaction
+        assertFalse(writer.enqueue(events[2], IID));
+        _contexts.txManager.rollback();
+
+        // Space reserved by the rolled back transaction is freed
+        _contexts.txManager.begin();
+        assertTrue(writer.enqueue(events[3], IID));
+        _contexts.txManager.commit();
+
+        writer.start();
+        writer.stop();
+        assertEquals(Collections.singletonList(events[3]), _written);
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    public void testBestEffortFullBuffer() throws Exception {
+        BpelEventWriter writer = new BpelEventWriter(_contexts, BpelEventWriter.Durability.BEST_EFFORT, 2, 1);
+        ProcessInstanceEvent[] events = events(3);
+
+        _contexts.txManager.begin();
+        for (ProcessInstanceEvent event : events) assertTrue(writer.enqueue(event, IID));
+        _contexts.txManager.commit();
+
+        writer.start();
+        writer.stop();
+        assertEquals(Arrays.asList(events[0], events[1]), _written);
+        assertEquals(1, writer.getDroppedCount());
+    }
+
+    public void testFailingEvent() throws Exception {
+        BpelEventWriter writer = new BpelEventWriter(_contexts, BpelEventWriter.Durability.ASYNC, 10, 10);
+        ProcessInstanceEvent[] events = events(3);
+        _bad = events[1];
+
+        for (ProcessInstanceEvent event : events) assertTrue(writer.enqueue(event, IID));
+        writer.start();
+        writer.stop();
+        assertEquals(Arrays.asList(events[0], events[2]), _written);
+        assertEquals(1, writer.getFailedCount());
+    }
+
+    private static ProcessInstanceEvent[] events(int count) {
+        ProcessInstanceEvent[] events = new ProcessInstanceEvent[count];
+        for (int i = 0; i < count; i++) events[i] = new ProcessInstanceStartedEvent();
+        return events;
+    }
+
+    /**
+     * Connection recording the events inserted by committed transactions.
+     */
+    private BpelDAOConnection connection() {
+        return (BpelDAOConnection) proxy(BpelDAOConnection.class, new InvocationHandler() {
+            public Object invoke(Object p, Method method, Object[] args) throws Exception {
+                if (method.getName().equals("getInstance"))
+                    return proxy(ProcessInstanceDAO.class, new InvocationHandler() {
+                        public Object invoke(Object p, Method method, Object[] args) {
+                            return null;
+                        }
+                    });
+                if (method.getName().equals("insertBpelEvents")) {
+                    @SuppressWarnings("unchecked")
+                    final List<BpelEvent> events = new ArrayList<BpelEvent>(((Map<BpelEvent, ?>) args[0]).keySet());
+                    if (events.contains(_bad)) throw new IllegalStateException("Bad event");
+                    _batches.add(events.size());
+                    _contexts.txManager.getTransaction().registerSynchronization(new Synchronization() {
+                        public void beforeCompletion() {
+                        }
+
+                        public void afterCompletion(int status) {
+                            if (status == Status.STATUS_COMMITTED) _written.addAll(events);
+                        }
+                    });
+                }
+                return null;
+            }
+        });
+    }
+
+    private static Object proxy(Class<?> iface, InvocationHandler handler) {
+        return Proxy.newProxyInstance(iface.getClassLoader(), new Class[] { iface }, handler);
+    }
+}
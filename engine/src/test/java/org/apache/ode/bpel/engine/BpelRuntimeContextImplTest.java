@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.common.ProcessState;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.bpel.dao.XmlDataDAO;
+import org.apache.ode.bpel.iapi.ProcessConf;
+import org.apache.ode.bpel.iapi.Scheduler;
+import org.apache.ode.bpel.memdao.BpelDAOConnectionFactoryImpl;
+import org.apache.ode.bpel.rapi.FaultInfo;
+import org.apache.ode.bpel.rapi.OdeRTInstance;
+import org.apache.ode.bpel.rapi.OdeRTInstanceContext;
+import org.apache.ode.bpel.rapi.UninitializedVariableException;
+import org.apache.ode.bpel.rapi.Variable;
+import org.apache.ode.il.EmbeddedGeronimoFactory;
+import org.apache.ode.il.config.OdeConfigProperties;
+import org.apache.ode.jacob.vpu.ExecutionQueueImpl;
+import org.apache.ode.utils.DOMUtils;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Checks the variable writes deferred by the runtime context until the instance state gets saved, and the
+ * reduction quantum and execution state format of the instances.
+ */
+public class BpelRuntimeContextImplTest extends TestCase {
+    private static final QName PID = new QName("urn:test", "process-1");
+    private static final QName PROPERTY = new QName("urn:test", "orderId");
+
+    private BpelServerImpl _server;
+    private Contexts _contexts;
+    private ODEProcess _process;
+    private ProcessInstanceDAO _instance;
+    private TestVariable _var;
+    private BpelInstanceWorker _worker;
+
+    protected void setUp() throws Exception {
+        _server = new BpelServerImpl();
+        _contexts = _server._contexts;
+        _contexts.txManager = new EmbeddedGeronimoFactory().getTransactionManager();
+        _contexts.dao = new BpelDAOConnectionFactoryImpl(_contexts.txManager);
+        _process = new ODEProcess(_server, processConf(), null, null);
+
+        _contexts.txManager.begin();
+        ProcessDAO process = _contexts.dao.getConnection().createProcess(PID, PID, "guid", 1);
+        _instance = process.createInstance(null);
+        _instance.setState(ProcessState.STATE_ACTIVE);
+        _var = new TestVariable(_instance.createScope(null, "process", 0).getScopeInstanceId(), "order");
+        _contexts.txManager.commit();
+
+        _worker = new BpelInstanceWorker(_process, _instance.getInstanceId());
+    }
+
+    public void testReadAfterWrite() throws Exception {
+        final Element order = order("1");
+        execute(new Step() {
+            public void run(OdeRTInstanceContext ctx) {
+                ctx.initializeVariable(_var, order);
+                assertTrue(ctx.isVariableInitialized(_var));
+                assertSame(order, ctx.fetchVariableData(_var, false));
+                // Written once the state gets saved
+                assertTrue(variableDAO().isNull());
+            }
+        }, true);
+        assertEquals("1", variableDAO().get().getTextContent());
+        assertEquals(1, _instance.getExecutionStateCounter());
+
+        execute(new Step() {
+            public void run(OdeRTInstanceContext ctx) {
+                assertSame(order, ctx.fetchVariableData(_var, false));
+            }
+        }, true);
+    }
+
+    public void testRollbackDiscardsWrites() throws Exception {
+        execute(new Step() {
+            public void run(OdeRTInstanceContext ctx) {
+                ctx.initializeVariable(_var, order("1"));
+            }
+        }, true);
+        execute(new Step() {
+            public void run(OdeRTInstanceContext ctx) {
+                ctx.commitChanges(_var, order("2"));
+                assertEquals("2", ctx.fetchVariableData(_var, false).getTextContent());
+                ((BpelRuntimeContextImpl) ctx).forceRollback();
+            }
+        }, false);
+        assertEquals("1", variableDAO().get().getTextContent());
+        assertEquals(1, _instance.getExecutionStateCounter());
+
+        execute(new Step() {
+            public void run(OdeRTInstanceContext ctx) {
+                assertEquals("1", ctx.fetchVariableData(_var, false).getTextContent());
+            }
+        }, true);
+    }
+
+    public void testFlushOnCompletion() throws Exception {
+        execute(new Step() {
+            public void run(OdeRTInstanceContext ctx) {
+                ctx.initializeVariable(_var, order("1"));
+                _instance.setState(ProcessState.STATE_COMPLETED_OK);
+            }
+        }, true);
+        assertEquals("1", variableDAO().get().getTextContent());
+    }
+
+    public void testFlushOnFault() throws Exception {
+        execute(new Step() {
+            public void run(OdeRTInstanceContext ctx) {
+                ctx.initializeVariable(_var, order("1"));
+                _instance.setState(ProcessState.STATE_COMPLETED_WITH_FAULT);
+            }
+        }, true);
+        assertEquals("1", variableDAO().get().getTextContent());
+    }
+
+    public void testPropertiesOfDeferredWrite() throws Exception {
+        execute(new Step() {
+            public void run(OdeRTInstanceContext ctx) {
+                try {
+                    ctx.readVariableProperty(_var, PROPERTY);
+                    fail("Variable isn't initialized");
+                } catch (UninitializedVariableException uve) {
+                    // expected
+                }
+                try {
+                    ctx.initializeVariable(_var, order("1"));
+                    ctx.writeVariableProperty(_var, PROPERTY, "1");
+                    // The pending value goes with the property
+                    assertEquals("1", variableDAO().get().getTextContent());
+                    assertEquals("1", ctx.readVariableProperty(_var, PROPERTY));
+
+                    ctx.commitChanges(_var, order("2"));
+                    ctx.writeVariableProperty(_var, PROPERTY, "2");
+                    assertEquals("2", variableDAO().get().getTextContent());
+                    assertEquals("2", ctx.readVariableProperty(_var, PROPERTY));
+                } catch (UninitializedVariableException uve) {
+                    throw new RuntimeException(uve);
+                }
+            }
+        }, true);
+        assertEquals("2", variableDAO().get().getTextContent());
+    }
+
+    public void testQuantumExhausted() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(OdeConfigProperties.PROP_MAX_REDUCTIONS, "3");
+        _server.setConfigProperties(new OdeConfigProperties(props, ""));
+        // Read on hydration
+        _process.initQuantum();
+        assertEquals(3, _process.getMaxReductions());
+
+        final List<Map<String, Object>> jobs = new ArrayList<Map<String, Object>>();
+        _contexts.scheduler = (Scheduler) Proxy.newProxyInstance(Scheduler.class.getClassLoader(),
+                new Class[] { Scheduler.class }, new InvocationHandler() {
+            @SuppressWarnings("unchecked")
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("schedulePersistedJob")) jobs.add((Map<String, Object>) args[0]);
+                return null;
+            }
+        });
+
+        final int[] reductions = new int[1];
+        execute(new Step() {
+            public void run(OdeRTInstanceContext ctx) {
+                reductions[0]++;
+            }
+        }, true, true);
+
+        // The instance could have gone on, it yielded and gets resumed later
+        assertEquals(3, reductions[0]);
+        assertEquals(1, _process.getMetrics().getQuantumExhaustedCount());
+        assertEquals(ProcessState.STATE_ACTIVE, _instance.getState());
+        assertEquals(1, jobs.size());
+        WorkEvent we = new WorkEvent(jobs.get(0));
+        assertEquals(WorkEvent.Type.RESUME, we.getType());
+        assertEquals(_instance.getInstanceId(), we.getIID());
+    }
+
+    public void testStateFormatReadOnHydration() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(OdeConfigProperties.PROP_JACOB_STATE_FORMAT, "compact");
+        _server.setConfigProperties(new OdeConfigProperties(props, ""));
+        _process.initStateFormat();
+        assertEquals(ExecutionQueueImpl.StateFormat.COMPACT, _process.getStateFormat());
+
+        // Not parsed again until the next hydration
+        props.setProperty(OdeConfigProperties.PROP_JACOB_STATE_FORMAT, "unknown");
+        _server.setConfigProperties(new OdeConfigProperties(props, ""));
+        assertEquals(ExecutionQueueImpl.StateFormat.COMPACT, _process.getStateFormat());
+        _process.initStateFormat();
+        assertEquals(ExecutionQueueImpl.StateFormat.SERIALIZED, _process.getStateFormat());
+    }
+
+    private void execute(Step step, boolean commit) throws Exception {
+        execute(step, false, commit);
+    }
+
+    private void execute(Step step, boolean reducible, boolean commit) throws Exception {
+        _contexts.txManager.begin();
+        try {
+            new BpelRuntimeContextImpl(_worker, _instance, new TestInstance(step, reducible)).execute();
+        } finally {
+            if (commit) _contexts.txManager.commit();
+            else _contexts.txManager.rollback();
+        }
+    }
+
+    private XmlDataDAO variableDAO() {
+        return _instance.getScope(_var.getScopeId()).getVariable(_var.getName());
+    }
+
+    private static Element order(String id) {
+        Element order = DOMUtils.newDocument().createElementNS("urn:test", "order");
+        order.setTextContent(id);
+        return order;
+    }
+
+    private static ProcessConf processConf() {
+        return (ProcessConf) Proxy.newProxyInstance(ProcessConf.class.getClassLoader(), new Class[] { ProcessConf.class },
+                new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getProcessId")) return PID;
+                if (method.getReturnType() == Boolean.TYPE) return Boolean.FALSE;
+                return null;
+            }
+        });
+    }
+
+    private interface Step {
+        void run(OdeRTInstanceContext ctx);
+    }
+
+    /**
+     * Runtime instance running the same step on each reduction.
+     */
+    private static class TestInstance implements OdeRTInstance {
+        private final Step _step;
+        private final boolean _reducible;
+        private OdeRTInstanceContext _ctx;
+
+        /**
+         * @param reducible whether there's always something left to reduce after the step, the instance runs a
+         * single step otherwise
+         */
+        TestInstance(Step step, boolean reducible) {
+            _step = step;
+            _reducible = reducible;
+        }
+
+        public void setContext(OdeRTInstanceContext ctx) {
+            _ctx = ctx;
+        }
+
+        public boolean execute() {
+            _step.run(_ctx);
+            return _reducible;
+        }
+
+        public Object saveState(OutputStream os) {
+            return null;
+        }
+
+        public void onCreateInstance(String messageExchangeId) {
+        }
+
+        public void onSelectEvent(String selectId, String messageExchangeId, int selectorIdx) {
+        }
+
+        public void onInvokeResponse(String invokeId, InvokeResponseType irt, String mexid) {
+        }
+
+        public void onTimerEvent(String timerId) {
+        }
+
+        public void recoverActivity(String channel, long activityId, String action, FaultInfo fault) {
+        }
+    }
+
+    private static class TestVariable implements Variable {
+        private final long _scopeId;
+        private final String _name;
+
+        TestVariable(long scopeId, String name) {
+            _scopeId = scopeId;
+            _name = name;
+        }
+
+        public long getScopeId() {
+            return _scopeId;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public String getExternalId() {
+            return null;
+        }
+
+        public QName getElementType() {
+            return null;
+        }
+    }
+}
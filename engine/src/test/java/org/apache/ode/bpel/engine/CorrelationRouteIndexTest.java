@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.common.CorrelationKey;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.il.EmbeddedGeronimoFactory;
+
+public class CorrelationRouteIndexTest extends TestCase {
+    private static final QName PID = new QName("urn:test", "process-1");
+
+    private static final Executor DIRECT = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private Contexts _contexts;
+    private TestIndex _index;
+    private CorrelatorDAO _correlator;
+
+    /** Committed route version of the correlator, as other nodes would see it. */
+    private volatile long _routeVersion;
+
+    protected void setUp() throws Exception {
+        _contexts = new Contexts();
+        _contexts.txManager = new EmbeddedGeronimoFactory().getTransactionManager();
+        _index = new TestIndex(_contexts, DIRECT);
+        _correlator = (CorrelatorDAO) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { CorrelatorDAO.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getCorrelatorId")) return "corr1";
+                if (method.getName().equals("getRouteVersion")) return _routeVersion;
+                if (method.getName().equals("incrementRouteVersion")) {
+                    incrementRouteVersion();
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    public void testBuild() throws Exception {
+        _index.routes.add(key("a"));
+        assertTrue(mayHaveRoute("a"));
+        assertFalse(mayHaveRoute("b"));
+        assertEquals(1, _index.loads);
+
+        // Built once until saturated
+        assertFalse(mayHaveRoute("c"));
+        assertEquals(1, _index.loads);
+    }
+
+    public void testSaturationRebuild() throws Exception {
+        _index.routes.add(key("a"));
+        assertTrue(mayHaveRoute("a"));
+        for (int i = 0; i <= 64; i++) {
+            _index.routes.add(key("x" + i));
+            _index.routeAdded(_correlator, key("x" + i));
+        }
+        assertTrue(mayHaveRoute("x0"));
+        assertEquals(2, _index.loads);
+
+        // Routes removed from the database get dropped by the next rebuild
+        _index.routes.clear();
+        _index.routes.add(key("a"));
+        for (int i = 0; i < 100; i++) _index.routeAdded(_correlator, key("y" + i));
+        assertTrue(mayHaveRoute("a"));
+        assertEquals(3, _index.loads);
+        assertFalse(mayHaveRoute("x0"));
+        assertFalse(mayHaveRoute("y0"));
+    }
+
+    public void testInflightRouteDuringRebuild() throws Exception {
+        assertFalse(mayHaveRoute("a"));
+
+        _contexts.txManager.begin();
+        _index.routeAdded(_correlator, key("a"));
+        // Not committed yet, so not loaded by the rebuild
+        _index.invalidate();
+        assertTrue(mayHaveRoute("a"));
+        _contexts.txManager.commit();
+        assertTrue(mayHaveRoute("a"));
+        assertEquals(2, _index.loads);
+    }
+
+    public void testRouteCommittedDuringRebuild() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch committed = new CountDownLatch(1);
+        _index.loader = new Runnable() {
+            public void run() {
+                loading.countDown();
+                try {
+                    committed.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        // The load started before the routes committed and won't see them
+        _contexts.txManager.begin();
+        _index.routeAdded(_correlator, key("a"));
+        Thread lookup = new Thread() {
+            public void run() {
+                mayHaveRoute("c");
+            }
+        };
+        lookup.start();
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        _index.routeAdded(_correlator, key("b"));
+        _contexts.txManager.commit();
+        committed.countDown();
+        lookup.join(10000);
+
+        _index.loader = null;
+        assertTrue(mayHaveRoute("a"));
+        assertTrue(mayHaveRoute("b"));
+        assertFalse(mayHaveRoute("c"));
+        assertEquals(1, _index.loads);
+    }
+
+    public void testRollback() throws Exception {
+        assertFalse(mayHaveRoute("a"));
+
+        _contexts.txManager.begin();
+        _index.routeAdded(_correlator, key("a"));
+        assertTrue(mayHaveRoute("a"));
+        _contexts.txManager.rollback();
+        assertEquals(0, _routeVersion);
+        assertEquals(0, _index.localVersions());
+
+        _index.invalidate();
+        assertFalse(mayHaveRoute("a"));
+    }
+
+    public void testBuildFailure() throws Exception {
+        _index.loader = new Runnable() {
+            public void run() {
+                throw new IllegalStateException("Database down");
+            }
+        };
+        assertTrue(mayHaveRoute("a"));
+        assertTrue(mayHaveRoute("a"));
+        assertEquals(2, _index.loads);
+
+        _index.loader = null;
+        assertFalse(mayHaveRoute("a"));
+        assertEquals(3, _index.loads);
+    }
+
+    public void testLocalRoutesKeepIndex() throws Exception {
+        assertFalse(mayHaveRoute("a"));
+
+        _contexts.txManager.begin();
+        _index.routes.add(key("a"));
+        _index.routeAdded(_correlator, key("a"));
+        _contexts.txManager.commit();
+        _index.routes.add(key("b"));
+        _index.routeAdded(_correlator, key("b"));
+
+        assertEquals(2, _routeVersion);
+        assertTrue(mayHaveRoute("a"));
+        assertTrue(mayHaveRoute("b"));
+        assertFalse(mayHaveRoute("c"));
+        assertEquals(1, _index.loads);
+    }
+
+    public void testRemoteRoute() throws Exception {
+        assertFalse(mayHaveRoute("a"));
+
+        // Added by another node, only the route version tells
+        _index.routes.add(key("a"));
+        _routeVersion++;
+        assertTrue(mayHaveRoute("a"));
+        assertEquals(2, _index.loads);
+
+        // The rebuilt index has it and trusts the new version
+        assertTrue(mayHaveRoute("a"));
+        assertFalse(mayHaveRoute("b"));
+        assertEquals(2, _index.loads);
+    }
+
+    public void testRemoteRouteMixedWithLocal() throws Exception {
+        assertFalse(mayHaveRoute("a"));
+
+        _index.routes.add(key("a"));
+        _index.routeAdded(_correlator, key("a"));
+        _index.routes.add(key("b"));
+        _routeVersion++;
+        assertTrue(mayHaveRoute("b"));
+        assertEquals(2, _index.loads);
+        assertFalse(mayHaveRoute("c"));
+        assertEquals(2, _index.loads);
+    }
+
+    public void testBackgroundBuild() throws Exception {
+        final List<Runnable> builds = new ArrayList<Runnable>();
+        _index = new TestIndex(_contexts, new Executor() {
+            public void execute(Runnable command) {
+                builds.add(command);
+            }
+        });
+
+        // Nothing to rely on until the build has run
+        assertTrue(mayHaveRoute("a"));
+        assertTrue(mayHaveRoute("a"));
+        assertEquals(1, builds.size());
+        assertEquals(0, _index.loads);
+
+        builds.remove(0).run();
+        assertFalse(mayHaveRoute("a"));
+        assertTrue(builds.isEmpty());
+        assertEquals(1, _index.loads);
+    }
+
+    private boolean mayHaveRoute(String value) {
+        return !_index.candidateKeys(PID, _correlator, new CorrelationKey[] { key(value) }).isEmpty();
+    }
+
+    private void incrementRouteVersion() throws Exception {
+        if (!_contexts.isTransacted()) {
+            _routeVersion++;
+            return;
+        }
+        _contexts.txManager.getTransaction().registerSynchronization(new Synchronization() {
+            public void beforeCompletion() {
+            }
+
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) _routeVersion++;
+            }
+        });
+    }
+
+    private static CorrelationKey key(String value) {
+        return new CorrelationKey(1, new String[] { value });
+    }
+
+    /**
+     * Index loading the routes from a list instead of the database.
+     */
+    private class TestIndex extends CorrelationRouteIndex {
+        final List<CorrelationKey> routes = new ArrayList<CorrelationKey>();
+        volatile Runnable loader;
+        volatile int loads;
+
+        TestIndex(Contexts contexts, Executor executor) {
+            super(contexts, executor, "test", 64);
+        }
+
+        Routes loadRoutes(QName processId, String correlatorId) throws Exception {
+            loads++;
+            long version = _routeVersion;
+            Routes loaded = new Routes(version, localVersions(), new ArrayList<CorrelationKey>(routes));
+            if (loader != null) loader.run();
+            return loaded;
+        }
+    }
+}
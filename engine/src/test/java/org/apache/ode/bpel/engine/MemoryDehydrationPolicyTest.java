@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.iapi.ProcessConf;
+
+public class MemoryDehydrationPolicyTest extends TestCase {
+    private static final long SECOND = 1000;
+
+    private BpelServerImpl _server;
+    private TestPolicy _policy;
+
+    protected void setUp() throws Exception {
+        _server = new BpelServerImpl();
+        _policy = new TestPolicy();
+        _policy.setMinIdleTime(30 * SECOND);
+        _policy.setProcessMaxAge(600 * SECOND);
+        _policy.setModelSizeFactor(4);
+    }
+
+    public void testRanking() {
+        // Retains 4000 bytes, idle for a minute and cheap to hydrate again
+        TestProcess big = process("big", 1000, 60 * SECOND, 10);
+        // Retains 400 bytes but idle for longer
+        TestProcess small = process("small", 100, 120 * SECOND, 10);
+        // Retains as much as the first one but expensive to hydrate again
+        TestProcess slow = process("slow", 1000, 60 * SECOND, 1000);
+        List<ODEProcess> processes = Arrays.<ODEProcess>asList(slow, small, big);
+
+        _policy.excess = 4000;
+        assertEquals(Collections.singletonList(big), _policy.markForDehydration(processes));
+        _policy.excess = 4001;
+        assertEquals(Arrays.asList(big, small), _policy.markForDehydration(processes));
+        _policy.excess = 10000;
+        assertEquals(Arrays.asList(big, small, slow), _policy.markForDehydration(processes));
+    }
+
+    public void testMinIdleTime() {
+        TestProcess recent = process("recent", 1000, 10 * SECOND, 10);
+        TestProcess idle = process("idle", 10, 40 * SECOND, 10);
+
+        _policy.excess = 100000;
+        assertEquals(Collections.singletonList(idle), _policy.markForDehydration(Arrays.<ODEProcess>asList(recent, idle)));
+    }
+
+    public void testMaxAge() {
+        TestProcess old = process("old", 10, 700 * SECOND, 10);
+        TestProcess idle = process("idle", 10, 40 * SECOND, 10);
+        List<ODEProcess> processes = Arrays.<ODEProcess>asList(idle, old);
+
+        // Under the watermark only the processes too old go
+        _policy.excess = 0;
+        assertEquals(Collections.singletonList(old), _policy.markForDehydration(processes));
+
+        // The memory they free counts towards the excess
+        _policy.excess = 40;
+        assertEquals(Collections.singletonList(old), _policy.markForDehydration(processes));
+        _policy.excess = 41;
+        assertEquals(Arrays.asList(old, idle), _policy.markForDehydration(processes));
+    }
+
+    private TestProcess process(String name, long modelSize, long idle, long hydrationTime) {
+        return new TestProcess(_server, new QName("urn:test", name), modelSize, System.currentTimeMillis() - idle,
+                hydrationTime);
+    }
+
+    /**
+     * Policy with a fixed amount of memory to free.
+     */
+    private static class TestPolicy extends MemoryDehydrationPolicy {
+        long excess;
+
+        long getExcessMemory() {
+            return excess;
+        }
+    }
+
+    /**
+     * Process with fixed usage figures.
+     */
+    private static class TestProcess extends ODEProcess {
+        private final long _modelSize;
+        private final long _lastUsed;
+        private final long _hydrationTime;
+
+        TestProcess(BpelServerImpl server, final QName pid, long modelSize, long lastUsed, long hydrationTime) {
+            super(server, (ProcessConf) Proxy.newProxyInstance(ProcessConf.class.getClassLoader(),
+                    new Class[] { ProcessConf.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getProcessId")) return pid;
+                    if (method.getReturnType() == Boolean.TYPE) return Boolean.FALSE;
+                    return null;
+                }
+            }), null, null);
+            _modelSize = modelSize;
+            _lastUsed = lastUsed;
+            _hydrationTime = hydrationTime;
+        }
+
+        public long getModelSize() {
+            return _modelSize;
+        }
+
+        public long getLastUsed() {
+            return _lastUsed;
+        }
+
+        public long getHydrationTime() {
+            return _hydrationTime;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.dao.MessageExchangeDAO;
+import org.apache.ode.bpel.iapi.MessageExchange.AckType;
+import org.apache.ode.bpel.iapi.MessageExchange.FailureType;
+import org.apache.ode.bpel.iapi.MessageExchange.Status;
+import org.apache.ode.bpel.iapi.ProcessConf;
+
+/**
+ * Checks the completion callbacks of {@link UnreliableMyRoleMessageExchangeImpl#invokeAsync(Runnable)}.
+ */
+public class UnreliableMyRoleMessageExchangeImplTest extends TestCase {
+    private static final QName PID = new QName("urn:test", "process-1");
+
+    /** Runnables scheduled by the exchange, run by the test to complete it. */
+    private List<Runnable> _scheduled;
+
+    private UnreliableMyRoleMessageExchangeImpl _mex;
+
+    protected void setUp() throws Exception {
+        _scheduled = new ArrayList<Runnable>();
+        ODEProcess process = new ODEProcess(new BpelServerImpl(), processConf(), null, null) {
+            <T> Future<T> enqueueTransaction(Callable<T> tx) {
+                try {
+                    tx.call();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return null;
+            }
+
+            void scheduleRunnable(Runnable runnable) {
+                _scheduled.add(runnable);
+            }
+        };
+        _mex = new UnreliableMyRoleMessageExchangeImpl(process, "mex-1", null, null, PID) {
+            protected MessageExchangeDAO doInvoke() {
+                ack(AckType.FAILURE);
+                return acknowledgedDAO();
+            }
+        };
+        _mex._request = new MemBackedMessageImpl(null, null, new QName("urn:test", "request"), false);
+    }
+
+    public void testCallbackRegisteredBeforeCompletion() throws Exception {
+        Counter first = new Counter();
+        Counter second = new Counter();
+        Future<Status> future = _mex.invokeAsync(first);
+        assertSame(future, _mex.invokeAsync(second));
+        assertFalse(future.isDone());
+        assertEquals(0, first.runs);
+        assertEquals(0, second.runs);
+
+        complete();
+        assertTrue(future.isDone());
+        assertEquals(Status.ACK, future.get());
+        assertEquals(1, first.runs);
+        assertEquals(1, second.runs);
+    }
+
+    public void testCallbackRegisteredAfterCompletion() throws Exception {
+        Counter before = new Counter();
+        Future<Status> future = _mex.invokeAsync(before);
+        complete();
+
+        // Runs right away, in the registering thread
+        Counter after = new Counter();
+        assertSame(future, _mex.invokeAsync(after));
+        assertEquals(1, after.runs);
+        assertEquals(1, before.runs);
+        assertEquals(Status.ACK, _mex.invokeBlocking());
+        assertEquals(1, after.runs);
+        assertEquals(1, before.runs);
+    }
+
+    public void testFailingCallbackDoesNotPreventOthers() throws Exception {
+        Counter counter = new Counter();
+        _mex.invokeAsync(new Runnable() {
+            public void run() {
+                throw new IllegalStateException();
+            }
+        });
+        _mex.invokeAsync(counter);
+        complete();
+        assertEquals(1, counter.runs);
+    }
+
+    private void complete() {
+        assertEquals(1, _scheduled.size());
+        _scheduled.remove(0).run();
+    }
+
+    private static MessageExchangeDAO acknowledgedDAO() {
+        return (MessageExchangeDAO) Proxy.newProxyInstance(MessageExchangeDAO.class.getClassLoader(),
+                new Class[] { MessageExchangeDAO.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getStatus")) return Status.ACK;
+                if (method.getName().equals("getAckType")) return AckType.FAILURE;
+                if (method.getName().equals("getFailureType")) return FailureType.OTHER;
+                return null;
+            }
+        });
+    }
+
+    private static ProcessConf processConf() {
+        return (ProcessConf) Proxy.newProxyInstance(ProcessConf.class.getClassLoader(), new Class[] { ProcessConf.class },
+                new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getProcessId")) return PID;
+                if (method.getReturnType() == Boolean.TYPE) return Boolean.FALSE;
+                return null;
+            }
+        });
+    }
+
+    private static class Counter implements Runnable {
+        int runs;
+
+        public void run() {
+            ++runs;
+        }
+    }
+}
@@ -19,22 +19,34 @@
 
 package org.apache.ode.il;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Source;
 
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMAttribute;
 import org.apache.axiom.om.OMContainer;
+import org.apache.axiom.om.OMDataSource;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
 import org.apache.axiom.om.OMNamespace;
 import org.apache.axiom.om.OMNode;
+import org.apache.axiom.om.OMOutputFormat;
 import org.apache.axiom.om.OMText;
+import org.apache.axiom.om.util.StAXUtils;
+import org.apache.axiom.soap.impl.builder.MTOMStAXSOAPModelBuilder;
 import org.apache.ode.utils.DOMUtils;
 import org.apache.ode.utils.NSContext;
 import org.w3c.dom.Attr;
@@ -198,6 +210,190 @@ public class OMUtils {
         return omElement;
     }
 
+    /**
+     * Converts an element to DOM straight from its StAX events. If the element is still in the incoming stream,
+     * its content is pulled from the parser without being built in the Axiom tree, so the element (and whatever
+     * follows it in the document) can't be accessed through Axiom anymore. Only use it on the last element read
+     * from a message.
+     */
+    public static Element streamToDOM(OMElement element, Document doc) throws XMLStreamException {
+        // XOP includes are only resolved by the Axiom tree
+        boolean consume = !element.isComplete() && !(element.getBuilder() instanceof MTOMStAXSOAPModelBuilder);
+        XMLStreamReader reader = consume ? element.getXMLStreamReaderWithoutCaching() : element.getXMLStreamReader();
+
+        NSContext nscontext = new NSContext();
+        if (element.getParent() instanceof OMElement)
+            buildNScontext(nscontext, (OMElement) element.getParent());
+
+        Element root = null;
+        Element current = null;
+        int depth = 0;
+        for (int event = reader.getEventType(); ; event = reader.next()) {
+            switch (event) {
+            case XMLStreamConstants.START_ELEMENT:
+                Element domElement = doc.createElementNS(emptyToNull(reader.getNamespaceURI()),
+                        qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                if (root == null) {
+                    root = domElement;
+                    DOMUtils.injectNamespaces(domElement, nscontext);
+                } else {
+                    current.appendChild(domElement);
+                }
+                for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+                    String prefix = reader.getNamespacePrefix(i);
+                    String uri = reader.getNamespaceURI(i) == null ? "" : reader.getNamespaceURI(i);
+                    domElement.setAttributeNS(DOMUtils.NS_URI_XMLNS, prefix == null || prefix.length() == 0
+                            ? "xmlns" : "xmlns:" + prefix, uri);
+                }
+                for (int i = 0; i < reader.getAttributeCount(); ++i) {
+                    String uri = emptyToNull(reader.getAttributeNamespace(i));
+                    domElement.setAttributeNS(uri, uri == null ? reader.getAttributeLocalName(i)
+                            : qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                            reader.getAttributeValue(i));
+                }
+                current = domElement;
+                ++depth;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (--depth == 0) return root;
+                current = (Element) current.getParentNode();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                if (current != null) current.appendChild(doc.createTextNode(reader.getText()));
+                break;
+            case XMLStreamConstants.CDATA:
+                if (current != null) current.appendChild(doc.createCDATASection(reader.getText()));
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                throw new XMLStreamException("Unexpected end of document while reading " + element.getQName());
+            }
+        }
+    }
+
+    /**
+     * Wraps a DOM element in an Axiom element that serializes the DOM directly to the output when the message
+     * is written, without building an Axiom copy of it. The Axiom tree is only built if something navigates
+     * the element before that.
+     */
+    public static OMElement streamToOM(Element src, OMFactory omf) {
+        OMNamespace ns = src.getNamespaceURI() == null ? null
+                : omf.createOMNamespace(src.getNamespaceURI(), src.getPrefix() == null ? "" : src.getPrefix());
+        return omf.createOMElement(new DOMDataSource(src), src.getLocalName(), ns);
+    }
+
+    private static String emptyToNull(String str) {
+        return str == null || str.length() == 0 ? null : str;
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * Writes a DOM element using StAX. Declares all the namespaces in scope on the root as Axiom does with the
+     * elements it serializes.
+     */
+    private static class DOMDataSource implements OMDataSource {
+        private final Element _element;
+        private int _generatedPrefixes;
+
+        DOMDataSource(Element element) {
+            _element = element;
+        }
+
+        public void serialize(OutputStream output, OMOutputFormat format) throws XMLStreamException {
+            XMLStreamWriter writer = StAXUtils.createXMLStreamWriter(output, format.getCharSetEncoding());
+            serialize(writer);
+            writer.flush();
+        }
+
+        public void serialize(Writer output, OMOutputFormat format) throws XMLStreamException {
+            XMLStreamWriter writer = StAXUtils.createXMLStreamWriter(output);
+            serialize(writer);
+            writer.flush();
+        }
+
+        public void serialize(XMLStreamWriter writer) throws XMLStreamException {
+            write(_element, writer, new HashMap<String, String>(), DOMUtils.getMyNSContext(_element).toMap());
+        }
+
+        public XMLStreamReader getReader() throws XMLStreamException {
+            // Only used when the element gets expanded in Axiom, no need to be smart
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            XMLStreamWriter writer = StAXUtils.createXMLStreamWriter(out);
+            serialize(writer);
+            writer.flush();
+            return StAXUtils.createXMLStreamReader(new ByteArrayInputStream(out.toByteArray()));
+        }
+
+        private void write(Element elmt, XMLStreamWriter writer, Map<String, String> inScope,
+                           Map<String, String> declarations) throws XMLStreamException {
+            Map<String, String> bindings = new HashMap<String, String>(inScope);
+            String uri = elmt.getNamespaceURI() == null ? "" : elmt.getNamespaceURI();
+            String prefix = elmt.getPrefix() == null ? "" : elmt.getPrefix();
+            writer.writeStartElement(prefix, elmt.getLocalName() == null ? elmt.getNodeName() : elmt.getLocalName(), uri);
+
+            for (Map.Entry<String, String> decl : declarations.entrySet())
+                declare(writer, bindings, decl.getKey(), decl.getValue());
+            // also undeclares the default namespace of the enclosing document for unqualified elements
+            declare(writer, bindings, prefix, uri);
+
+            NamedNodeMap attrs = elmt.getAttributes();
+            for (int i = 0; i < attrs.getLength(); ++i) {
+                Attr attr = (Attr) attrs.item(i);
+                if (DOMUtils.NS_URI_XMLNS.equals(attr.getNamespaceURI()) || "xmlns".equals(attr.getNodeName()))
+                    continue;
+                String attrUri = attr.getNamespaceURI();
+                if (attrUri == null || attrUri.length() == 0) {
+                    writer.writeAttribute(attr.getLocalName() == null ? attr.getNodeName() : attr.getLocalName(),
+                            attr.getValue());
+                    continue;
+                }
+                String attrPrefix = attr.getPrefix();
+                if (attrPrefix == null || !attrUri.equals(bindings.get(attrPrefix))) {
+                    // reuse an existing prefix if there's one, attributes can't use the default namespace
+                    attrPrefix = null;
+                    for (Map.Entry<String, String> binding : bindings.entrySet())
+                        if (binding.getKey().length() > 0 && attrUri.equals(binding.getValue()))
+                            attrPrefix = binding.getKey();
+                    if (attrPrefix == null) {
+                        attrPrefix = "ns" + _generatedPrefixes++;
+                        declare(writer, bindings, attrPrefix, attrUri);
+                    }
+                }
+                writer.writeAttribute(attrPrefix, attrUri, attr.getLocalName(), attr.getValue());
+            }
+
+            NodeList children = elmt.getChildNodes();
+            for (int i = 0; i < children.getLength(); ++i) {
+                Node n = children.item(i);
+                switch (n.getNodeType()) {
+                case Node.CDATA_SECTION_NODE:
+                    writer.writeCData(((CDATASection) n).getData());
+                    break;
+                case Node.TEXT_NODE:
+                    writer.writeCharacters(((Text) n).getData());
+                    break;
+                case Node.ELEMENT_NODE:
+                    write((Element) n, writer, bindings, DOMUtils.getMyNamespaces((Element) n));
+                    break;
+                }
+            }
+            writer.writeEndElement();
+        }
+
+        private void declare(XMLStreamWriter writer, Map<String, String> bindings, String prefix, String uri)
+                throws XMLStreamException {
+            if (prefix == null) prefix = "";
+            if (uri == null) uri = "";
+            if (uri.equals(bindings.get(prefix))) return;
+            if (prefix.length() == 0) writer.writeDefaultNamespace(uri);
+            else writer.writeNamespace(prefix, uri);
+            bindings.put(prefix, uri);
+        }
+    }
+
 
     private static void injectNamespaces(OMElement omElement, Map<String,String> nscontext) {
         for (String prefix : nscontext.keySet()) {
@@ -21,6 +21,7 @@ package org.apache.ode.il.config;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.ode.utils.StorageEncoding;
 import org.apache.ode.utils.SystemUtils;
 
 import java.io.File;
@@ -88,6 +89,52 @@ public class OdeConfigProperties {
     public static final String PROP_EXTENSION_BUNDLES_RT = "extension.bundles.runtime";
     public static final String PROP_EXTENSION_BUNDLES_VAL = "extension.bundles.validation";
 
+    public static final String PROP_JACOB_STATE_FORMAT = "jacob.state.format";
+
+    public static final String PROP_EVENT_PERSISTENCE = "event.persistence";
+
+    public static final String PROP_EVENT_BUFFER_SIZE = "event.buffer.size";
+
+    public static final String PROP_EVENT_BATCH_SIZE = "event.batch.size";
+
+    public static final String PROP_DAO_STORAGE_ENCODING = "dao.storage.encoding";
+
+    public static final String PROP_CORRELATION_ROUTE_INDEX = "correlation.route.index";
+
+    public static final String PROP_CORRELATION_ROUTE_INDEX_CAPACITY = "correlation.route.index.capacity";
+
+    public static final String PROP_MAX_REDUCTIONS = "instance.reductions.max";
+
+    public static final String PROP_MAX_REDUCTION_TIME = "instance.reduction.time.max";
+
+    public static final long DEFAULT_MAX_REDUCTION_TIME = 2000000;
+
+    public static final String PROP_PROCESS_DEHYDRATION_POLICY = "process.dehydration.policy";
+
+    public static final String PROP_PROCESS_DEHYDRATION_HEAP_HIGH = "process.dehydration.heap.high";
+
+    public static final String PROP_PROCESS_DEHYDRATION_HEAP_LOW = "process.dehydration.heap.low";
+
+    public static final String PROP_STARTUP_THREADS = "startup.threads";
+
+    public static final String PROP_COMPILE_THREADS = "deploy.compile.threads";
+
+    public static final String PROP_COMPILE_CACHE = "deploy.compile.cache";
+
+    public static final String PROP_VARIABLES_CACHED = "instance.variables.cached";
+
+    public static final int DEFAULT_VARIABLES_CACHED = 64;
+
+    public static final String PROP_WORKERS_RETAINED = "instance.workers.retained";
+
+    public static final String PROP_METRICS_SAMPLE = "metrics.sample";
+
+    public static final int DEFAULT_METRICS_SAMPLE = 16;
+
+    public static final String PROP_JACOB_TIMING_SAMPLE = "jacob.timing.sample";
+
+    public static final int DEFAULT_JACOB_TIMING_SAMPLE = 64;
+
     private File _cfgFile;
 
     private String _prefix;
@@ -284,4 +331,138 @@ public class OdeConfigProperties {
     public int getAtomicScopeRetryDelay() {
         return Integer.valueOf(getProperty(OdeConfigProperties.PROP_ATOMIC_SCOPES_RETRY_DELAY, "60"));
     }
+
+    /**
+     * Encoding used when persisting the JACOB execution state of instances, either <code>serialized</code> (plain
+     * Java serialization) or <code>compact</code>. Processes may override it with a process property.
+     */
+    public String getJacobStateFormat() {
+        return getProperty(OdeConfigProperties.PROP_JACOB_STATE_FORMAT, "serialized");
+    }
+
+    /**
+     * How instance events get persisted: <code>sync</code> (in the instance transaction), <code>async</code>
+     * (batched by a background writer) or <code>best_effort</code> (batched, dropped when the buffer is full).
+     */
+    public String getEventPersistence() {
+        return getProperty(OdeConfigProperties.PROP_EVENT_PERSISTENCE, "sync");
+    }
+
+    public int getEventBufferSize() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_EVENT_BUFFER_SIZE, "2048"));
+    }
+
+    public int getEventBatchSize() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_EVENT_BATCH_SIZE, "100"));
+    }
+
+    /**
+     * Encoding of the variable and message payloads written by the DAO layer, either <code>text</code> or
+     * <code>deflate</code>. Payloads written with any encoding stay readable.
+     */
+    public String getDaoStorageEncoding() {
+        return getProperty(OdeConfigProperties.PROP_DAO_STORAGE_ENCODING, StorageEncoding.getDefault().name().toLowerCase());
+    }
+
+    /**
+     * Whether correlation keys of message routes are indexed in memory to skip lookups that can't match. Each
+     * node keeps its own index and detects the routes added by other nodes through a route version kept on the
+     * correlator, which gets locked by every route addition while the index is enabled. Only nodes with the
+     * index enabled maintain that version, so it has to be enabled on all the nodes sharing the database or none.
+     */
+    public boolean isCorrelationRouteIndexEnabled() {
+        return Boolean.valueOf(getProperty(OdeConfigProperties.PROP_CORRELATION_ROUTE_INDEX, "false"));
+    }
+
+    public int getCorrelationRouteIndexCapacity() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_CORRELATION_ROUTE_INDEX_CAPACITY, "1024"));
+    }
+
+    /**
+     * Number of reductions an instance runs in a transaction before yielding to other instances, 0 for no limit.
+     */
+    public int getMaxReductions() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_MAX_REDUCTIONS, "0"));
+    }
+
+    /**
+     * Time in ms an instance runs in a transaction before yielding to other instances.
+     */
+    public long getMaxReductionTime() {
+        return Long.valueOf(getProperty(OdeConfigProperties.PROP_MAX_REDUCTION_TIME, String.valueOf(DEFAULT_MAX_REDUCTION_TIME)));
+    }
+
+    /**
+     * Policy electing the processes to dehydrate: <code>count</code> keeps a maximum number of processes hydrated,
+     * <code>memory</code> dehydrates processes when the heap fills up.
+     */
+    public String getDehydrationPolicy() {
+        return getProperty(OdeConfigProperties.PROP_PROCESS_DEHYDRATION_POLICY, "count");
+    }
+
+    /**
+     * Fraction of the heap in use above which the <code>memory</code> dehydration policy dehydrates processes.
+     */
+    public double getDehydrationHeapHighWatermark() {
+        return Double.valueOf(getProperty(OdeConfigProperties.PROP_PROCESS_DEHYDRATION_HEAP_HIGH, "0.8"));
+    }
+
+    /**
+     * Fraction of the heap in use the <code>memory</code> dehydration policy aims for when dehydrating.
+     */
+    public double getDehydrationHeapLowWatermark() {
+        return Double.valueOf(getProperty(OdeConfigProperties.PROP_PROCESS_DEHYDRATION_HEAP_LOW, "0.6"));
+    }
+
+    /**
+     * Number of threads loading the deployment units and activating their processes on startup, 1 to do it
+     * serially.
+     */
+    public int getStartupThreads() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_STARTUP_THREADS, "1"));
+    }
+
+    /**
+     * Number of threads compiling the processes of a deployment unit, 1 to compile them one after the other.
+     */
+    public int getCompileThreads() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_COMPILE_THREADS, "1"));
+    }
+
+    /**
+     * Directory where compiled processes are cached across deployments, null if they're not cached.
+     */
+    public File getCompilationCacheDir() {
+        String dir = getProperty(OdeConfigProperties.PROP_COMPILE_CACHE);
+        return dir == null || dir.trim().length() == 0 ? null : new File(dir.trim());
+    }
+
+    /**
+     * Maximum number of variable values kept in memory per instance between transactions, 0 to disable caching.
+     */
+    public int getVariablesCached() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_VARIABLES_CACHED, String.valueOf(DEFAULT_VARIABLES_CACHED)));
+    }
+
+    /**
+     * Maximum number of idle instance workers each process keeps in memory with their cached state, 0 to keep
+     * none. Each retained worker holds the execution state and the cached variables of its instance.
+     */
+    public int getWorkersRetained() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_WORKERS_RETAINED, "0"));
+    }
+
+    /**
+     * One instance execution in this many gets measured for the process metrics.
+     */
+    public int getMetricsSample() {
+        return Math.max(1, Integer.valueOf(getProperty(OdeConfigProperties.PROP_METRICS_SAMPLE, String.valueOf(DEFAULT_METRICS_SAMPLE))));
+    }
+
+    /**
+     * One JACOB cycle in this many gets timed for the VPU statistics.
+     */
+    public int getJacobTimingSample() {
+        return Math.max(1, Integer.valueOf(getProperty(OdeConfigProperties.PROP_JACOB_TIMING_SAMPLE, String.valueOf(DEFAULT_JACOB_TIMING_SAMPLE))));
+    }
 }
@@ -40,6 +40,7 @@ import org.apache.geronimo.transaction.manager.RecoverableTransactionManager;
 import org.apache.ode.bpel.dao.BpelDAOConnectionFactoryJDBC;
 import org.apache.ode.il.config.OdeConfigProperties;
 import org.apache.ode.utils.LoggingInterceptor;
+import org.apache.ode.utils.StorageEncoding;
 import org.tranql.connector.jdbc.JDBCDriverMCF;
 
 /**
@@ -269,6 +270,14 @@ public class Database {
             throw new DatabaseConfigException(errmsg, ex);
         }
 
+        try {
+            StorageEncoding.setDefault(StorageEncoding.parse(_odeConfig.getDaoStorageEncoding()));
+        } catch (IllegalArgumentException ex) {
+            throw new DatabaseConfigException(ex.getMessage(), ex);
+        }
+        if (StorageEncoding.getDefault() != StorageEncoding.TEXT)
+            __log.info("Persisting XML payloads with the " + StorageEncoding.getDefault() + " storage encoding.");
+
         cf.setDataSource(getDataSource());
         cf.setTransactionManager(_txm);
         cf.init(_odeConfig.getProperties());
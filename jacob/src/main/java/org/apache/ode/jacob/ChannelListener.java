@@ -22,6 +22,7 @@ import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -33,7 +34,8 @@ import org.apache.commons.logging.LogFactory;
 public abstract class ChannelListener<CT extends Channel> extends JacobObject {
     private static Log __log = LogFactory.getLog(ChannelListener.class);
 
-    private transient Set<Method> _implementedMethods;
+    /** Methods implemented by each listener class, resolved once rather than for every (deserialized) listener. */
+    private static final ConcurrentHashMap<Class, Set<Method>> __implementedMethods = new ConcurrentHashMap<Class, Set<Method>>();
 
     private transient CT _channel;
 
@@ -68,12 +70,14 @@ public abstract class ChannelListener<CT extends Channel> extends JacobObject {
     }
 
     public Set<Method> getImplementedMethods() {
-        if (_implementedMethods == null) {
-            Set<Method> implementedMethods = new HashSet<Method>();
+        Set<Method> implementedMethods = __implementedMethods.get(getClass());
+        if (implementedMethods == null) {
+            implementedMethods = new HashSet<Method>();
             getImplementedMethods(implementedMethods, getClass().getSuperclass());
-            _implementedMethods = Collections.unmodifiableSet(implementedMethods);
+            implementedMethods = Collections.unmodifiableSet(implementedMethods);
+            __implementedMethods.put(getClass(), implementedMethods);
         }
-        return _implementedMethods;
+        return implementedMethods;
     }
 
     private static Set<Method> getImplementedMethods(Set<Method> methods, Class clazz) {
@@ -36,6 +36,8 @@ import org.apache.ode.jacob.soup.ReplacementMap;
 import org.apache.ode.utils.CollectionUtils;
 import org.apache.ode.utils.ObjectPrinter;
 
+import java.io.BufferedInputStream;
+import java.io.DataOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -49,15 +51,21 @@ import java.io.PrintStream;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * A fast, in-memory {@link org.apache.ode.jacob.soup.ExecutionQueue} implementation.
@@ -71,6 +79,34 @@ public class ExecutionQueueImpl implements ExecutionQueue {
     private static ConcurrentHashMap<String, ObjectStreamClass> _classDescriptors
         = new ConcurrentHashMap<String, ObjectStreamClass>();
 
+    /** First two bytes of the compact format ("JQ"); GZIP streams of the serialized format start with 0x1f8b. */
+    private static final int COMPACT_MAGIC = 0x4A51;
+
+    /** Version of the compact format, written right after the magic. */
+    private static final int COMPACT_VERSION = 1;
+
+    private static final int TAG_END = 0;
+    private static final int TAG_REACTION = 1;
+    private static final int TAG_CHANNEL = 2;
+    private static final int TAG_LIVE_CHANNELS = 3;
+    private static final int TAG_GDATA = 4;
+
+    /**
+     * Encodings available to {@link #write(OutputStream)}. Reading always detects the encoding from the stream
+     * itself, so the format of a queue can be changed at any time without breaking already persisted state.
+     */
+    public enum StateFormat {
+        /** Java serialization of the channel and communication frames, GZIP compressed. */
+        SERIALIZED,
+
+        /**
+         * Versioned, tag-based encoding. The soup structure is written field by field, class and method names are
+         * interned once per stream and the result is deflated at the fastest compression level. Only closures,
+         * message arguments and the global data still go through object serialization.
+         */
+        COMPACT
+    }
+
     /**
      * Cached set of enqueued {@link Continuation} objects (i.e. those read using
      * {@link #enqueueReaction(org.apache.ode.jacob.soup.Continuation)}).
@@ -104,10 +140,24 @@ public class ExecutionQueueImpl implements ExecutionQueue {
 
     private Map<Object, LinkedList<IndexedObject>> _index = new HashMap<Object, LinkedList<IndexedObject>>();
 
+    private StateFormat _stateFormat = StateFormat.SERIALIZED;
+
     public ExecutionQueueImpl(ClassLoader classLoader) {
         _classLoader = classLoader;
     }
 
+    /**
+     * Set the encoding used by subsequent calls to {@link #write(OutputStream)}.
+     * @param stateFormat state encoding
+     */
+    public void setStateFormat(StateFormat stateFormat) {
+        _stateFormat = stateFormat == null ? StateFormat.SERIALIZED : stateFormat;
+    }
+
+    public StateFormat getStateFormat() {
+        return _stateFormat;
+    }
+
     public void setClassLoader(ClassLoader classLoader) {
         _classLoader = classLoader;
     }
@@ -241,6 +291,24 @@ public class ExecutionQueueImpl implements ExecutionQueue {
         return !_reactions.isEmpty();
     }
 
+    /**
+     * @return number of channels in the soup
+     */
+    public int getChannelCount() {
+        return _channels.size();
+    }
+
+    /**
+     * @return number of continuations in the soup, the ones in the run queue and the ones waiting for a
+     *         message on a channel
+     */
+    public int getContinuationCount() {
+        int count = _reactions.size();
+        for (ChannelFrame cframe : _channels.values())
+            count += cframe.objFrames.size();
+        return count;
+    }
+
     public void flush() {
         if (__log.isTraceEnabled()) {
             __log.trace(ObjectPrinter.stringifyMethodEnter("flush", CollectionUtils.EMPTY_OBJECT_ARRAY));
@@ -252,6 +320,19 @@ public class ExecutionQueueImpl implements ExecutionQueue {
         _reactions.clear();
         _index.clear();
 
+        // Sniff the format, streams written before the compact format existed are plain GZIP.
+        BufferedInputStream bis = new BufferedInputStream(iis);
+        bis.mark(2);
+        int magic = (bis.read() << 8) | bis.read();
+        bis.reset();
+        if (magic == COMPACT_MAGIC) {
+            readCompact(bis);
+        } else {
+            readSerialized(bis);
+        }
+    }
+
+    private void readSerialized(InputStream iis) throws IOException, ClassNotFoundException {
         ExecutionQueueInputStream sis = new ExecutionQueueInputStream(iis);
 
         _objIdCounter = sis.readInt();
@@ -299,9 +380,23 @@ public class ExecutionQueueImpl implements ExecutionQueue {
         vals.add(object);
     }
 
+    /**
+     * Writes the whole state, never only what changed since the last write. Closures waiting on different
+     * channels share mutable objects (a ScopeFrame and its compensations for instance), and serialization only
+     * keeps their shared identity within a single stream: channels written in separate delta records would be
+     * read back with diverging copies of those objects.
+     */
     public void write(OutputStream oos) throws IOException {
         flush();
 
+        if (_stateFormat == StateFormat.COMPACT) {
+            writeCompact(oos);
+        } else {
+            writeSerialized(oos);
+        }
+    }
+
+    private void writeSerialized(OutputStream oos) throws IOException {
         ExecutionQueueOutputStream sos = new ExecutionQueueOutputStream(oos);
 //        XQXMLOutputStream sos = createObjectOutputStream(new OutputStreamWriter(oos));
 
@@ -358,6 +453,176 @@ public class ExecutionQueueImpl implements ExecutionQueue {
         sos.close();
     }
 
+    /**
+     * Write the queue in the {@link StateFormat#COMPACT} format: a two byte magic and a version byte followed by a
+     * deflated stream of tagged records. Communication groups are written as integer identifiers (with the
+     * replicated flag following the first occurrence) instead of serialized object graphs.
+     */
+    private void writeCompact(OutputStream oos) throws IOException {
+        DataOutputStream header = new DataOutputStream(oos);
+        header.writeShort(COMPACT_MAGIC);
+        header.writeByte(COMPACT_VERSION);
+        header.flush();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            ExecutionQueueOutputStream sos = new ExecutionQueueOutputStream(new DeflaterOutputStream(oos, deflater),
+                    new HashMap<String, Integer>());
+            sos.writeInt(_objIdCounter);
+            sos.writeInt(_currentCycle);
+
+            for (Continuation c : _reactions) {
+                sos.writeByte(TAG_REACTION);
+                sos.writeObject(c.getClosure());
+                sos.writeName(c.getMethod().getName());
+                writeArgs(sos, c.getArgs());
+            }
+
+            Map<CommGroupFrame, Integer> groups = new IdentityHashMap<CommGroupFrame, Integer>();
+            for (ChannelFrame cframe : _channels.values()) {
+                sos.writeByte(TAG_CHANNEL);
+                sos.writeInt(cframe.id);
+                sos.writeName(cframe.type.getName());
+                sos.writeUTF(cframe.description == null ? "" : cframe.description);
+                sos.writeInt(cframe.refCount);
+                sos.writeBoolean(cframe.replicatedSend);
+                sos.writeBoolean(cframe.replicatedRecv);
+                sos.writeInt(cframe.objFrames.size());
+                for (ObjectFrame oframe : cframe.objFrames) {
+                    writeGroup(sos, groups, oframe.commGroupFrame);
+                    sos.writeObject(oframe._continuation);
+                }
+                sos.writeInt(cframe.msgFrames.size());
+                for (MessageFrame mframe : cframe.msgFrames) {
+                    writeGroup(sos, groups, mframe.commGroupFrame);
+                    sos.writeName(mframe.method);
+                    writeArgs(sos, mframe.args);
+                }
+            }
+
+            // Same garbage collection rule as the serialized format: keep channels that are referenced by a
+            // closure or message, or that have been exported.
+            Set referencedChannels = sos.getSerializedChannels();
+            for (Iterator<ChannelFrame> i = _channels.values().iterator(); i.hasNext();) {
+                ChannelFrame cframe = i.next();
+                if (!referencedChannels.contains(Integer.valueOf(cframe.id)) && cframe.refCount <= 0) {
+                    if (__log.isDebugEnabled())
+                        __log.debug("GC Channel: " + cframe);
+                    i.remove();
+                }
+            }
+            sos.writeByte(TAG_LIVE_CHANNELS);
+            sos.writeInt(_channels.size());
+            for (ChannelFrame cframe : _channels.values())
+                sos.writeInt(cframe.id);
+
+            sos.writeByte(TAG_GDATA);
+            sos.writeObject(_gdata);
+            sos.writeByte(TAG_END);
+            sos.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void readCompact(InputStream iis) throws IOException, ClassNotFoundException {
+        if (((iis.read() << 8) | iis.read()) != COMPACT_MAGIC)
+            throw new IOException("Not a compact execution queue stream.");
+        int version = iis.read();
+        if (version != COMPACT_VERSION)
+            throw new IOException("Unsupported compact execution queue version: " + version);
+
+        ExecutionQueueInputStream sis = new ExecutionQueueInputStream(new InflaterInputStream(iis),
+                new ArrayList<String>());
+        _objIdCounter = sis.readInt();
+        _currentCycle = sis.readInt();
+
+        Map<Integer, ChannelFrame> channels = new HashMap<Integer, ChannelFrame>();
+        List<CommGroupFrame> groups = new ArrayList<CommGroupFrame>();
+        int tag;
+        while ((tag = sis.readByte()) != TAG_END) {
+            switch (tag) {
+            case TAG_REACTION:
+                JacobObject closure = (JacobObject) sis.readObject();
+                Method method = closure.getMethod(sis.readName());
+                _reactions.add(new Continuation(closure, method, readArgs(sis)));
+                break;
+            case TAG_CHANNEL:
+                ChannelFrame cframe = new ChannelFrame();
+                cframe.id = sis.readInt();
+                cframe.type = Class.forName(sis.readName(), true, _classLoader);
+                cframe.description = sis.readUTF();
+                cframe.refCount = sis.readInt();
+                cframe.replicatedSend = sis.readBoolean();
+                cframe.replicatedRecv = sis.readBoolean();
+                int cnt = sis.readInt();
+                for (int i = 0; i < cnt; ++i) {
+                    CommGroupFrame group = readGroup(sis, groups);
+                    ObjectFrame oframe = new ObjectFrame(group, cframe, (ChannelListener) sis.readObject());
+                    group.commFrames.add(oframe);
+                    cframe.objFrames.add(oframe);
+                }
+                cnt = sis.readInt();
+                for (int i = 0; i < cnt; ++i) {
+                    CommGroupFrame group = readGroup(sis, groups);
+                    String methodName = sis.readName();
+                    MessageFrame mframe = new MessageFrame(group, cframe, methodName, readArgs(sis));
+                    group.commFrames.add(mframe);
+                    cframe.msgFrames.add(mframe);
+                }
+                channels.put(cframe.getId(), cframe);
+                break;
+            case TAG_LIVE_CHANNELS:
+                cnt = sis.readInt();
+                for (int i = 0; i < cnt; ++i) {
+                    Integer id = Integer.valueOf(sis.readInt());
+                    _channels.put(id, channels.get(id));
+                }
+                break;
+            case TAG_GDATA:
+                _gdata = (Serializable) sis.readObject();
+                break;
+            default:
+                throw new IOException("Unknown record tag " + tag + " in compact execution queue stream.");
+            }
+        }
+        sis.close();
+    }
+
+    private static void writeGroup(ExecutionQueueOutputStream sos, Map<CommGroupFrame, Integer> groups,
+                                   CommGroupFrame group) throws IOException {
+        Integer gid = groups.get(group);
+        if (gid == null) {
+            sos.writeInt(groups.size());
+            sos.writeBoolean(group.replicated);
+            groups.put(group, groups.size());
+        } else {
+            sos.writeInt(gid);
+        }
+    }
+
+    private static CommGroupFrame readGroup(ExecutionQueueInputStream sis, List<CommGroupFrame> groups)
+            throws IOException {
+        int gid = sis.readInt();
+        if (gid == groups.size()) {
+            groups.add(new CommGroupFrame(sis.readBoolean()));
+        }
+        return groups.get(gid);
+    }
+
+    private static void writeArgs(ObjectOutputStream sos, Object[] args) throws IOException {
+        sos.writeInt(args == null ? 0 : args.length);
+        for (int j = 0; args != null && j < args.length; ++j)
+            sos.writeObject(args[j]);
+    }
+
+    private static Object[] readArgs(ObjectInputStream sis) throws IOException, ClassNotFoundException {
+        Object[] args = new Object[sis.readInt()];
+        for (int j = 0; j < args.length; ++j)
+            args[j] = sis.readObject();
+        return args;
+    }
+
     public boolean isComplete() {
         // If we have more reactions we're not done.
         if (!_reactions.isEmpty()) {
@@ -655,8 +920,16 @@ public class ExecutionQueueImpl implements ExecutionQueue {
     private class ExecutionQueueOutputStream extends ObjectOutputStream {
         private Set<Object> _serializedChannels = new HashSet<Object>();
 
+        /** Interned names (compact format only), <code>null</code> when names are written in full. */
+        private Map<String, Integer> _names;
+
         public ExecutionQueueOutputStream(OutputStream outputStream) throws IOException {
-            super(new GZIPOutputStream(outputStream));
+            this(new GZIPOutputStream(outputStream), null);
+        }
+
+        ExecutionQueueOutputStream(OutputStream outputStream, Map<String, Integer> names) throws IOException {
+            super(outputStream);
+            _names = names;
             enableReplaceObject(true);
         }
 
@@ -664,10 +937,26 @@ public class ExecutionQueueImpl implements ExecutionQueue {
             return _serializedChannels;
         }
 
+        /**
+         * Write a class or method name, only the first occurrence of a name is written in full, later ones are
+         * written as the index of the first.
+         */
+        void writeName(String name) throws IOException {
+            Integer id = _names.get(name);
+            if (id == null) {
+                _names.put(name, _names.size());
+                writeInt(-1);
+                writeUTF(name);
+            } else {
+                writeInt(id);
+            }
+        }
+
         protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
             if (Serializable.class.isAssignableFrom(desc.forClass())) {
                 writeBoolean(true);
-                writeUTF(desc.getName());
+                if (_names == null) writeUTF(desc.getName());
+                else writeName(desc.getName());
             } else {
                 writeBoolean(false);
                 super.writeClassDescriptor(desc);
@@ -707,8 +996,16 @@ public class ExecutionQueueImpl implements ExecutionQueue {
     public class ExecutionQueueInputStream extends ObjectInputStream {
         private Set<CommChannel> _deserializedChannels = new HashSet<CommChannel>();
 
+        /** Interned names (compact format only), <code>null</code> when names are read in full. */
+        private List<String> _names;
+
         public ExecutionQueueInputStream(InputStream in) throws IOException {
-            super(new GZIPInputStream(in));
+            this(new GZIPInputStream(in), null);
+        }
+
+        ExecutionQueueInputStream(InputStream in, List<String> names) throws IOException {
+            super(in);
+            _names = names;
             enableResolveObject(true);
         }
 
@@ -716,6 +1013,16 @@ public class ExecutionQueueImpl implements ExecutionQueue {
             return _deserializedChannels;
         }
 
+        String readName() throws IOException {
+            int id = readInt();
+            if (id < 0) {
+                String name = readUTF();
+                _names.add(name);
+                return name;
+            }
+            return _names.get(id);
+        }
+
         protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
             return Class.forName(desc.getName(), true, _classLoader);
         }
@@ -723,7 +1030,7 @@ public class ExecutionQueueImpl implements ExecutionQueue {
         protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
             boolean ser = readBoolean();
             if (ser) {
-                String clsName = readUTF();
+                String clsName = _names == null ? readUTF() : readName();
                 ObjectStreamClass cached = _classDescriptors.get(clsName);
                 if (cached == null) {
                     String newClsName = clsName;
@@ -31,6 +31,7 @@ import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The JACOB Virtual Processing Unit ("VPU").
@@ -77,8 +78,23 @@ public final class JacobVPU {
 
     private int _cycle;
 
+    /**
+     * Only one cycle in this many is timed (and run times of the targets only recorded for those), reading the
+     * clock around every reduction costs more than most reductions themselves.
+     */
+    private static volatile int __timingSampleRate = 64;
+
+    /**
+     * Cycles run by all the VPUs, the sample is taken on it. A VPU only lives for one transaction of an instance,
+     * sampling on its own count would time the first cycle of every transaction.
+     */
+    private static final AtomicLong __cycles = new AtomicLong();
+
     private Statistics _statistics = new Statistics();
 
+    /** Whether the current cycle is being timed. */
+    private boolean _timed;
+
     /**
      * The fault "register" of the VPU .
      */
@@ -111,6 +127,15 @@ public final class JacobVPU {
         inject(concretion);
     }
 
+    /**
+     * Sets how often the cycles of all the VPUs get timed.
+     *
+     * @param sampleRate one cycle in this many is timed
+     */
+    public static void setTimingSampleRate(int sampleRate) {
+        __timingSampleRate = Math.max(1, sampleRate);
+    }
+
     /**
      * Execute one VPU cycle.
      *
@@ -134,7 +159,9 @@ public final class JacobVPU {
         Continuation rqe = _executionQueue.dequeueReaction();
         JacobThreadImpl jt = new JacobThreadImpl(rqe);
 
-        long ctime = System.currentTimeMillis();
+        _statistics.numCycles++;
+        _timed = __cycles.incrementAndGet() % __timingSampleRate == 0;
+        long ctime = _timed ? System.nanoTime() : 0;
         try {
             jt.run();
         } catch (RuntimeException re) {
@@ -142,10 +169,13 @@ public final class JacobVPU {
             throw re;
         }
 
-        long rtime = System.currentTimeMillis() - ctime;
-        ++_statistics.numCycles;
-        _statistics.totalRunTimeMs += rtime;
-        _statistics.incRunTime(jt._targetStr, rtime);
+        if (_timed) {
+            long rtime = (System.nanoTime() - ctime) / 1000;
+            ++_statistics.timedCycles;
+            _statistics.totalRunTimeUs += rtime;
+            _statistics.incRunTime(jt._targetStr, rtime);
+            _timed = false;
+        }
         return true;
     }
 
@@ -446,7 +476,7 @@ public final class JacobVPU {
                 synchChannel = null;
             }
             stackThread();
-            long ctime = System.currentTimeMillis();
+            long ctime = _timed ? System.nanoTime() : 0;
             try {
                 _method.invoke(_methodBody, args);
                 if (synchChannel != null) {
@@ -463,8 +493,7 @@ public final class JacobVPU {
                 __log.error(msg, e.getTargetException());
                 throw new RuntimeException(e.getTargetException());
             } finally {
-                ctime = System.currentTimeMillis() - ctime;
-                _statistics.totalClientTimeMs += ctime;
+                if (_timed) _statistics.totalClientTimeUs += (System.nanoTime() - ctime) / 1000;
                 unstackThread();
             }
         }
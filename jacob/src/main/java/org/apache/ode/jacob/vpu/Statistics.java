@@ -33,8 +33,11 @@ public class Statistics {
   /** Number of VPU cycles. */
   public long numCycles;
 
-  /** Total VPU run time (in ms). */
-  public long totalRunTimeMs;
+  /** Number of VPU cycles that were timed, only a sample of the cycles is. */
+  public long timedCycles;
+
+  /** Total VPU run time of the timed cycles (in microseconds). */
+  public long totalRunTimeUs;
 
   /** Number of channels created. */
   public long channelsCreated;
@@ -60,8 +63,8 @@ public class Statistics {
   /** Total number of structural reductions. */
   public long numReductionsStruct;
 
-  /** Total time spent in client code (in ms). */
-  public long totalClientTimeMs;
+  /** Total time spent in client code during the timed cycles (in microseconds). */
+  public long totalClientTimeUs;
 
   /**
    * Total time spent in each {@link org.apache.ode.jacob.JavaMethodBody} method.
@@ -73,8 +76,8 @@ public class Statistics {
    *
    * @return DOCUMENTME
    */
-  public double getAvgClientTimeMs() {
-    return (double)totalClientTimeMs / (double)numCycles;
+  public double getAvgClientTimeUs() {
+    return (double)totalClientTimeUs / (double)timedCycles;
   }
 
   /**
@@ -91,8 +94,8 @@ public class Statistics {
    *
    * @return DOCUMENTME
    */
-  public double getAvgKernelTimeMs() {
-    return (double)getKernelTimeMs() / (double)numCycles;
+  public double getAvgKernelTimeUs() {
+    return (double)getKernelTimeUs() / (double)timedCycles;
   }
 
   /**
@@ -100,8 +103,8 @@ public class Statistics {
    *
    * @return DOCUMENTME
    */
-  public double getAvgRunTimeMs() {
-    return (double)totalRunTimeMs / (double)numCycles;
+  public double getAvgRunTimeUs() {
+    return (double)totalRunTimeUs / (double)timedCycles;
   }
 
   /**
@@ -109,22 +112,22 @@ public class Statistics {
    *
    * @return DOCUMENTME
    */
-  public long getKernelTimeMs() {
-    return totalRunTimeMs - totalClientTimeMs;
+  public long getKernelTimeUs() {
+    return totalRunTimeUs - totalClientTimeUs;
   }
 
   /**
    * DOCUMENTME
    *
    * @param target DOCUMENTME
-   * @param runTimeMs DOCUMENTME
+   * @param runTimeUs DOCUMENTME
    */
-  public void incRunTime(String target, long runTimeMs) {
+  public void incRunTime(String target, long runTimeUs) {
     PerTargetStatistics pts = target(target);
     ++pts.invocations;
-    pts.totalRunTimeMs += runTimeMs;
-    pts.minRunTimeMs = Math.min(pts.minRunTimeMs, runTimeMs);
-    pts.maxRunTimeMs = Math.max(pts.maxRunTimeMs, runTimeMs);
+    pts.totalRunTimeUs += runTimeUs;
+    pts.minRunTimeUs = Math.min(pts.minRunTimeUs, runTimeUs);
+    pts.maxRunTimeUs = Math.max(pts.maxRunTimeUs, runTimeUs);
   }
 
   /**
@@ -179,18 +182,18 @@ public class Statistics {
 
   public static final class PerTargetStatistics {
     public long invocations;
-    public long totalRunTimeMs;
-    public long minRunTimeMs = Long.MAX_VALUE;
-    public long maxRunTimeMs = Long.MIN_VALUE;
+    public long totalRunTimeUs;
+    public long minRunTimeUs = Long.MAX_VALUE;
+    public long maxRunTimeUs = Long.MIN_VALUE;
 
     public double getAvgRunTimePerInvocation() {
-      return (double)totalRunTimeMs / (double)invocations;
+      return (double)totalRunTimeUs / (double)invocations;
     }
 
     public String toString() {
-      return "(n=" + invocations + ", total=" + totalRunTimeMs + "ms, avg="
-             + getAvgRunTimePerInvocation() + "ms, min=" + minRunTimeMs
-             + "ms, max=" + maxRunTimeMs + "ms)";
+      return "(n=" + invocations + ", total=" + totalRunTimeUs + "us, avg="
+             + getAvgRunTimePerInvocation() + "us, min=" + minRunTimeUs
+             + "us, max=" + maxRunTimeUs + "us)";
     }
   }
 }
@@ -25,6 +25,7 @@ import org.apache.ode.jacob.ValChannelListener;
 import org.apache.ode.jacob.vpu.ExecutionQueueImpl;
 import org.apache.ode.jacob.vpu.JacobVPU;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
@@ -53,6 +54,30 @@ public class JacobCellTest extends TestCase {
     assertEquals("foo", _val);
   }
 
+  /**
+   * Same as {@link #testJacobCell1()}, but the soup is dehydrated and rehydrated into a new queue on every
+   * cycle, alternating between the serialized and the compact state formats.
+   */
+  public void testJacobCell1Rehydrated() throws Exception {
+    _val = null;
+    ExecutionQueueImpl.StateFormat[] formats = ExecutionQueueImpl.StateFormat.values();
+    ExecutionQueueImpl fsoup = new ExecutionQueueImpl(getClass().getClassLoader());
+    JacobVPU vpu = new JacobVPU(fsoup, new CellTest1());
+
+    for (int cycle = 0; vpu.execute(); ++cycle) {
+      vpu.flush();
+      fsoup.setStateFormat(formats[cycle % formats.length]);
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      fsoup.write(bos);
+      System.err.println(fsoup.getStateFormat() + " CONTINUATION SIZE: " + bos.size());
+
+      fsoup = new ExecutionQueueImpl(getClass().getClassLoader());
+      fsoup.read(new ByteArrayInputStream(bos.toByteArray()));
+      vpu.setContext(fsoup);
+    }
+    assertEquals("foo", _val);
+  }
+
   static class CellTest1 extends JacobRunnable {
     public void run() {
       CellChannel cellChannel = newChannel(CellChannel.class, "cell");
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.jacob.vpu;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.apache.ode.jacob.JacobRunnable;
+import org.apache.ode.jacob.examples.eratosthenes.Sieve;
+
+/**
+ * Compares the {@link ExecutionQueueImpl.StateFormat}s on the soups of the example processes, stopped after a
+ * number of reductions the way an instance is when its quantum is exhausted: size of the persisted state and
+ * time taken to write and read it back. Not a unit test, run it with the test classpath:
+ * <pre>java org.apache.ode.jacob.vpu.ExecutionQueueBenchmark [iterations] [reductions...]</pre>
+ */
+public class ExecutionQueueBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int[] reductions = { 100, 1000, 10000 };
+        if (args.length > 1) {
+            reductions = new int[args.length - 1];
+            for (int i = 1; i < args.length; ++i) reductions[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        // the sieve prints the primes it finds
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        try {
+            for (int r : reductions) {
+                measure(out, "eratosthenes", iterations, r, new JacobVPUBenchmark.Workload() {
+                    public JacobRunnable create(int reductions) {
+                        return new Sieve();
+                    }
+                });
+                measure(out, "sequence    ", iterations, r, new JacobVPUBenchmark.Workload() {
+                    public JacobRunnable create(int reductions) {
+                        return new JacobVPUBenchmark.Steps(reductions, null);
+                    }
+                });
+                measure(out, "cell        ", iterations, r, new JacobVPUBenchmark.Workload() {
+                    public JacobRunnable create(int reductions) {
+                        return new JacobVPUBenchmark.CellReads(reductions);
+                    }
+                });
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void measure(PrintStream out, String name, int iterations, int reductions,
+                                JacobVPUBenchmark.Workload workload) throws Exception {
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(ExecutionQueueBenchmark.class.getClassLoader());
+        JacobVPU vpu = new JacobVPU(soup, workload.create(reductions));
+        int cycles = 0;
+        while (cycles < reductions && vpu.execute()) ++cycles;
+
+        for (ExecutionQueueImpl.StateFormat format : ExecutionQueueImpl.StateFormat.values()) {
+            soup.setStateFormat(format);
+            byte[] state = write(soup);
+            // warm up
+            for (int i = 0; i < iterations; ++i) read(write(soup));
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) write(soup);
+            long written = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) read(state);
+            long read = System.nanoTime() - start;
+
+            out.println(name + " after " + reductions + " reductions, " + format + ": " + state.length + " bytes, "
+                    + written / iterations / 1000 + "us write, " + read / iterations / 1000 + "us read");
+        }
+    }
+
+    private static byte[] write(ExecutionQueueImpl soup) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        soup.write(bos);
+        return bos.toByteArray();
+    }
+
+    private static void read(byte[] state) throws Exception {
+        new ExecutionQueueImpl(ExecutionQueueBenchmark.class.getClassLoader()).read(new ByteArrayInputStream(state));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.jacob.vpu;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.apache.ode.jacob.JacobRunnable;
+import org.apache.ode.jacob.SynchChannel;
+import org.apache.ode.jacob.ValChannel;
+import org.apache.ode.jacob.ValChannelListener;
+import org.apache.ode.jacob.examples.cell.CELL_;
+import org.apache.ode.jacob.examples.cell.CellChannel;
+import org.apache.ode.jacob.examples.eratosthenes.Sieve;
+import org.apache.ode.jacob.examples.sequence.Sequence;
+
+/**
+ * Measures the time taken by a reduction on the example processes: the sieve of Eratosthenes (channel
+ * listeners with arguments and synchronous replies), a sequence (mostly template reductions) and reads of a
+ * cell (a listener re-instantiating its template). Not a unit test, run it with the test classpath:
+ * <pre>java org.apache.ode.jacob.vpu.JacobVPUBenchmark [iterations] [reductions]</pre>
+ */
+public class JacobVPUBenchmark {
+
+    interface Workload {
+        JacobRunnable create(int reductions);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        final int reductions = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        // the sieve prints the primes it finds
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        try {
+            measure(out, "eratosthenes", iterations, reductions, new Workload() {
+                public JacobRunnable create(int reductions) {
+                    return new Sieve();
+                }
+            });
+        } finally {
+            System.setOut(out);
+        }
+        measure(out, "sequence    ", iterations, reductions, new Workload() {
+            public JacobRunnable create(int reductions) {
+                // two reductions per step
+                return new Steps(reductions / 2, null);
+            }
+        });
+        measure(out, "cell        ", iterations, reductions, new Workload() {
+            public JacobRunnable create(int reductions) {
+                return new CellReads(reductions / 4);
+            }
+        });
+    }
+
+    private static void measure(PrintStream out, String name, int iterations, int reductions, Workload workload) {
+        // warm up
+        run(workload, reductions);
+        run(workload, reductions);
+
+        long cycles = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) cycles += run(workload, reductions);
+        long elapsed = System.nanoTime() - start;
+
+        out.println(name + ": " + cycles / iterations + " reductions, " + elapsed / cycles + "ns per reduction");
+    }
+
+    private static int run(Workload workload, int reductions) {
+        JacobVPU vpu = new JacobVPU(new ExecutionQueueImpl(null), workload.create(reductions));
+        int cycles = 0;
+        while (cycles < reductions && vpu.execute()) ++cycles;
+        return cycles;
+    }
+
+    /**
+     * Sequence of steps replying right away.
+     */
+    static class Steps extends Sequence {
+        private static final long serialVersionUID = 1L;
+
+        Steps(int steps, SynchChannel done) {
+            super(steps, done);
+        }
+
+        protected JacobRunnable doStep(int step, final SynchChannel done) {
+            return new JacobRunnable() {
+                private static final long serialVersionUID = 1L;
+
+                public void run() {
+                    done.ret();
+                }
+            };
+        }
+    }
+
+    /**
+     * Sequence of reads of a cell.
+     */
+    static class CellReads extends JacobRunnable {
+        private static final long serialVersionUID = 1L;
+
+        private final int _reads;
+
+        CellReads(int reads) {
+            _reads = reads;
+        }
+
+        public void run() {
+            final CellChannel cell = newChannel(CellChannel.class);
+            instance(new CELL_<Integer>(cell, 42));
+            instance(new Sequence(_reads, null) {
+                private static final long serialVersionUID = 1L;
+
+                protected JacobRunnable doStep(int step, final SynchChannel done) {
+                    return new JacobRunnable() {
+                        private static final long serialVersionUID = 1L;
+
+                        public void run() {
+                            ValChannel val = newChannel(ValChannel.class);
+                            object(new ValChannelListener(val) {
+                                private static final long serialVersionUID = 1L;
+
+                                public void val(Object retVal) {
+                                    done.ret();
+                                }
+                            });
+                            cell.read(val);
+                        }
+                    };
+                }
+            });
+        }
+    }
+}
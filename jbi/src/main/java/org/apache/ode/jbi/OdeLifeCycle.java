@@ -45,6 +45,7 @@ import org.apache.ode.bpel.connector.BpelServerConnector;
 import org.apache.ode.bpel.dao.BpelDAOConnectionFactoryJDBC;
 import org.apache.ode.bpel.engine.BpelServerImpl;
 import org.apache.ode.bpel.engine.ProcessAndInstanceManagementMBean;
+import org.apache.ode.bpel.engine.ProcessMetricsManagement;
 import org.apache.ode.bpel.evtproc.DebugBpelEventListener;
 import org.apache.ode.bpel.iapi.BpelEventListener;
 import org.apache.ode.bpel.intercept.MessageExchangeInterceptor;
@@ -83,6 +84,8 @@ public class OdeLifeCycle implements ComponentLifeCycle {
     
     private ObjectName _mbeanName;
 
+    private ObjectName _metricsMBeanName;
+
     ServiceUnitManager getSUManager() {
         return _suManager;
     }
@@ -281,6 +284,7 @@ public class OdeLifeCycle implements ComponentLifeCycle {
 
     private void registerMBean() throws JBIException {
         ProcessAndInstanceManagementMBean pmapi = new ProcessAndInstanceManagementMBean(_ode._server,_ode._store);
+        ProcessMetricsManagement metrics = new ProcessMetricsManagement(_ode._server);
         MBeanServer server = _ode.getContext().getMBeanServer();
         try {
             if (server != null) {
@@ -289,6 +293,11 @@ public class OdeLifeCycle implements ComponentLifeCycle {
                     server.unregisterMBean(_mbeanName);
                 }
                 server.registerMBean(pmapi, _mbeanName);
+                _metricsMBeanName = _ode.getContext().getMBeanNames().createCustomComponentMBeanName("Metrics");
+                if (server.isRegistered(_metricsMBeanName)) {
+                    server.unregisterMBean(_metricsMBeanName);
+                }
+                server.registerMBean(metrics, _metricsMBeanName);
             }
         } catch (Exception e) {
             throw new JBIException(e);
@@ -303,6 +312,9 @@ public class OdeLifeCycle implements ComponentLifeCycle {
                 if (server.isRegistered(_mbeanName)) {
                     server.unregisterMBean(_mbeanName);
                 }
+                if (_metricsMBeanName != null && server.isRegistered(_metricsMBeanName)) {
+                    server.unregisterMBean(_metricsMBeanName);
+                }
             }
         } catch (Exception e) {
             throw new JBIException(e);
@@ -32,6 +32,7 @@ import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFactoryConfigurationException;
 
 import net.sf.saxon.om.NamespaceConstant;
 import net.sf.saxon.trans.DynamicError;
@@ -73,12 +74,37 @@ public class XPath20ExpressionRuntime implements ExpressionLanguageRuntime {
     /** Class-level logger. */
     private static final Log __log = LogFactory.getLog(XPath20ExpressionRuntime.class);
 
+    static {
+        System.setProperty("javax.xml.xpath.XPathFactory:"+NamespaceConstant.OBJECT_MODEL_SAXON,
+                "net.sf.saxon.xpath.XPathFactoryImpl");
+        // JAXP based XPath 1.0 runtime does not work anymore after a XPath 2.0 has been evaluated if this is set.
+        // System.setProperty("javax.xml.xpath.XPathFactory:"+XPathConstants.DOM_OBJECT_MODEL,
+        //        "net.sf.saxon.xpath.XPathFactoryImpl");
+        System.setProperty("javax.xml.xpath.XPathFactory:"+NamespaceConstant.OBJECT_MODEL_JDOM,
+                "net.sf.saxon.xpath.XPathFactoryImpl");
+        System.setProperty("javax.xml.xpath.XPathFactory:"+NamespaceConstant.OBJECT_MODEL_XOM,
+                "net.sf.saxon.xpath.XPathFactoryImpl");
+        System.setProperty("javax.xml.xpath.XPathFactory:"+NamespaceConstant.OBJECT_MODEL_DOM4J,
+                "net.sf.saxon.xpath.XPathFactoryImpl");
+    }
+
+    /**
+     * Saxon factory (and thus configuration) shared by all the expressions of the process model this runtime
+     * has been registered for.
+     */
+    private XPathFactory _xpf;
+
     public XPath20ExpressionRuntime(){
     }
 
     public void initialize(Map properties) throws ConfigurationException {
         TransformerFactory trsf = new net.sf.saxon.TransformerFactoryImpl();
         XslTransformHandler.getInstance().setTransformerFactory(trsf);
+        try {
+            _xpf = XPathFactory.newInstance(NamespaceConstant.OBJECT_MODEL_SAXON);
+        } catch (XPathFactoryConfigurationException e) {
+            throw new ConfigurationException("Saxon XPath factory unavailable", e);
+        }
     }
 
     /**
@@ -216,36 +242,21 @@ public class XPath20ExpressionRuntime implements ExpressionLanguageRuntime {
     private Object evaluate(OExpression cexp, EvaluationContext ctx, QName type) throws FaultException {
         try {
             OXPath20ExpressionBPEL20 oxpath20 = ((OXPath20ExpressionBPEL20) cexp);
-            System.setProperty("javax.xml.xpath.XPathFactory:"+NamespaceConstant.OBJECT_MODEL_SAXON,
-		            "net.sf.saxon.xpath.XPathFactoryImpl");
-            // JAXP based XPath 1.0 runtime does not work anymore after a XPath 2.0 has been evaluated if this is set.
-		    // System.setProperty("javax.xml.xpath.XPathFactory:"+XPathConstants.DOM_OBJECT_MODEL,
-		    //        "net.sf.saxon.xpath.XPathFactoryImpl");
-		    System.setProperty("javax.xml.xpath.XPathFactory:"+NamespaceConstant.OBJECT_MODEL_JDOM,
-		            "net.sf.saxon.xpath.XPathFactoryImpl");
-		    System.setProperty("javax.xml.xpath.XPathFactory:"+NamespaceConstant.OBJECT_MODEL_XOM,
-		            "net.sf.saxon.xpath.XPathFactoryImpl");
-		    System.setProperty("javax.xml.xpath.XPathFactory:"+NamespaceConstant.OBJECT_MODEL_DOM4J,
-		            "net.sf.saxon.xpath.XPathFactoryImpl");
-    
-            XPathFactory xpf = XPathFactory.newInstance(NamespaceConstant.OBJECT_MODEL_SAXON);
-            JaxpFunctionResolver funcResolver = new JaxpFunctionResolver(
-                    ctx, oxpath20);
-            JaxpVariableResolver varResolver = new JaxpVariableResolver(ctx, oxpath20, ((XPathFactoryImpl) xpf).getConfiguration());
-            xpf.setXPathFunctionResolver(funcResolver);
-            xpf.setXPathVariableResolver(varResolver);            
-            XPath xpe = xpf.newXPath();
-            xpe.setNamespaceContext(oxpath20.namespaceCtx);
-            XPathExpression expr = xpe.compile(((OXPath10Expression)cexp).xpath);
-            Node contextNode = ctx.getRootNode() == null ? DOMUtils.newDocument() : ctx.getRootNode();
-            Object evalResult = expr.evaluate(contextNode, type);
-            if (evalResult != null && __log.isDebugEnabled()) {
-                __log.debug("Expression " + cexp.toString() + " generated result " + evalResult
-                        + " - type=" + evalResult.getClass().getName());
-                if (ctx.getRootNode() != null)
-                    __log.debug("Was using context node " + DOMUtils.domToString(ctx.getRootNode()));
+            CompiledExpression compiled = getCompiledExpression(oxpath20);
+            EvaluationContext previous = compiled.ctx.bind(ctx);
+            try {
+                Node contextNode = ctx.getRootNode() == null ? DOMUtils.newDocument() : ctx.getRootNode();
+                Object evalResult = compiled.expr.evaluate(contextNode, type);
+                if (evalResult != null && __log.isDebugEnabled()) {
+                    __log.debug("Expression " + cexp.toString() + " generated result " + evalResult
+                            + " - type=" + evalResult.getClass().getName());
+                    if (ctx.getRootNode() != null)
+                        __log.debug("Was using context node " + DOMUtils.domToString(ctx.getRootNode()));
+                }
+                return evalResult;
+            } finally {
+                compiled.ctx.bind(previous);
             }
-            return evalResult;
         } catch (XPathExpressionException e) {
             // Extracting the real cause from all this wrapping isn't a simple task
             Throwable cause = e.getCause() != null ? e.getCause() : e;
@@ -266,4 +277,46 @@ public class XPath20ExpressionRuntime implements ExpressionLanguageRuntime {
         }
     }
 
+    /**
+     * Returns the compiled form of the expression, compiling it against this runtime's factory the first time
+     * it's evaluated. The function and variable resolvers are bound to a {@link BoundEvaluationContext} so the
+     * same compiled expression can be evaluated concurrently against different instances.
+     */
+    private CompiledExpression getCompiledExpression(OXPath20ExpressionBPEL20 oxpath20) throws XPathExpressionException {
+        CompiledExpression compiled = oxpath20.getRuntimeExpr();
+        if (compiled != null && compiled.owner == this) return compiled;
+
+        synchronized (_xpf) {
+            BoundEvaluationContext bound = new BoundEvaluationContext();
+            JaxpFunctionResolver funcResolver = new JaxpFunctionResolver(bound, oxpath20);
+            JaxpVariableResolver varResolver = new JaxpVariableResolver(bound, oxpath20,
+                    ((XPathFactoryImpl) _xpf).getConfiguration());
+            XPath xpe = _xpf.newXPath();
+            xpe.setXPathFunctionResolver(funcResolver);
+            xpe.setXPathVariableResolver(varResolver);
+            xpe.setNamespaceContext(oxpath20.namespaceCtx);
+            String xpath = ((OXPath10Expression)oxpath20).xpath;
+            if (__log.isDebugEnabled())
+                __log.debug("Compiling expression " + xpath);
+            compiled = new CompiledExpression(this, xpe.compile(xpath), bound);
+        }
+        oxpath20.setRuntimeExpr(compiled);
+        return compiled;
+    }
+
+    /**
+     * Compiled expression along with the context its resolvers read from and the runtime that compiled it.
+     */
+    static class CompiledExpression {
+        final XPath20ExpressionRuntime owner;
+        final XPathExpression expr;
+        final BoundEvaluationContext ctx;
+
+        CompiledExpression(XPath20ExpressionRuntime owner, XPathExpression expr, BoundEvaluationContext ctx) {
+            this.owner = owner;
+            this.expr = expr;
+            this.ctx = ctx;
+        }
+    }
+
 }
@@ -64,10 +64,12 @@ public class RuntimeInstanceImpl implements OdeInternalInstance, OdeRTInstance {
         _vpu.registerExtension(OdeRTInstanceContext.class, this);
         if (soup == null) {
             _soup = new ExecutionQueueImpl(getClass().getClassLoader());
-            _soup.setGlobalData(new OutstandingRequestManager());
         } else {
             _soup = soup;
         }
+        // The engine may hand us a fresh (but configured) queue for a new instance
+        if (_soup.getGlobalData() == null)
+            _soup.setGlobalData(new OutstandingRequestManager());
 
         _soup.setReplacementMap(_runtime._replacementMap);
         _vpu.setContext(_soup);
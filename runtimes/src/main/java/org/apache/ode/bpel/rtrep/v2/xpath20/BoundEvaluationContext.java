@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.rtrep.v2.xpath20;
+
+import java.net.URI;
+
+import javax.xml.namespace.QName;
+
+import org.apache.ode.bpel.common.FaultException;
+import org.apache.ode.bpel.rtrep.v2.EvaluationContext;
+import org.apache.ode.bpel.rtrep.v2.OExpression;
+import org.apache.ode.bpel.rtrep.v2.OLink;
+import org.apache.ode.bpel.rtrep.v2.OMessageVarType;
+import org.apache.ode.bpel.rtrep.v2.OProcess;
+import org.apache.ode.bpel.rtrep.v2.OScope;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * {@link EvaluationContext} delegating to the context bound to the current thread. Compiled expressions
+ * hold on to their variable and function resolvers, which are built against an instance of this class,
+ * so that a single compiled expression can be evaluated in many contexts (and threads).
+ */
+class BoundEvaluationContext implements EvaluationContext {
+
+    private final ThreadLocal<EvaluationContext> _current = new ThreadLocal<EvaluationContext>();
+
+    /**
+     * Bind a context to the current thread.
+     * @param ctx context to bind, or <code>null</code> to unbind
+     * @return the previously bound context, to restore once the evaluation is done
+     */
+    EvaluationContext bind(EvaluationContext ctx) {
+        EvaluationContext previous = _current.get();
+        if (ctx == null) _current.remove();
+        else _current.set(ctx);
+        return previous;
+    }
+
+    private EvaluationContext current() {
+        EvaluationContext ctx = _current.get();
+        if (ctx == null)
+            throw new IllegalStateException("No evaluation context bound to the current thread.");
+        return ctx;
+    }
+
+    public Node readVariable(OScope.Variable variable, OMessageVarType.Part part) throws FaultException {
+        return current().readVariable(variable, part);
+    }
+
+    public Node getPartData(Element message, OMessageVarType.Part part) throws FaultException {
+        return current().getPartData(message, part);
+    }
+
+    public String readMessageProperty(OScope.Variable variable, OProcess.OProperty property) throws FaultException {
+        return current().readMessageProperty(variable, property);
+    }
+
+    public boolean isLinkActive(OLink olink) throws FaultException {
+        return current().isLinkActive(olink);
+    }
+
+    public Node getRootNode() {
+        return current().getRootNode();
+    }
+
+    public Node evaluateQuery(Node root, OExpression expr) throws FaultException {
+        return current().evaluateQuery(root, expr);
+    }
+
+    public Long getProcessId() {
+        return current().getProcessId();
+    }
+
+    public boolean narrowTypes() {
+        return current().narrowTypes();
+    }
+
+    public URI getBaseResourceURI() {
+        return current().getBaseResourceURI();
+    }
+
+    public Node getPropertyValue(QName propertyName) {
+        return current().getPropertyValue(propertyName);
+    }
+}
@@ -34,6 +34,9 @@ public class OXPath20ExpressionBPEL20 extends OXPath10ExpressionBPEL20 {
 
     private Expression _compiledExpr;
 
+    /** Expression compiled by the runtime, kept across evaluations but never serialized. */
+    private transient volatile XPath20ExpressionRuntime.CompiledExpression _runtimeExpr;
+
     public OXPath20ExpressionBPEL20(OProcess owner, QName qname_getVariableData,
                                     QName qname_getVariableProperty, QName qname_getLinkStatus,
                                     QName qname_doXslTransform, boolean isJoinExpression) {
@@ -48,4 +51,12 @@ public class OXPath20ExpressionBPEL20 extends OXPath10ExpressionBPEL20 {
     public void setCompiledExpr(Expression compiledExpr) {
         _compiledExpr = compiledExpr;
     }
+
+    XPath20ExpressionRuntime.CompiledExpression getRuntimeExpr() {
+        return _runtimeExpr;
+    }
+
+    void setRuntimeExpr(XPath20ExpressionRuntime.CompiledExpression runtimeExpr) {
+        _runtimeExpr = runtimeExpr;
+    }
 }
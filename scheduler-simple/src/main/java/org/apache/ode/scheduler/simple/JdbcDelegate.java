@@ -65,13 +65,19 @@ public class JdbcDelegate implements DatabaseDelegate {
     private static final String SCHEDULE_IMMEDIATE = "select jobid, ts, transacted, scheduled, details from ODE_JOB "
             + "where nodeid = ? and scheduled = 0 and ts < ? order by ts";
 
-    private static final String UPDATE_SCHEDULED = "update ODE_JOB set scheduled = 1 where jobid in (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    /** Same as SCHEDULE_IMMEDIATE, rows already claimed by a concurrent dequeue are skipped instead of waited on. */
+    private static final String SCHEDULE_IMMEDIATE_SKIP_LOCKED = SCHEDULE_IMMEDIATE + " for update skip locked";
 
-    private static final int UPDATE_SCHEDULED_SLOTS = 10;
+    private static final String UPDATE_SCHEDULED = "update ODE_JOB set scheduled = 1 where jobid in ";
+
+    /** Maximum number of job ids in the in-list of a single UPDATE_SCHEDULED statement. */
+    private static final int UPDATE_SCHEDULED_SLOTS = 100;
 
     private DataSource _ds;
 
     private Dialect _dialect;
+
+    private boolean _skipLocked;
     
     public JdbcDelegate(DataSource ds) {
         _ds = ds;
@@ -160,7 +166,7 @@ public class JdbcDelegate implements DatabaseDelegate {
         PreparedStatement ps = null;
         try {
             con = getConnection();
-            ps = con.prepareStatement(SCHEDULE_IMMEDIATE);
+            ps = con.prepareStatement(_skipLocked ? SCHEDULE_IMMEDIATE_SKIP_LOCKED : SCHEDULE_IMMEDIATE);
             ps.setString(1, nodeId);
             ps.setLong(2, maxtime);
             ps.setMaxRows(maxjobs);
@@ -179,18 +185,20 @@ public class JdbcDelegate implements DatabaseDelegate {
             }
             rs.close();
             ps.close();
-            
+            ps = null;
+
             // mark jobs as scheduled, UPDATE_SCHEDULED_SLOTS at a time
-            int j = 0;
             int updateCount = 0;
-            ps = con.prepareStatement(UPDATE_SCHEDULED);
-            for (int updates = 1; updates <= (ret.size() / UPDATE_SCHEDULED_SLOTS) + 1; updates++) {
-                for (int i = 1; i <= UPDATE_SCHEDULED_SLOTS; i++) {
-                    ps.setString(i, j < ret.size() ? ret.get(j).jobId : "");
-                    j++;
+            for (int start = 0; start < ret.size(); start += UPDATE_SCHEDULED_SLOTS) {
+                int end = Math.min(start + UPDATE_SCHEDULED_SLOTS, ret.size());
+                // Full chunks all share the same statement, only the last one may need its own
+                if (ps == null || end - start < UPDATE_SCHEDULED_SLOTS) {
+                    close(ps);
+                    ps = con.prepareStatement(UPDATE_SCHEDULED + inList(end - start));
                 }
-                ps.execute();
-                updateCount += ps.getUpdateCount();
+                for (int i = start; i < end; i++)
+                    ps.setString(i - start + 1, ret.get(i).jobId);
+                updateCount += ps.executeUpdate();
             }
             if (updateCount != ret.size()) {
                 throw new DatabaseException(
@@ -250,6 +258,16 @@ public class JdbcDelegate implements DatabaseDelegate {
         }
     }
 
+    private static String inList(int size) {
+        StringBuilder buf = new StringBuilder(size * 3 + 2);
+        buf.append('(');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) buf.append(", ");
+            buf.append('?');
+        }
+        return buf.append(')').toString();
+    }
+
     private Connection getConnection() throws SQLException {
         return _ds.getConnection();
     }
@@ -306,19 +324,37 @@ public class JdbcDelegate implements DatabaseDelegate {
                     d = Dialect.MYSQL;
                 } else if (dbProductName.indexOf("Sybase") >= 0) {
                     d = Dialect.SYBASE;
+                } else if (dbProductName.indexOf("Oracle") >= 0) {
+                    d = Dialect.ORACLE;
+                } else if (dbProductName.indexOf("PostgreSQL") >= 0) {
+                    d = Dialect.POSTGRESQL;
                 }
+                _skipLocked = supportsSkipLocked(d, dbMajorVer, metaData.getDatabaseMinorVersion());
             }
         } catch (SQLException e) {
             __log.warn("Unable to determine database dialect", e);
         } finally {
             close(con);
         }
-        __log.info("Using database dialect: " + d);
+        __log.info("Using database dialect: " + d + (_skipLocked ? " (skip locked)" : ""));
         return d;
     }
 
+    /**
+     * Whether the database lets concurrent dequeues skip the rows another one has locked
+     * (<code>select ... for update skip locked</code>).
+     */
+    private static boolean supportsSkipLocked(Dialect d, int major, int minor) {
+        switch (d) {
+            case ORACLE: return major >= 11;
+            case POSTGRESQL: return major > 9 || (major == 9 && minor >= 5);
+            case MYSQL: return major >= 8;
+            default: return false;
+        }
+    }
+
     enum Dialect {
-        DB2, DERBY, FIREBIRD, HSQL, MYSQL, ORACLE, SQLSERVER, SYBASE, UNKNOWN 
+        DB2, DERBY, FIREBIRD, HSQL, MYSQL, ORACLE, POSTGRESQL, SQLSERVER, SYBASE, UNKNOWN 
     }
     
 }
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ode.scheduler.simple;
+
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Runs tasks on an executor while keeping the tasks sharing a key in submission order. Tasks with different
+ * keys run in parallel; tasks with the same key are chained, the next one being handed to the executor when
+ * the previous one completes, so no executor thread ever waits on a sibling.
+ */
+class OrderedDispatcher {
+
+    private static final Log __log = LogFactory.getLog(OrderedDispatcher.class);
+
+    private final Executor _executor;
+
+    /** Chains of tasks waiting for their key to be free, an entry only exists while its key is busy. */
+    private final ConcurrentHashMap<Object, KeyChain> _chains = new ConcurrentHashMap<Object, KeyChain>();
+
+    private final AtomicInteger _queueDepth = new AtomicInteger();
+
+    private final AtomicLong _dispatched = new AtomicLong();
+
+    private final AtomicLong _totalWait = new AtomicLong();
+
+    private final AtomicLong _maxWait = new AtomicLong();
+
+    /** Notified when the last chain completes. */
+    private final Object _idle = new Object();
+
+    OrderedDispatcher(Executor executor) {
+        _executor = executor;
+    }
+
+    /**
+     * Run a task once all the tasks previously dispatched with the same key have completed.
+     */
+    void dispatch(Object key, Runnable task) {
+        QueuedTask queued = new QueuedTask(task);
+        _queueDepth.incrementAndGet();
+        while (true) {
+            KeyChain chain = _chains.get(key);
+            if (chain == null) {
+                chain = new KeyChain(key);
+                KeyChain existing = _chains.putIfAbsent(key, chain);
+                if (existing != null) chain = existing;
+            }
+            if (chain.offer(queued)) return;
+            // The chain just completed and has been removed, try again with a new one
+        }
+    }
+
+    /**
+     * Wait until all the tasks dispatched have completed, including the ones dispatched while waiting.
+     */
+    void awaitIdle() throws InterruptedException {
+        synchronized (_idle) {
+            while (!_chains.isEmpty()) _idle.wait();
+        }
+    }
+
+    /** Number of tasks dispatched but not started yet. */
+    int getQueueDepth() {
+        return _queueDepth.get();
+    }
+
+    /** Number of keys having tasks running or waiting. */
+    int getActiveKeys() {
+        return _chains.size();
+    }
+
+    long getDispatchedCount() {
+        return _dispatched.get();
+    }
+
+    /** Average time between the dispatch of a task and its start, in ms. */
+    long getAverageWaitTime() {
+        long dispatched = _dispatched.get();
+        return dispatched == 0 ? 0 : _totalWait.get() / dispatched;
+    }
+
+    /** Longest time between the dispatch of a task and its start, in ms. */
+    long getMaxWaitTime() {
+        return _maxWait.get();
+    }
+
+    private void started(QueuedTask queued) {
+        long wait = System.currentTimeMillis() - queued.queuedAt;
+        _queueDepth.decrementAndGet();
+        _dispatched.incrementAndGet();
+        _totalWait.addAndGet(wait);
+        long max;
+        while (wait > (max = _maxWait.get()) && !_maxWait.compareAndSet(max, wait));
+    }
+
+    private void chainCompleted() {
+        if (_chains.isEmpty()) {
+            synchronized (_idle) {
+                _idle.notifyAll();
+            }
+        }
+    }
+
+    private static class QueuedTask {
+        final Runnable task;
+        final long queuedAt = System.currentTimeMillis();
+
+        QueuedTask(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * Tasks of a key. At most one of them is on the executor at any time, it submits the next one when done.
+     */
+    private class KeyChain implements Runnable {
+        final Object key;
+        final LinkedList<QueuedTask> tasks = new LinkedList<QueuedTask>();
+        boolean running;
+        boolean completed;
+
+        KeyChain(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * @return false if the chain has completed and can't take new tasks anymore
+         */
+        boolean offer(QueuedTask queued) {
+            synchronized (this) {
+                if (completed) return false;
+                tasks.add(queued);
+                if (running) return true;
+                running = true;
+            }
+            submit();
+            return true;
+        }
+
+        public void run() {
+            QueuedTask queued;
+            synchronized (this) {
+                queued = tasks.removeFirst();
+            }
+            started(queued);
+            try {
+                queued.task.run();
+            } catch (Throwable t) {
+                __log.error("Error running task for " + key, t);
+            } finally {
+                boolean more;
+                synchronized (this) {
+                    more = !tasks.isEmpty();
+                    if (!more) {
+                        running = false;
+                        completed = true;
+                        _chains.remove(key, this);
+                    }
+                }
+                if (more) submit();
+                else chainCompleted();
+            }
+        }
+
+        private void submit() {
+            try {
+                _executor.execute(this);
+            } catch (RuntimeException re) {
+                // Executor refused the task (most likely shut down), the chain and its tasks are dropped
+                synchronized (this) {
+                    _queueDepth.addAndGet(-tasks.size());
+                    tasks.clear();
+                    running = false;
+                    completed = true;
+                    _chains.remove(key, this);
+                }
+                chainCompleted();
+                throw re;
+            }
+        }
+    }
+}
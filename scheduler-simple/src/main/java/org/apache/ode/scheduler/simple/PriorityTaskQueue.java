@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ode.scheduler.simple;
+
+import java.util.concurrent.PriorityBlockingQueue;
+
+import org.apache.ode.utils.stl.CollectionsX;
+import org.apache.ode.utils.stl.MemberOfFunction;
+
+/**
+ * Default {@link TaskQueue}, a plain priority queue. Removing a task is linear in the size of the queue.
+ */
+class PriorityTaskQueue implements TaskQueue {
+
+    private static final int TODO_QUEUE_INITIAL_CAPACITY = 200;
+
+    private PriorityBlockingQueue<Task> _todo = new PriorityBlockingQueue<Task>(TODO_QUEUE_INITIAL_CAPACITY,
+            new JobComparatorByDate());
+
+    public void add(Task task) {
+        _todo.add(task);
+    }
+
+    public boolean remove(Task task) {
+        return _todo.remove(task);
+    }
+
+    public Task peek() {
+        return _todo.peek();
+    }
+
+    public Task poll() {
+        return _todo.poll();
+    }
+
+    public int size() {
+        return _todo.size();
+    }
+
+    public void clear(final Class<? extends Task> tasktype) {
+        CollectionsX.remove_if(_todo, new MemberOfFunction<Task>() {
+            @Override
+            public boolean isMember(Task o) {
+                return tasktype.isAssignableFrom(o.getClass());
+            }
+
+        });
+    }
+}
@@ -19,15 +19,12 @@
 
 package org.apache.ode.scheduler.simple;
 
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.ode.utils.stl.CollectionsX;
-import org.apache.ode.utils.stl.MemberOfFunction;
 
 /**
  * Implements the "todo" queue and prioritized scheduling mechanism. 
@@ -40,10 +37,8 @@ class SchedulerThread implements Runnable {
 
     private static final Log __log = LogFactory.getLog(SchedulerThread.class);
 
-    private static final int TODO_QUEUE_INITIAL_CAPACITY = 200;
-
     /** Jobs ready for immediate execution. */
-    private PriorityBlockingQueue<Task> _todo;
+    private TaskQueue _todo;
 
     /** Lock for managing the queue */
     private ReentrantLock _lock = new ReentrantLock();
@@ -57,8 +52,11 @@ class SchedulerThread implements Runnable {
     private Thread _thread;
 
     SchedulerThread(TaskRunner runner) {
-        _todo = new PriorityBlockingQueue<Task>(TODO_QUEUE_INITIAL_CAPACITY,
-                new JobComparatorByDate());
+        this(runner, new PriorityTaskQueue());
+    }
+
+    SchedulerThread(TaskRunner runner, TaskQueue todo) {
+        _todo = todo;
         _taskrunner = runner;
     }
 
@@ -149,7 +147,7 @@ class SchedulerThread implements Runnable {
                     _activity.await(nextjob, TimeUnit.MILLISECONDS);
 
                 if (!_done && nextjob == 0) {
-                    Task task = _todo.take();
+                    Task task = _todo.poll();
                     _taskrunner.runTask(task);
 
                 }
@@ -184,13 +182,7 @@ class SchedulerThread implements Runnable {
     public void clearTasks(final Class<? extends Task> tasktype) {
         _lock.lock();
         try {
-            CollectionsX.remove_if(_todo, new MemberOfFunction<Task>() {
-                @Override
-                public boolean isMember(Task o) {
-                    return tasktype.isAssignableFrom(o.getClass());
-                }
-
-            });
+            _todo.clear(tasktype);
         } finally {
             _lock.unlock();
         }
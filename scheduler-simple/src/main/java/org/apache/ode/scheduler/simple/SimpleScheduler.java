@@ -23,6 +23,9 @@ import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.Status;
@@ -74,14 +77,23 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
 
     String _nodeId;
 
-    /** Maximum number of jobs in the "near future" / todo queue. */
+    /** Maximum number of jobs in the "near future" / todo queue, including the due jobs waiting for a dispatch thread. */
     int _todoLimit = 10000;
 
+    /** Maximum number of jobs loaded from the database in a single transaction. */
+    int _loadBatchSize = 100;
+
     /** The object that actually handles the jobs. */
     volatile JobProcessor _jobProcessor;
 
     private SchedulerThread _todo;
 
+    /** Runs the jobs off the scheduler thread, null when jobs run in the scheduler thread itself. */
+    private volatile OrderedDispatcher _dispatcher;
+
+    /** Executor running the jobs when ode.scheduler.dispatchThreads is set, shut down with the scheduler. */
+    private ExecutorService _dispatchExec;
+
     private DatabaseDelegate _db;
 
     /** All the nodes we know about */
@@ -104,7 +116,35 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         _nodeId = nodeId;
         _db = del;
         _todoLimit = Integer.parseInt(conf.getProperty("ode.scheduler.queueLength", "10000"));
-        _todo = new SchedulerThread(this);
+        _loadBatchSize = Integer.parseInt(conf.getProperty("ode.scheduler.loadBatchSize", "100"));
+        _todo = new SchedulerThread(this, createTaskQueue(conf));
+
+        int dispatchThreads = Integer.parseInt(conf.getProperty("ode.scheduler.dispatchThreads", "0"));
+        if (dispatchThreads > 0) {
+            _dispatchExec = Executors.newFixedThreadPool(dispatchThreads, new ThreadFactory() {
+                int threadNumber = 0;
+                public synchronized Thread newThread(Runnable r) {
+                    threadNumber += 1;
+                    Thread t = new Thread(r, "OdeSchedulerDispatch-" + threadNumber);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            _dispatcher = new OrderedDispatcher(_dispatchExec);
+        }
+    }
+
+    private static TaskQueue createTaskQueue(Properties conf) {
+        String queue = conf.getProperty("ode.scheduler.queue", "priority");
+        if ("wheel".equalsIgnoreCase(queue)) {
+            long tick = Long.parseLong(conf.getProperty("ode.scheduler.wheel.tick", "100"));
+            int size = Integer.parseInt(conf.getProperty("ode.scheduler.wheel.size", "1024"));
+            __log.info("Using a timing wheel scheduler queue, tick=" + tick + "ms size=" + size);
+            return new TimingWheelTaskQueue(tick, size);
+        }
+        if (!"priority".equalsIgnoreCase(queue))
+            __log.warn("Unknown scheduler queue " + queue + ", using the priority queue.");
+        return new PriorityTaskQueue();
     }
 
     public void setNodeId(String nodeId) {
@@ -131,6 +171,21 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         _db = dbd;
     }
 
+    /** Number of due jobs waiting for a dispatch thread, or for a previous job of their instance to complete. */
+    public int getDispatchQueueDepth() {
+        return _dispatcher == null ? 0 : _dispatcher.getQueueDepth();
+    }
+
+    /** Average delay between a job coming due and starting to run on a dispatch thread, in ms. */
+    public long getDispatchAverageWaitTime() {
+        return _dispatcher == null ? 0 : _dispatcher.getAverageWaitTime();
+    }
+
+    /** Longest delay between a job coming due and starting to run on a dispatch thread, in ms. */
+    public long getDispatchMaxWaitTime() {
+        return _dispatcher == null ? 0 : _dispatcher.getMaxWaitTime();
+    }
+
     public void cancelJob(String jobId) throws ContextException {
         _todo.dequeue(new Job(0, jobId, false, null));
         try {
@@ -183,7 +238,7 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         try {
             if (immediate) {
                 // If we have too many jobs in the queue, we don't allow any new ones
-                if (_todo.size() > _todoLimit) {
+                if (_todo.size() + getDispatchQueueDepth() > _todoLimit) {
                     __log.error("The execution queue is backed up, the engine can't keep up with the load. Either " +
                             "increase the queue size or regulate the flow.");
                     return null;
@@ -229,6 +284,11 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         _jobProcessor = null;
         _txm = null;
         _todo = null;
+        _dispatcher = null;
+        if (_dispatchExec != null) {
+            _dispatchExec.shutdown();
+            _dispatchExec = null;
+        }
     }
 
     public synchronized void start() {
@@ -277,6 +337,16 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
             return;
 
         _todo.stop();
+        // Jobs already handed to the dispatch threads complete before the scheduler is considered stopped
+        OrderedDispatcher dispatcher = _dispatcher;
+        if (dispatcher != null) {
+            try {
+                dispatcher.awaitIdle();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                __log.warn("Interrupted while waiting for the dispatched jobs to complete.");
+            }
+        }
         _todo.clearTasks(UpgradeJobsTask.class);
         _todo.clearTasks(LoadImmediateTask.class);
         _todo.clearTasks(CheckStaleNodes.class);
@@ -366,8 +436,21 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
     }
 
     public void runTask(Task task) {
-        if (task instanceof Job)
-            runJob((Job) task);
+        if (task instanceof Job) {
+            final Job job = (Job) task;
+            OrderedDispatcher dispatcher = _dispatcher;
+            if (dispatcher == null) {
+                runJob(job);
+            } else {
+                // Jobs of a same instance are kept in order, others run in parallel
+                Object iid = job.detail == null ? null : job.detail.get("iid");
+                dispatcher.dispatch(iid != null ? iid : job.jobId, new Runnable() {
+                    public void run() {
+                        runJob(job);
+                    }
+                });
+            }
+        }
         if (task instanceof SchedulerTask)
             ((SchedulerTask) task).run();
     }
@@ -390,7 +473,7 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
             do {
                 jobs = execTransaction(new Callable<List<Job>>() {
                     public List<Job> call() throws Exception {
-                        return _db.dequeueImmediate(_nodeId, System.currentTimeMillis() + _immediateInterval, 10);
+                        return _db.dequeueImmediate(_nodeId, System.currentTimeMillis() + _immediateInterval, _loadBatchSize);
                     }
                 });
                 for (Job j : jobs) {
@@ -399,7 +482,7 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
 
                     _todo.enqueue(j);
                 }
-            } while (jobs.size() == 10);
+            } while (jobs.size() == _loadBatchSize);
             return true;
         } catch (Exception ex) {
             __log.error("Error loading immediate jobs from database.", ex);
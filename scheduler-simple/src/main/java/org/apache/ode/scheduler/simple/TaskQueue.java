@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ode.scheduler.simple;
+
+/**
+ * Pending tasks of the {@link SchedulerThread}, ordered by scheduled date. Implementations don't need to be
+ * thread-safe except for {@link #size()}, the scheduler thread guards all other accesses with its lock.
+ */
+interface TaskQueue {
+
+    void add(Task task);
+
+    /**
+     * Remove a task from the queue.
+     * @return true if the task was in the queue
+     */
+    boolean remove(Task task);
+
+    /**
+     * @return the task with the earliest scheduled date, null if the queue is empty
+     */
+    Task peek();
+
+    /**
+     * Remove and return the task with the earliest scheduled date.
+     * @return the task, null if the queue is empty
+     */
+    Task poll();
+
+    int size();
+
+    /**
+     * Remove the tasks of a given type from the queue.
+     * @param tasktype type of task
+     */
+    void clear(Class<? extends Task> tasktype);
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ode.scheduler.simple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.PriorityQueue;
+
+/**
+ * {@link TaskQueue} keeping the tasks in a hashed timing wheel: an array of slots, each one holding the tasks
+ * scheduled within a tick. Adding and removing a task are constant time. As time passes, the slots that are due
+ * are moved to a small priority queue so that tasks still come out ordered by date. Tasks too far in the future
+ * for the wheel wait in an overflow queue until the wheel catches up with them.
+ * <p>
+ * Only worth it when many jobs get cancelled: adding and polling cost a few times more than with the
+ * {@link PriorityTaskQueue}, whose removals are linear (see TaskQueueBenchmark in the tests).
+ * </p>
+ */
+class TimingWheelTaskQueue implements TaskQueue {
+
+    private static final Comparator<Entry> COMPARATOR = new Comparator<Entry>() {
+        public int compare(Entry o1, Entry o2) {
+            long diff = o1.task.schedDate - o2.task.schedDate;
+            if (diff < 0) return -1;
+            if (diff > 0) return 1;
+            return 0;
+        }
+    };
+
+    /** Duration of a tick, in ms. */
+    private final long _tick;
+
+    private final LinkedHashSet<Entry>[] _wheel;
+
+    /** First tick still in the wheel, the tasks of all the previous ones have been moved to _ready. */
+    private long _currentTick;
+
+    /** Number of tasks in the wheel slots. */
+    private int _inWheel;
+
+    /** No slot before this tick holds a task, where the search for the earliest task in the wheel starts. */
+    private long _firstTick = Long.MAX_VALUE;
+
+    /** Earliest task in the wheel found by the last search, null when it has to be searched again. */
+    private Entry _earliest;
+
+    /** Tasks that are due or about to be. */
+    private final PriorityQueue<Entry> _ready = new PriorityQueue<Entry>(64, COMPARATOR);
+
+    /** Tasks beyond the last tick of the wheel. */
+    private final PriorityQueue<Entry> _overflow = new PriorityQueue<Entry>(64, COMPARATOR);
+
+    private final HashMap<Task, Entry> _index = new HashMap<Task, Entry>();
+
+    private volatile int _size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheelTaskQueue(long tick, int wheelSize) {
+        if (tick <= 0 || wheelSize <= 0)
+            throw new IllegalArgumentException("Invalid timing wheel, tick=" + tick + " size=" + wheelSize);
+        _tick = tick;
+        _wheel = new LinkedHashSet[wheelSize];
+        for (int i = 0; i < wheelSize; i++)
+            _wheel[i] = new LinkedHashSet<Entry>();
+        _currentTick = System.currentTimeMillis() / _tick;
+    }
+
+    public void add(Task task) {
+        Entry entry = new Entry(task);
+        _index.put(task, entry);
+        place(entry);
+        _size++;
+    }
+
+    public boolean remove(Task task) {
+        Entry entry = _index.remove(task);
+        if (entry == null) return false;
+        cancel(entry);
+        return true;
+    }
+
+    public Task peek() {
+        Entry entry = first();
+        return entry == null ? null : entry.task;
+    }
+
+    public Task poll() {
+        Entry entry = first();
+        if (entry == null) return null;
+
+        if (entry.slot != null) removeFromSlot(entry);
+        else if (entry == _ready.peek()) _ready.poll();
+        else _overflow.poll();
+
+        if (_index.get(entry.task) == entry) _index.remove(entry.task);
+        _size--;
+        return entry.task;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public void clear(Class<? extends Task> tasktype) {
+        for (Entry entry : new ArrayList<Entry>(_index.values())) {
+            if (tasktype.isAssignableFrom(entry.task.getClass())) {
+                _index.remove(entry.task);
+                cancel(entry);
+            }
+        }
+    }
+
+    private void place(Entry entry) {
+        long tick = entry.task.schedDate / _tick;
+        if (tick < _currentTick) {
+            entry.slot = null;
+            _ready.add(entry);
+        } else if (tick < _currentTick + _wheel.length) {
+            entry.slot = _wheel[(int) (tick % _wheel.length)];
+            entry.slot.add(entry);
+            _inWheel++;
+            if (tick < _firstTick) _firstTick = tick;
+            if (_earliest != null && COMPARATOR.compare(entry, _earliest) < 0) _earliest = entry;
+        } else {
+            entry.slot = null;
+            _overflow.add(entry);
+        }
+    }
+
+    private void cancel(Entry entry) {
+        // Entries in the priority queues are dropped when they reach the head
+        if (entry.slot != null) removeFromSlot(entry);
+        else entry.cancelled = true;
+        _size--;
+    }
+
+    private void removeFromSlot(Entry entry) {
+        entry.slot.remove(entry);
+        entry.slot = null;
+        _inWheel--;
+        if (entry == _earliest) _earliest = null;
+    }
+
+    /**
+     * Move the slots up to the current time to the ready queue and refill the wheel from the overflow.
+     */
+    private void advance(long now) {
+        long nowTick = now / _tick;
+        if (nowTick < _currentTick) return;
+
+        long steps = Math.min(nowTick - _currentTick + 1, _wheel.length);
+        for (long t = _currentTick; t < _currentTick + steps; t++) {
+            LinkedHashSet<Entry> slot = _wheel[(int) (t % _wheel.length)];
+            for (Entry entry : slot) {
+                entry.slot = null;
+                _ready.add(entry);
+            }
+            _inWheel -= slot.size();
+            if (_earliest != null && _earliest.slot == null) _earliest = null;
+            slot.clear();
+        }
+        _currentTick = nowTick + 1;
+
+        Entry entry;
+        while ((entry = _overflow.peek()) != null && entry.task.schedDate / _tick < _currentTick + _wheel.length) {
+            _overflow.poll();
+            if (!entry.cancelled) place(entry);
+        }
+    }
+
+    private Entry first() {
+        advance(System.currentTimeMillis());
+
+        Entry entry;
+        while ((entry = _ready.peek()) != null && entry.cancelled) _ready.poll();
+        if (entry != null) return entry;
+
+        // Nothing due yet, the earliest task is in the first non-empty slot. The result is kept and the next
+        // search resumes where this one stopped, so peeking while nothing is due doesn't go through the wheel.
+        if (_inWheel > 0 && _earliest == null) {
+            for (long t = Math.max(_firstTick, _currentTick); t < _currentTick + _wheel.length; t++) {
+                LinkedHashSet<Entry> slot = _wheel[(int) (t % _wheel.length)];
+                if (!slot.isEmpty()) {
+                    _firstTick = t;
+                    _earliest = Collections.min(slot, COMPARATOR);
+                    break;
+                }
+            }
+        }
+        if (_earliest != null) return _earliest;
+
+        while ((entry = _overflow.peek()) != null && entry.cancelled) _overflow.poll();
+        return entry;
+    }
+
+    private static class Entry {
+        final Task task;
+        /** Wheel slot holding the entry, null when it's in one of the priority queues. */
+        LinkedHashSet<Entry> slot;
+        boolean cancelled;
+
+        Entry(Task task) {
+            this.task = task;
+        }
+    }
+}
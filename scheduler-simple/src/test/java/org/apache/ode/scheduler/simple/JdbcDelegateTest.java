@@ -109,6 +109,19 @@ public class JdbcDelegateTest extends TestCase {
         assertEquals("j2",jobs.get(0).jobId);
     }
 
+    public void testScheduleImmediateLargeBatch() throws Exception {
+        for (int i = 0; i < 250; ++i)
+            _del.insertJob(new Job(i, "j" + i, true, new HashMap<String, Object>()), "n1", false);
+
+        List<Job> jobs = _del.dequeueImmediate("n1", 1000L, 230);
+        assertEquals(230, jobs.size());
+        assertEquals("j0", jobs.get(0).jobId);
+        // Jobs already dequeued have been marked as scheduled
+        jobs = _del.dequeueImmediate("n1", 1000L, 1000);
+        assertEquals(20, jobs.size());
+        assertEquals(0, _del.dequeueImmediate("n1", 1000L, 1000).size());
+    }
+
     public void testScheduleImmediateNodeFilter() throws Exception {
         _del.insertJob(new Job(100L,"j1",true,new HashMap<String, Object>()), "n1", false);
         _del.insertJob(new Job(200L,"j2",true,new HashMap<String, Object>()), "n2", false);
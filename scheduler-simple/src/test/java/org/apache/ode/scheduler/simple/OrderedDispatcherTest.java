@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ode.scheduler.simple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Test of the per-key ordered dispatch of jobs.
+ */
+public class OrderedDispatcherTest extends TestCase {
+
+    private ExecutorService _exec;
+    private OrderedDispatcher _dispatcher;
+
+    public void setUp() throws Exception {
+        _exec = Executors.newFixedThreadPool(8);
+        _dispatcher = new OrderedDispatcher(_exec);
+    }
+
+    public void tearDown() throws Exception {
+        _exec.shutdownNow();
+    }
+
+    public void testOrderPerKey() throws Exception {
+        final int keys = 10, tasks = 200;
+        final List<List<Integer>> results = new ArrayList<List<Integer>>();
+        final CountDownLatch done = new CountDownLatch(keys * tasks);
+        for (int k = 0; k < keys; k++)
+            results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+
+        for (int i = 0; i < tasks; i++) {
+            for (int k = 0; k < keys; k++) {
+                final List<Integer> result = results.get(k);
+                final int n = i;
+                _dispatcher.dispatch(k, new Runnable() {
+                    public void run() {
+                        result.add(n);
+                        done.countDown();
+                    }
+                });
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (List<Integer> result : results) {
+            assertEquals(tasks, result.size());
+            for (int i = 0; i < tasks; i++)
+                assertEquals(i, result.get(i).intValue());
+        }
+        assertEquals(keys * tasks, _dispatcher.getDispatchedCount());
+        assertEquals(0, _dispatcher.getQueueDepth());
+    }
+
+    public void testKeysRunInParallel() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch other = new CountDownLatch(1);
+        _dispatcher.dispatch("a", new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    blocked.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // done
+                }
+            }
+        });
+        _dispatcher.dispatch("a", new Runnable() {
+            public void run() {
+            }
+        });
+        _dispatcher.dispatch("b", new Runnable() {
+            public void run() {
+                other.countDown();
+            }
+        });
+
+        // b isn't held back by a, the second a task is
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(other.await(5, TimeUnit.SECONDS));
+        assertEquals(1, _dispatcher.getQueueDepth());
+        blocked.countDown();
+    }
+
+    public void testAwaitIdle() throws Exception {
+        final List<Integer> result = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 20; i++) {
+            final int n = i;
+            _dispatcher.dispatch(i % 3, new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        // done
+                    }
+                    result.add(n);
+                }
+            });
+        }
+        _dispatcher.awaitIdle();
+        assertEquals(20, result.size());
+        assertEquals(0, _dispatcher.getActiveKeys());
+
+        // Returns right away when there's nothing running
+        _dispatcher.awaitIdle();
+    }
+}
@@ -20,6 +20,8 @@
 package org.apache.ode.scheduler.simple;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.transaction.TransactionManager;
 
@@ -105,6 +107,75 @@ public class SimpleSchedulerTest extends TestCase implements JobProcessor {
         assertEquals(10, _jobs.size());
     }
 
+    public void testStopDrainsDispatchedJobs() throws Exception {
+        SimpleScheduler scheduler = newDispatchingScheduler("n2", 2, 10000, new JobProcessor() {
+            public void onScheduledJob(JobInfo jobInfo) throws JobProcessorException {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    // done
+                }
+                SimpleSchedulerTest.this.onScheduledJob(jobInfo);
+            }
+        });
+        try {
+            scheduler.start();
+            _txm.begin();
+            try {
+                for (int i = 0; i < 4; ++i)
+                    scheduler.schedulePersistedJob(newDetail("123"), new Date());
+            } finally {
+                _txm.commit();
+            }
+            // Handed to the dispatch threads but not completed yet
+            Thread.sleep(100);
+            assertEquals(0, _jobs.size());
+            scheduler.stop();
+            assertEquals(4, _jobs.size());
+            assertEquals(0, scheduler.getDispatchQueueDepth());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    public void testQueueLengthIncludesDispatchedJobs() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        SimpleScheduler scheduler = newDispatchingScheduler("n2", 1, 3, new JobProcessor() {
+            public void onScheduledJob(JobInfo jobInfo) throws JobProcessorException {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // done
+                }
+                SimpleSchedulerTest.this.onScheduledJob(jobInfo);
+            }
+        });
+        int scheduled = 0;
+        try {
+            scheduler.start();
+            for (int i = 0; i < 20; ++i) {
+                String jobId;
+                _txm.begin();
+                try {
+                    jobId = scheduler.schedulePersistedJob(newDetail("job" + i), new Date());
+                } finally {
+                    _txm.commit();
+                }
+                if (jobId == null) break;
+                scheduled++;
+                // Let the scheduler thread hand the job to the dispatcher
+                Thread.sleep(50);
+            }
+            // The single dispatch thread is blocked, the jobs waiting for it count toward the limit
+            assertTrue(scheduled < 20);
+            assertTrue(scheduler.getDispatchQueueDepth() > 0);
+        } finally {
+            release.countDown();
+            scheduler.shutdown();
+        }
+        assertEquals(scheduled, _jobs.size());
+    }
+
     public void testNearFutureScheduling() throws Exception {
         // speed things up a bit to hit the right code paths
         _scheduler.setNearFutureInterval(1000);
@@ -211,6 +282,16 @@ public class SimpleSchedulerTest extends TestCase implements JobProcessor {
         return det;
     }
 
+    private SimpleScheduler newDispatchingScheduler(String nodeId, int threads, int queueLength, JobProcessor processor) {
+        Properties conf = new Properties();
+        conf.setProperty("ode.scheduler.dispatchThreads", String.valueOf(threads));
+        conf.setProperty("ode.scheduler.queueLength", String.valueOf(queueLength));
+        SimpleScheduler scheduler = new SimpleScheduler(nodeId, _ds.delegate(), conf);
+        scheduler.setJobProcessor(processor);
+        scheduler.setTransactionManager(_txm);
+        return scheduler;
+    }
+
     private SimpleScheduler newScheduler(String nodeId) {
         SimpleScheduler scheduler = new SimpleScheduler(nodeId, _ds.delegate(), new Properties());
         scheduler.setJobProcessor(this);
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the scheduler queues on the operations of the scheduler thread: adding the jobs loaded for the
+ * immediate interval, cancelling them by id, polling the due ones and peeking while none is due. Not a unit
+ * test, run it with the test classpath:
+ * <pre>java org.apache.ode.scheduler.simple.TaskQueueBenchmark [jobs] [iterations]</pre>
+ */
+public class TaskQueueBenchmark {
+
+    /** Jobs are spread over the default immediate interval of the scheduler. */
+    private static final long INTERVAL = 30000;
+
+    interface QueueFactory {
+        TaskQueue create();
+    }
+
+    interface Operation {
+        void run(TaskQueue queue, List<Job> jobs);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        QueueFactory priority = new QueueFactory() {
+            public TaskQueue create() {
+                return new PriorityTaskQueue();
+            }
+        };
+        QueueFactory wheel = new QueueFactory() {
+            public TaskQueue create() {
+                // defaults of SimpleScheduler
+                return new TimingWheelTaskQueue(100, 1024);
+            }
+        };
+
+        Operation cancel = new Operation() {
+            public void run(TaskQueue queue, List<Job> jobs) {
+                for (Job job : jobs) queue.remove(new Job(0, job.jobId, false, null));
+            }
+        };
+        Operation poll = new Operation() {
+            public void run(TaskQueue queue, List<Job> jobs) {
+                while (queue.poll() != null);
+            }
+        };
+        Operation peek = new Operation() {
+            public void run(TaskQueue queue, List<Job> jobs) {
+                for (int i = 0; i < jobs.size(); i++) queue.peek();
+            }
+        };
+
+        System.out.println(count + " jobs");
+        // jobs due within the interval, already due, and due in the second half of the interval
+        measure("  add and cancel, priority", priority, 0, INTERVAL, cancel, count, iterations);
+        measure("  add and cancel, wheel   ", wheel, 0, INTERVAL, cancel, count, iterations);
+        measure("  add and poll, priority  ", priority, -INTERVAL, 0, poll, count, iterations);
+        measure("  add and poll, wheel     ", wheel, -INTERVAL, 0, poll, count, iterations);
+        measure("  peek none due, priority ", priority, INTERVAL / 2, INTERVAL, peek, count, iterations);
+        measure("  peek none due, wheel    ", wheel, INTERVAL / 2, INTERVAL, peek, count, iterations);
+    }
+
+    private static void measure(String name, QueueFactory factory, long from, long to, Operation operation,
+                                int count, int iterations) {
+        // warm up
+        run(factory, from, to, operation, count);
+        run(factory, from, to, operation, count);
+
+        long[] elapsed = new long[2];
+        for (int i = 0; i < iterations; ++i) {
+            long[] times = run(factory, from, to, operation, count);
+            elapsed[0] += times[0];
+            elapsed[1] += times[1];
+        }
+        System.out.println(name + ": add " + elapsed[0] / iterations / 1000 / 1000.0 + "ms, then "
+                + elapsed[1] / iterations / 1000 / 1000.0 + "ms");
+    }
+
+    /**
+     * Adds jobs dated between from and to ms from now to a new queue and runs the operation on them.
+     * @return time taken by the additions and by the operation, in ns
+     */
+    private static long[] run(QueueFactory factory, long from, long to, Operation operation, int count) {
+        Random random = new Random(count);
+        long now = System.currentTimeMillis();
+        List<Job> jobs = new ArrayList<Job>(count);
+        for (int i = 0; i < count; i++) {
+            long date = now + from + (long) (random.nextDouble() * (to - from));
+            jobs.add(new Job(date, "job" + i, true, new HashMap<String, Object>()));
+        }
+
+        long start = System.nanoTime();
+        TaskQueue queue = factory.create();
+        for (Job job : jobs) queue.add(job);
+        long added = System.nanoTime();
+        operation.run(queue, jobs);
+        return new long[] { added - start, System.nanoTime() - added };
+    }
+}
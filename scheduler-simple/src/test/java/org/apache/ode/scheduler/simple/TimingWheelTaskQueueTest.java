@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ode.scheduler.simple;
+
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Test of the timing wheel scheduler queue.
+ */
+public class TimingWheelTaskQueueTest extends TestCase {
+
+    private TimingWheelTaskQueue _queue;
+
+    private long _now;
+
+    public void setUp() throws Exception {
+        _queue = new TimingWheelTaskQueue(10, 16);
+        _now = System.currentTimeMillis();
+    }
+
+    public void testOrdering() throws Exception {
+        // Past due, within the wheel and beyond it, added out of order
+        long[] dates = { _now + 1000, _now - 50, _now + 35, _now + 5000, _now + 31, _now - 100 };
+        for (long date : dates)
+            _queue.add(new Task(date));
+        assertEquals(dates.length, _queue.size());
+
+        assertEquals(_now - 100, _queue.poll().schedDate);
+        assertEquals(_now - 50, _queue.poll().schedDate);
+        assertEquals(_now + 31, _queue.peek().schedDate);
+        assertEquals(_now + 31, _queue.poll().schedDate);
+        assertEquals(_now + 35, _queue.poll().schedDate);
+        assertEquals(_now + 1000, _queue.poll().schedDate);
+        assertEquals(_now + 5000, _queue.poll().schedDate);
+        assertNull(_queue.poll());
+        assertEquals(0, _queue.size());
+    }
+
+    public void testRemove() throws Exception {
+        _queue.add(new Job(_now - 10, "past", true, new HashMap<String, Object>()));
+        _queue.add(new Job(_now + 50, "wheel", true, new HashMap<String, Object>()));
+        _queue.add(new Job(_now + 5000, "overflow", true, new HashMap<String, Object>()));
+        _queue.add(new Job(_now + 6000, "last", true, new HashMap<String, Object>()));
+
+        // Jobs are removed by id, like SimpleScheduler.cancelJob does
+        assertTrue(_queue.remove(new Job(0, "past", false, null)));
+        assertTrue(_queue.remove(new Job(0, "wheel", false, null)));
+        assertTrue(_queue.remove(new Job(0, "overflow", false, null)));
+        assertFalse(_queue.remove(new Job(0, "overflow", false, null)));
+        assertEquals(1, _queue.size());
+        assertEquals("last", ((Job) _queue.poll()).jobId);
+        assertNull(_queue.peek());
+    }
+
+    public void testPeekNothingDue() throws Exception {
+        _queue.add(new Job(_now + 100, "later", true, new HashMap<String, Object>()));
+        assertEquals(_now + 100, _queue.peek().schedDate);
+
+        // An earlier task than the one found by the last search
+        _queue.add(new Job(_now + 50, "sooner", true, new HashMap<String, Object>()));
+        assertEquals(_now + 50, _queue.peek().schedDate);
+        assertEquals(_now + 50, _queue.peek().schedDate);
+
+        assertTrue(_queue.remove(new Job(0, "sooner", false, null)));
+        assertEquals(_now + 100, _queue.peek().schedDate);
+        assertTrue(_queue.remove(new Job(0, "later", false, null)));
+        assertNull(_queue.peek());
+
+        _queue.add(new Task(_now + 5000));
+        assertEquals(_now + 5000, _queue.peek().schedDate);
+    }
+
+    public void testClear() throws Exception {
+        _queue.add(new Task(_now + 20));
+        _queue.add(new Job(_now + 10, "job", true, new HashMap<String, Object>()));
+        _queue.add(new Task(_now + 5000));
+        _queue.clear(Job.class);
+        assertEquals(2, _queue.size());
+        _queue.clear(Task.class);
+        assertEquals(0, _queue.size());
+        assertNull(_queue.poll());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram with power of two buckets: bucket 0 counts zeros and bucket <i>i</i> the values in
+ * [2<sup>i-1</sup>, 2<sup>i</sup>[, the last bucket also taking everything above.
+ */
+public class Histogram {
+    public static final int BUCKETS = 40;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong _sum = new AtomicLong();
+    private final AtomicLong _max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        _counts.incrementAndGet(bucket(value));
+        _sum.addAndGet(value);
+        long max;
+        while (value > (max = _max.get()) && !_max.compareAndSet(max, value));
+    }
+
+    static int bucket(long value) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * @return the exclusive upper bound of each bucket, the last one being unbounded
+     */
+    public static long[] getBounds() {
+        long[] bounds = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS - 1; i++) bounds[i] = 1L << i;
+        bounds[BUCKETS - 1] = Long.MAX_VALUE;
+        return bounds;
+    }
+
+    public long[] getCounts() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) counts[i] = _counts.get(i);
+        return counts;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += _counts.get(i);
+        return count;
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) _sum.get() / count;
+    }
+
+    public long getMax() {
+        return _max.get();
+    }
+
+    /**
+     * @param fraction between 0 and 1
+     * @return largest value the bucket holding the given percentile of the recorded values can hold
+     */
+    public long getPercentile(double fraction) {
+        long[] counts = getCounts();
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1, getMax());
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) _counts.set(i, 0);
+        _sum.set(0);
+        _max.set(0);
+    }
+
+    public String toString() {
+        return "(n=" + getCount() + ", mean=" + getMean() + ", p50<=" + getPercentile(0.5) + ", p99<="
+                + getPercentile(0.99) + ", max=" + getMax() + ")";
+    }
+}
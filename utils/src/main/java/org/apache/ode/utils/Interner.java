@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Canonicalizes equal immutable values so that a single instance of each is retained. Canonical instances are
+ * only weakly referenced, they go away with the last object using them. The table is striped by hash code to keep
+ * concurrent callers apart.
+ */
+public class Interner<T> {
+    private static final int STRIPES = 16;
+
+    private final Map<T, WeakReference<T>>[] _tables;
+
+    @SuppressWarnings("unchecked")
+    public Interner() {
+        _tables = new Map[STRIPES];
+        for (int i = 0; i < STRIPES; i++) _tables[i] = new WeakHashMap<T, WeakReference<T>>();
+    }
+
+    /**
+     * @param value value to canonicalize, may be null
+     * @return the canonical instance equal to the value, the value itself if it's the first one seen
+     */
+    public T intern(T value) {
+        if (value == null) return null;
+        int h = value.hashCode();
+        Map<T, WeakReference<T>> table = _tables[(h ^ (h >>> 16)) & (STRIPES - 1)];
+        synchronized (table) {
+            WeakReference<T> ref = table.get(value);
+            T canonical = ref == null ? null : ref.get();
+            if (canonical == null) {
+                table.put(value, new WeakReference<T>(value));
+                canonical = value;
+            }
+            return canonical;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+/**
+ * Encodings used to persist XML payloads (variable values, message parts and headers). Encoded payloads
+ * start with a marker that can't begin a serialized XML document, so payloads written as plain text by
+ * earlier versions, or with a different encoding, are always readable whatever encoding is in use.
+ * The default encoding is set with the <code>ode.dao.storage.encoding</code> system property or the
+ * <code>dao.storage.encoding</code> configuration property.
+ */
+public enum StorageEncoding {
+
+    /** Plain serialized XML, as always written by ODE. */
+    TEXT,
+    /** Deflated UTF-8 serialization. Stored Base64 encoded when the column holds characters. */
+    DEFLATE;
+
+    public static final String PROPERTY = "ode.dao.storage.encoding";
+
+    /** Payloads smaller than this are stored as text, compression doesn't pay off for them. */
+    public static final int MIN_DEFLATE_SIZE = 256;
+
+    private static final String DEFLATE_PREFIX = "ODEZ:";
+    private static final byte[] DEFLATE_MAGIC = { 0, 'O', 'D', 'Z' };
+
+    private static final ThreadLocal<Deflater> __deflaters = new ThreadLocal<Deflater>();
+
+    private static volatile StorageEncoding __default = parse(System.getProperty(PROPERTY));
+
+    public static StorageEncoding getDefault() {
+        return __default;
+    }
+
+    public static void setDefault(StorageEncoding encoding) {
+        __default = encoding == null ? TEXT : encoding;
+    }
+
+    /**
+     * Resolves an encoding from its case insensitive name, TEXT if no name is given.
+     */
+    public static StorageEncoding parse(String name) {
+        if (name == null || name.trim().length() == 0) return TEXT;
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown storage encoding " + name + ", expected text or deflate.");
+        }
+    }
+
+    /**
+     * Encodes an element for a character column.
+     */
+    public String encodeToString(Element element) {
+        if (this == TEXT) return DOMUtils.domToString(element);
+
+        byte[] xml = DOMUtils.domToBytes(element);
+        if (xml.length < MIN_DEFLATE_SIZE) return utf8(xml);
+        return DEFLATE_PREFIX + ascii(Base64.encodeBase64(deflate(xml, 0)));
+    }
+
+    /**
+     * Encodes an element for a binary column.
+     */
+    public byte[] encodeToBytes(Element element) {
+        // Plain payloads have always been stored in the platform encoding
+        if (this == TEXT) return DOMUtils.domToString(element).getBytes();
+
+        byte[] xml = DOMUtils.domToBytes(element);
+        if (xml.length < MIN_DEFLATE_SIZE) return utf8(xml).getBytes();
+        byte[] encoded = deflate(xml, DEFLATE_MAGIC.length);
+        System.arraycopy(DEFLATE_MAGIC, 0, encoded, 0, DEFLATE_MAGIC.length);
+        return encoded;
+    }
+
+    /**
+     * Decodes a payload read from a character column, whatever encoding was used to write it.
+     */
+    public static Element decode(String data) throws SAXException, IOException {
+        if (!data.startsWith(DEFLATE_PREFIX)) return DOMUtils.stringToDOM(data);
+
+        byte[] deflated = Base64.decodeBase64(data.substring(DEFLATE_PREFIX.length()).getBytes("US-ASCII"));
+        return inflate(deflated, 0);
+    }
+
+    /**
+     * Decodes a payload read from a binary column, whatever encoding was used to write it.
+     */
+    public static Element decode(byte[] data) throws SAXException, IOException {
+        if (!hasMagic(data)) return DOMUtils.stringToDOM(new String(data));
+        return inflate(data, DEFLATE_MAGIC.length);
+    }
+
+    private static boolean hasMagic(byte[] data) {
+        if (data.length < DEFLATE_MAGIC.length) return false;
+        for (int i = 0; i < DEFLATE_MAGIC.length; i++)
+            if (data[i] != DEFLATE_MAGIC[i]) return false;
+        return true;
+    }
+
+    /**
+     * Deflates the data, leaving <code>offset</code> free bytes at the beginning of the result.
+     */
+    private static byte[] deflate(byte[] data, int offset) {
+        Deflater deflater = __deflaters.get();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            __deflaters.set(deflater);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + offset + 64);
+        for (int i = 0; i < offset; i++) out.write(0);
+
+        byte[] buf = new byte[4096];
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int len = deflater.deflate(buf);
+                out.write(buf, 0, len);
+            }
+        } finally {
+            deflater.reset();
+        }
+        return out.toByteArray();
+    }
+
+    private static Element inflate(byte[] data, int offset) throws SAXException, IOException {
+        Inflater inflater = new Inflater();
+        try {
+            InflaterInputStream in = new InflaterInputStream(
+                    new ByteArrayInputStream(data, offset, data.length - offset), inflater);
+            return DOMUtils.parse(in).getDocumentElement();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String utf8(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String ascii(byte[] bytes) {
+        try {
+            return new String(bytes, "US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
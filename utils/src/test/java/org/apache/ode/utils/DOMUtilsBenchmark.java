@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.utils;
+
+import java.io.StringWriter;
+
+import org.apache.xerces.dom.DOMOutputImpl;
+import org.apache.xerces.impl.Constants;
+import org.apache.xml.serialize.DOMSerializerImpl;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Compares the serialization of messages from 1KB to 1MB by {@link DOMUtils} with a serializer configured for
+ * each call, as it used to be done. Not a unit test, run it with the test classpath:
+ * <pre>java org.apache.ode.utils.DOMUtilsBenchmark [iterations]</pre>
+ * Smaller messages are serialized proportionally more times.
+ */
+public class DOMUtilsBenchmark {
+
+    private static final int[] SIZES = { 1024, 10 * 1024, 100 * 1024, 1024 * 1024 };
+
+    interface Serialization {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        for (int size : SIZES) {
+            final Element message = message(size);
+            int runs = iterations * (SIZES[SIZES.length - 1] / size);
+
+            System.out.println("Message of " + size / 1024 + "KB");
+            measure("  new serializer, String     ", runs, new Serialization() {
+                public Object run() throws Exception {
+                    return serialize(message);
+                }
+            });
+            measure("  domToString                ", runs, new Serialization() {
+                public Object run() throws Exception {
+                    return DOMUtils.domToString(message);
+                }
+            });
+            measure("  domToString, UTF-8 bytes   ", runs, new Serialization() {
+                public Object run() throws Exception {
+                    return DOMUtils.domToString(message).getBytes("UTF-8");
+                }
+            });
+            measure("  domToBytes                 ", runs, new Serialization() {
+                public Object run() throws Exception {
+                    return DOMUtils.domToBytes(message);
+                }
+            });
+        }
+    }
+
+    private static void measure(String name, int runs, Serialization serialization) throws Exception {
+        // warm up
+        for (int i = 0; i < runs; ++i) serialization.run();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; ++i) serialization.run();
+        long elapsed = (System.nanoTime() - start) / runs;
+
+        System.out.println(name + ": " + elapsed / 1000.0 + "us");
+    }
+
+    /**
+     * Serialization as done by domToString before the serializers were reused.
+     */
+    private static String serialize(Element element) {
+        DOMSerializerImpl ser = new DOMSerializerImpl();
+        ser.setParameter(Constants.DOM_NAMESPACES, Boolean.TRUE);
+        ser.setParameter(Constants.DOM_WELLFORMED, Boolean.FALSE);
+        ser.setParameter(Constants.DOM_VALIDATE, Boolean.FALSE);
+
+        DOMOutputImpl out = new DOMOutputImpl();
+        out.setEncoding("UTF-8");
+        StringWriter writer = new StringWriter(4096);
+        out.setCharacterStream(writer);
+        ser.write(element, out);
+        writer.flush();
+        return writer.toString();
+    }
+
+    /**
+     * A message with a part of repeated elements.
+     */
+    private static Element message(int size) {
+        Document doc = DOMUtils.newDocument();
+        Element message = doc.createElementNS(null, "message");
+        doc.appendChild(message);
+        Element part = doc.createElementNS(null, "payload");
+        message.appendChild(part);
+        Element items = doc.createElementNS("http://ode.apache.org/benchmark", "ns:items");
+        part.appendChild(items);
+        for (int i = 0; DOMUtils.domToString(message).length() < size; i += 16) {
+            for (int j = 0; j < 16; j++) {
+                Element item = doc.createElementNS("http://ode.apache.org/benchmark", "ns:item");
+                item.setAttributeNS(null, "id", String.valueOf(i + j));
+                item.appendChild(doc.createTextNode("some value, some value"));
+                items.appendChild(item);
+            }
+        }
+        return message;
+    }
+}
@@ -64,6 +64,21 @@ public class DOMUtilsTest extends TestCase {
     // TODO check the document itself
   }
 
+  public void testSerializeDomToBytes() throws Exception {
+    Document doc = DOMUtils.newDocument();
+    Element foo = doc.createElementNS("urn:foo", "foo");
+    doc.appendChild(foo);
+    foo.appendChild(doc.createTextNode("caf\u00e9"));
+
+    Element parsed = DOMUtils.bytesToDOM(DOMUtils.domToBytes(foo));
+    assertEquals("urn:foo", parsed.getNamespaceURI());
+    assertEquals("caf\u00e9", parsed.getTextContent());
+    // the serializer is reused between calls, make sure nothing leaks from one to the other
+    Element bar = doc.createElementNS("urn:foo", "bar");
+    assertEquals("bar", DOMUtils.bytesToDOM(DOMUtils.domToBytes(bar)).getLocalName());
+    assertEquals(DOMUtils.domToString(bar), DOMUtils.domToString(bar));
+  }
+
   public void testConcurrentParse() throws Exception {
     final int SIZE = 100;
     Thread[] threads = new Thread[SIZE];
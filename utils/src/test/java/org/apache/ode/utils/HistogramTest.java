@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the {@link Histogram} class.
+ */
+public class HistogramTest extends TestCase {
+
+  public void testBuckets() {
+    assertEquals(0, Histogram.bucket(0));
+    assertEquals(1, Histogram.bucket(1));
+    assertEquals(2, Histogram.bucket(2));
+    assertEquals(2, Histogram.bucket(3));
+    assertEquals(3, Histogram.bucket(4));
+    assertEquals(10, Histogram.bucket(1023));
+    assertEquals(11, Histogram.bucket(1024));
+    assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(1L << 50));
+    assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(Long.MAX_VALUE));
+  }
+
+  public void testBounds() {
+    long[] bounds = Histogram.getBounds();
+    assertEquals(Histogram.BUCKETS, bounds.length);
+    for (int i = 0; i < Histogram.BUCKETS - 1; i++) {
+      assertEquals(i, Histogram.bucket(bounds[i] - 1));
+      assertEquals(i + 1, Histogram.bucket(bounds[i]));
+    }
+    assertEquals(Long.MAX_VALUE, bounds[Histogram.BUCKETS - 1]);
+  }
+
+  public void testRecord() {
+    Histogram histogram = new Histogram();
+    histogram.record(0);
+    histogram.record(-5);
+    histogram.record(5);
+    histogram.record(7);
+    histogram.record(100);
+
+    long[] counts = histogram.getCounts();
+    assertEquals(2, counts[0]);
+    assertEquals(2, counts[3]);
+    assertEquals(1, counts[7]);
+    assertEquals(5, histogram.getCount());
+    assertEquals(100, histogram.getMax());
+    assertEquals(112.0 / 5, histogram.getMean(), 0.0001);
+  }
+
+  public void testPercentiles() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getPercentile(0.5));
+    assertEquals(0.0, histogram.getMean(), 0.0);
+
+    for (int i = 1; i <= 100; i++) histogram.record(i);
+    // 1 to 63 fill the buckets up to [32, 64[, the median falls in it
+    assertEquals(63, histogram.getPercentile(0.5));
+    // Upper bound of [64, 128[ is above anything recorded, capped by the max
+    assertEquals(100, histogram.getPercentile(0.99));
+    assertEquals(100, histogram.getPercentile(1));
+    assertEquals(1, histogram.getPercentile(0.01));
+  }
+
+  public void testLastBucketUnbounded() {
+    Histogram histogram = new Histogram();
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(1, histogram.getCounts()[Histogram.BUCKETS - 1]);
+    assertEquals(Long.MAX_VALUE, histogram.getPercentile(0.5));
+  }
+
+  public void testReset() {
+    Histogram histogram = new Histogram();
+    for (int i = 0; i < 10; i++) histogram.record(i * 1000);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(0.99));
+    for (long count : histogram.getCounts()) assertEquals(0, count);
+  }
+}
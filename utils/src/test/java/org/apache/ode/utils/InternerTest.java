@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.utils;
+
+import java.lang.ref.WeakReference;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the {@link Interner} class.
+ */
+public class InternerTest extends TestCase {
+
+  public void testCanonicalInstance() {
+    Interner<String> interner = new Interner<String>();
+    String first = new String("urn:test");
+    String second = new String("urn:test");
+    assertNotSame(first, second);
+
+    assertSame(first, interner.intern(first));
+    assertSame(first, interner.intern(second));
+    assertSame(first, interner.intern(new StringBuffer("urn:").append("test").toString()));
+    assertNull(interner.intern(null));
+  }
+
+  public void testDistinctValues() {
+    Interner<String> interner = new Interner<String>();
+    // Spread over several stripes
+    String[] values = new String[100];
+    for (int i = 0; i < values.length; i++) values[i] = interner.intern("value" + i);
+    for (int i = 0; i < values.length; i++) {
+      assertEquals("value" + i, values[i]);
+      assertSame(values[i], interner.intern(new String("value" + i)));
+    }
+  }
+
+  public void testWeaklyReferenced() throws Exception {
+    Interner<String> interner = new Interner<String>();
+    WeakReference<String> ref = new WeakReference<String>(interner.intern(new String("transient")));
+    for (int i = 0; i < 20 && ref.get() != null; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    assertNull(ref.get());
+
+    String again = new String("transient");
+    assertSame(again, interner.intern(again));
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.utils;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Test the {@link StorageEncoding} class.
+ */
+public class StorageEncodingTest extends TestCase {
+
+  public void testDeflateRoundTrip() throws Exception {
+    Element payload = payload(100);
+
+    String str = StorageEncoding.DEFLATE.encodeToString(payload);
+    assertTrue(str.length() < DOMUtils.domToString(payload).length());
+    assertEquals(DOMUtils.domToString(payload), DOMUtils.domToString(StorageEncoding.decode(str)));
+
+    byte[] bytes = StorageEncoding.DEFLATE.encodeToBytes(payload);
+    assertEquals(DOMUtils.domToString(payload), DOMUtils.domToString(StorageEncoding.decode(bytes)));
+  }
+
+  public void testSmallPayloadsStayText() throws Exception {
+    Element payload = payload(1);
+    String str = StorageEncoding.DEFLATE.encodeToString(payload);
+    assertTrue(str.trim().startsWith("<"));
+    assertEquals("payload", StorageEncoding.decode(str).getLocalName());
+  }
+
+  public void testReadsText() throws Exception {
+    Element payload = payload(100);
+    assertEquals(DOMUtils.domToString(payload),
+        DOMUtils.domToString(StorageEncoding.decode(DOMUtils.domToString(payload))));
+    assertEquals(DOMUtils.domToString(payload),
+        DOMUtils.domToString(StorageEncoding.decode(DOMUtils.domToString(payload).getBytes())));
+  }
+
+  private Element payload(int items) {
+    Document doc = DOMUtils.newDocument();
+    Element root = doc.createElementNS("urn:test", "payload");
+    doc.appendChild(root);
+    for (int i = 0; i < items; ++i) {
+      Element item = doc.createElementNS("urn:test", "item");
+      item.setAttribute("index", String.valueOf(i));
+      item.appendChild(doc.createTextNode("value " + i));
+      root.appendChild(item);
+    }
+    return root;
+  }
+}